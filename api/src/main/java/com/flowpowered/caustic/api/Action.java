@@ -26,14 +26,22 @@ package com.flowpowered.caustic.api;
 import java.util.Arrays;
 import java.util.Collection;
 
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.array.TFloatArrayList;
+
+import com.flowpowered.math.matrix.Matrix4f;
 import com.flowpowered.math.vector.Vector4f;
 
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
 import com.flowpowered.caustic.api.gl.Context;
 import com.flowpowered.caustic.api.gl.Context.BlendFunction;
 import com.flowpowered.caustic.api.gl.Context.Capability;
 import com.flowpowered.caustic.api.gl.FrameBuffer;
 import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.VertexArray;
 import com.flowpowered.caustic.api.model.Model;
+import com.flowpowered.caustic.api.util.OcclusionCuller;
 import com.flowpowered.caustic.api.util.Rectangle;
 
 /**
@@ -47,6 +55,18 @@ public abstract class Action {
      */
     public abstract void execute(Context context);
 
+    /**
+     * Executes this action with the desired rendering context, skipping the state changes that the state shows are already done. Any state change done must be recorded in it. The default
+     * implementation executes the action and forgets all the state, since it could have been changed.
+     *
+     * @param context The rendering context
+     * @param state The known state of the context
+     */
+    public void execute(Context context, PipelineState state) {
+        execute(context);
+        state.invalidate();
+    }
+
     /**
      * An action that sets the color for clearing color buffers in the context.
      */
@@ -84,6 +104,13 @@ public abstract class Action {
         public void execute(Context context) {
             context.setClearColor(color);
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setClearColor(color)) {
+                context.setClearColor(color);
+            }
+        }
     }
 
     /**
@@ -94,6 +121,12 @@ public abstract class Action {
         public void execute(Context context) {
             context.clearCurrentBuffer();
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            // Clearing doesn't change any of the recorded state
+            execute(context);
+        }
     }
 
     /**
@@ -133,6 +166,13 @@ public abstract class Action {
         public void execute(Context context) {
             context.setViewPort(viewPort);
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setViewPort(viewPort)) {
+                context.setViewPort(viewPort);
+            }
+        }
     }
 
     /**
@@ -174,6 +214,15 @@ public abstract class Action {
                 context.enableCapability(capability);
             }
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            for (Capability capability : capabilities) {
+                if (state.setCapability(capability, true)) {
+                    context.enableCapability(capability);
+                }
+            }
+        }
     }
 
     /**
@@ -215,6 +264,15 @@ public abstract class Action {
                 context.disableCapability(capability);
             }
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            for (Capability capability : capabilities) {
+                if (state.setCapability(capability, false)) {
+                    context.disableCapability(capability);
+                }
+            }
+        }
     }
 
     /**
@@ -254,6 +312,13 @@ public abstract class Action {
         public void execute(Context context) {
             frameBuffer.bind();
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setFrameBuffer(frameBuffer)) {
+                frameBuffer.bind();
+            }
+        }
     }
 
     /**
@@ -293,6 +358,14 @@ public abstract class Action {
         public void execute(Context context) {
             frameBuffer.unbind();
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            // Unbinding any frame buffer binds the default one
+            if (state.setFrameBuffer(null)) {
+                frameBuffer.unbind();
+            }
+        }
     }
 
     /**
@@ -332,6 +405,13 @@ public abstract class Action {
         public void execute(Context context) {
             context.setCamera(camera);
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setCamera(camera)) {
+                context.setCamera(camera);
+            }
+        }
     }
 
     /**
@@ -371,6 +451,13 @@ public abstract class Action {
         public void execute(Context context) {
             context.setDepthMask(enabled);
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setDepthMask(enabled)) {
+                context.setDepthMask(enabled);
+            }
+        }
     }
 
     /**
@@ -423,14 +510,49 @@ public abstract class Action {
         public void execute(Context context) {
             context.setBlendingFunctions(source, destination);
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            if (state.setBlendingFunctions(source, destination)) {
+                context.setBlendingFunctions(source, destination);
+            }
+        }
     }
 
     /**
-     * An action that renders the models to the bound buffer. The models will be reordered to be grouped by material. This reordering is done via a stable sort ({@link
-     * java.util.Arrays#sort(Object[])}) so that models with the same materials are not reordered. This grouping improves performance by reducing the amount of rendering calls.
+     * An action that renders the models to the bound buffer. The models will be reordered to be grouped by program, textures, material and vertex array, in that order. This reordering is done by
+     * sorting a 64 bit key for each model, and models with equal keys are not reordered. This grouping improves performance by reducing the amount of rendering calls and state changes. The sorted
+     * order is kept between executions, and only fixed when few keys changed, in which case the models with equal keys keep their last order instead. When depth sorting is enabled, the models are
+     * sorted back to front by their distance to the camera instead, as needed for translucent models, and then by material and vertex array.
+     * <p/>
+     * The models outside of the camera's view frustum are skipped, unless frustum culling is disabled. Their world bounds are all tested at once, after sorting. Models with unknown bounds are always
+     * drawn, see {@link Model#getWorldBounds(float[], int)}. Frustum culling should be disabled if the shaders move the vertices outside of the model bounds. An optional occlusion culler can also be
+     * set to skip the models hidden behind the occluders.
+     * <p/>
+     * When instancing is enabled, the models following each other with the same material and vertex array are drawn in a single instanced call. The model matrices are then passed as four per instance
+     * attributes, one for each column, starting at the instance matrix attribute index. The shaders of the materials have to read the model matrix from these attributes and compute the normal matrix
+     * themselves, instead of using the "modelMatrix" and "normalMatrix" uniforms. Models with uniforms of their own, and models of subclasses drawing something else than their vertex array, such as
+     * {@link com.flowpowered.caustic.api.model.StringModel}, are still drawn alone with the uniforms, so the shaders have to handle both.
      */
     public static class RenderModelsAction extends Action {
+        private static final int MATRIX_COLUMNS = 4;
+        // Bits of each part of the sort keys, which add up to 63 so the keys stay positive
+        private static final int PROGRAM_BITS = 11, TEXTURES_BITS = 12, MATERIAL_BITS = 20, VERTEX_ARRAY_BITS = 20, DEPTH_BITS = 23;
         private Collection<? extends Model> models;
+        private OcclusionCuller occlusionCuller;
+        private boolean depthSorting = false;
+        private boolean frustumCulling = true;
+        // The world bounds of the sorted models, and whether or not they are inside the frustum
+        private float[] worldBounds = new float[0];
+        private boolean[] inFrustum = new boolean[0];
+        // The models in the collection order and sorted, and the sorter of their keys
+        private Model[] unsortedModels = new Model[0];
+        private Model[] sortedModels = new Model[0];
+        private int lastCount = 0;
+        private final KeySorter sorter = new KeySorter();
+        private int instanceMatrixAttribute = -1;
+        private final TFloatList[] instanceMatrixData = new TFloatList[MATRIX_COLUMNS];
+        private final VertexAttribute[] instanceMatrixColumns = new VertexAttribute[MATRIX_COLUMNS];
 
         /**
          * Constructs a model rendering action with the models to render
@@ -459,15 +581,123 @@ public abstract class Action {
             this.models = models;
         }
 
+        /**
+         * Returns the occlusion culler used to skip the hidden models.
+         *
+         * @return The occlusion culler, or null if none is used
+         */
+        public OcclusionCuller getOcclusionCuller() {
+            return occlusionCuller;
+        }
+
+        /**
+         * Sets the occlusion culler used to skip the hidden models. The occluders among the models are added to it before drawing, then the models it reports as hidden aren't drawn.
+         *
+         * @param occlusionCuller The occlusion culler, or null to draw all the models
+         */
+        public void setOcclusionCuller(OcclusionCuller occlusionCuller) {
+            this.occlusionCuller = occlusionCuller;
+        }
+
+        /**
+         * Returns true if the models outside of the camera's view frustum are skipped.
+         *
+         * @return Whether or not frustum culling is enabled
+         */
+        public boolean isFrustumCulling() {
+            return frustumCulling;
+        }
+
+        /**
+         * Sets whether or not the models outside of the camera's view frustum are skipped. This is enabled by default.
+         *
+         * @param frustumCulling Whether or not to use frustum culling
+         */
+        public void setFrustumCulling(boolean frustumCulling) {
+            this.frustumCulling = frustumCulling;
+        }
+
+        /**
+         * Returns true if the models are sorted back to front by their distance to the camera instead of by state, for translucent models.
+         *
+         * @return Whether or not depth sorting is enabled
+         */
+        public boolean isDepthSorting() {
+            return depthSorting;
+        }
+
+        /**
+         * Sets whether or not the models are sorted back to front by their distance to the camera instead of by state, for translucent models.
+         *
+         * @param depthSorting Whether or not to use depth sorting
+         */
+        public void setDepthSorting(boolean depthSorting) {
+            this.depthSorting = depthSorting;
+        }
+
+        /**
+         * Returns true if the models with the same material and vertex array are drawn in a single instanced call.
+         *
+         * @return Whether or not instancing is enabled
+         */
+        public boolean isInstancing() {
+            return instanceMatrixAttribute >= 0;
+        }
+
+        /**
+         * Returns the index of the first of the four per instance attributes holding the model matrix columns.
+         *
+         * @return The instance matrix attribute index, or -1 if instancing is disabled
+         */
+        public int getInstanceMatrixAttribute() {
+            return instanceMatrixAttribute;
+        }
+
+        /**
+         * Sets the index of the first of the four per instance attributes holding the model matrix columns, which enables instancing. The index should be the attribute count of the vertex data of the
+         * models, so that the columns are added after their attributes when first drawn.
+         *
+         * @param index The instance matrix attribute index, or a negative value to disable instancing
+         * @see VertexArray#setAttribute(int, com.flowpowered.caustic.api.data.VertexAttribute)
+         */
+        public void setInstanceMatrixAttribute(int index) {
+            if (index >= 0 && instanceMatrixColumns[0] == null) {
+                for (int c = 0; c < MATRIX_COLUMNS; c++) {
+                    instanceMatrixData[c] = new TFloatArrayList();
+                    final VertexAttribute column = new VertexAttribute("instanceMatrixColumn" + c, DataType.FLOAT, 4);
+                    column.setDivisor(1);
+                    instanceMatrixColumns[c] = column;
+                }
+            }
+            instanceMatrixAttribute = index < 0 ? -1 : index;
+        }
+
         @Override
         public void execute(Context context) {
-            // Get the model array
-            final Model[] models = this.models.toArray(new Model[this.models.size()]);
-            // Batch the models with the same materials together
-            Arrays.sort(models);
+            // Batch the models with the same state together
+            final int count = sortModels(context.getCamera());
+            final Model[] models = sortedModels;
+            // Find the models in the view frustum
+            if (frustumCulling) {
+                cullModels(context.getCamera(), count);
+            }
+            // Add the occluders first, so all the models can be tested against them
+            if (occlusionCuller != null) {
+                occlusionCuller.begin(context.getCamera());
+                for (int i = 0; i < count; i++) {
+                    if (!frustumCulling || inFrustum[i]) {
+                        occlusionCuller.addOccluder(models[i]);
+                    }
+                }
+            }
             // Current material
             Material current = null;
-            for (Model model : models) {
+            for (int i = 0; i < count; i++) {
+                final Model model = models[i];
+                // Skip the hidden models before binding anything for them
+                if (!isVisible(model, i)) {
+                    continue;
+                }
                 final Material material = model.getMaterial();
                 if (material == null) {
                     throw new IllegalStateException("Null material");
@@ -489,6 +719,11 @@ public abstract class Action {
                     // Upload the material uniforms
                     material.uploadUniforms();
                 }
+                // Draw this model and the following ones with the same vertex array as instances, then skip past them
+                if (isInstancing() && isInstanceable(model)) {
+                    i = renderInstances(models, count, i, context.getCamera(), current.getProgram());
+                    continue;
+                }
                 // Upload the model and normal matrices
                 uploadModelMatrices(model, context.getCamera(), current.getProgram());
                 // Upload the model uniforms
@@ -498,6 +733,152 @@ public abstract class Action {
             }
         }
 
+        @Override
+        public void execute(Context context, PipelineState state) {
+            // Only the materials, vertex arrays and uniforms are changed, since models must restore any other state they change when rendering (see Model.render())
+            execute(context);
+        }
+
+        private int sortModels(Camera camera) {
+            final int count = models.size();
+            // Grow the arrays if needed, and release the models past the count
+            if (unsortedModels.length < count) {
+                unsortedModels = new Model[count];
+                sortedModels = new Model[count];
+            } else if (lastCount > count) {
+                Arrays.fill(unsortedModels, count, lastCount, null);
+                Arrays.fill(sortedModels, count, lastCount, null);
+            }
+            lastCount = count;
+            // Compute the keys in the collection order
+            final long[] keys = sorter.getKeys(count);
+            int i = 0;
+            for (Model model : models) {
+                unsortedModels[i] = model;
+                keys[i] = depthSorting ? getDepthKey(model, camera) : getStateKey(model);
+                i++;
+            }
+            final int[] order = sorter.sort(count);
+            for (i = 0; i < count; i++) {
+                sortedModels[i] = unsortedModels[order[i]];
+            }
+            return count;
+        }
+
+        private static long getStateKey(Model model) {
+            final Material material = model.getMaterial();
+            if (material == null) {
+                throw new IllegalStateException("Null material");
+            }
+            long key = mask(material.getProgram().getSortID(), PROGRAM_BITS);
+            key = key << TEXTURES_BITS | mask(material.getTexturesKey(), TEXTURES_BITS);
+            key = key << MATERIAL_BITS | mask(material.getID(), MATERIAL_BITS);
+            return key << VERTEX_ARRAY_BITS | mask(model.getVertexArray().getSortID(), VERTEX_ARRAY_BITS);
+        }
+
+        private static long getDepthKey(Model model, Camera camera) {
+            final Material material = model.getMaterial();
+            if (material == null) {
+                throw new IllegalStateException("Null material");
+            }
+            // Transform the model origin to the view space, where the camera looks down the negative z axis
+            final Matrix4f matrix = model.getMatrix();
+            final Matrix4f view = camera.getViewMatrix();
+            final float x = matrix.get(0, 3), y = matrix.get(1, 3), z = matrix.get(2, 3);
+            final float distance = -(view.get(2, 0) * x + view.get(2, 1) * y + view.get(2, 2) * z + view.get(2, 3));
+            // The bits of positive floats are ordered like them, keep the highest and invert them so the farthest come first
+            final long depth = mask(~(Float.floatToIntBits(Math.max(distance, 0)) >>> 31 - DEPTH_BITS), DEPTH_BITS);
+            long key = depth << MATERIAL_BITS | mask(material.getID(), MATERIAL_BITS);
+            return key << VERTEX_ARRAY_BITS | mask(model.getVertexArray().getSortID(), VERTEX_ARRAY_BITS);
+        }
+
+        private static long mask(int value, int bits) {
+            return value & (1L << bits) - 1;
+        }
+
+        private void cullModels(Camera camera, int count) {
+            if (inFrustum.length < count) {
+                worldBounds = new float[count * Model.WORLD_BOUNDS_SIZE];
+                inFrustum = new boolean[count];
+            }
+            // Pack the world bounds of the models
+            for (int i = 0; i < count; i++) {
+                final int offset = i * Model.WORLD_BOUNDS_SIZE;
+                if (!sortedModels[i].getWorldBounds(worldBounds, offset)) {
+                    // Unknown bounds are made infinite, so they are never culled
+                    Arrays.fill(worldBounds, offset, offset + 3, Float.NEGATIVE_INFINITY);
+                    Arrays.fill(worldBounds, offset + 3, offset + 6, Float.POSITIVE_INFINITY);
+                    Arrays.fill(worldBounds, offset + 6, offset + 9, 0);
+                    worldBounds[offset + 9] = Float.POSITIVE_INFINITY;
+                }
+            }
+            // Then test them all at once
+            camera.getFrustum().intersectsBounds(worldBounds, Model.WORLD_BOUNDS_SIZE, count, inFrustum);
+        }
+
+        private boolean isVisible(Model model, int index) {
+            return (!frustumCulling || inFrustum[index]) && (occlusionCuller == null || occlusionCuller.isVisible(model));
+        }
+
+        private int renderInstances(Model[] models, int modelCount, int first, Camera camera, Program program) {
+            final Material material = models[first].getMaterial();
+            final VertexArray vertexArray = models[first].getVertexArray();
+            for (TFloatList data : instanceMatrixData) {
+                data.clear();
+            }
+            int instanceCount = 0;
+            int last = first;
+            for (int i = first; i < modelCount; i++) {
+                final Model model = models[i];
+                if (model.getMaterial() != material || model.getVertexArray() != vertexArray || !isInstanceable(model)) {
+                    break;
+                }
+                last = i;
+                // The first model was already tested
+                if (i != first && !isVisible(model, i)) {
+                    continue;
+                }
+                // Models with uniforms of their own can't share a draw call, so they are drawn alone with the matrix uniforms
+                if (!model.getUniforms().isEmpty()) {
+                    uploadModelMatrices(model, camera, program);
+                    model.uploadUniforms();
+                    model.render();
+                    continue;
+                }
+                addMatrix(instanceMatrixData, model.getMatrix());
+                instanceCount++;
+            }
+            if (instanceCount > 0) {
+                drawInstances(vertexArray, instanceMatrixData, instanceCount);
+            }
+            return last;
+        }
+
+        private void drawInstances(VertexArray vertexArray, TFloatList[] matrixData, int count) {
+            // Upload the matrix columns as per instance attributes
+            for (int c = 0; c < MATRIX_COLUMNS; c++) {
+                final VertexAttribute column = instanceMatrixColumns[c];
+                column.setData(matrixData[c]);
+                vertexArray.setAttribute(instanceMatrixAttribute + c, column);
+            }
+            vertexArray.drawInstanced(count);
+        }
+
+        private static void addMatrix(TFloatList[] matrixData, Matrix4f matrix) {
+            for (int c = 0; c < MATRIX_COLUMNS; c++) {
+                final TFloatList data = matrixData[c];
+                data.add(matrix.get(0, c));
+                data.add(matrix.get(1, c));
+                data.add(matrix.get(2, c));
+                data.add(matrix.get(3, c));
+            }
+        }
+
+        // Only plain models draw nothing else than their vertex array
+        private static boolean isInstanceable(Model model) {
+            return model.getClass() == Model.class;
+        }
+
         private static void uploadCameraMatrices(Camera camera, Program program) {
             program.setUniform("projectionMatrix", camera.getProjectionMatrix());
             program.setUniform("viewMatrix", camera.getViewMatrix());
@@ -505,7 +886,7 @@ public abstract class Action {
 
         private static void uploadModelMatrices(Model model, Camera camera, Program program) {
             program.setUniform("modelMatrix", model.getMatrix());
-            program.setUniform("normalMatrix", camera.getViewMatrix().mul(model.getMatrix()).invert().transpose());
+            program.setUniform("normalMatrix", model.getNormalMatrix(camera));
         }
     }
 
@@ -517,5 +898,11 @@ public abstract class Action {
         public void execute(Context context) {
             context.updateDisplay();
         }
+
+        @Override
+        public void execute(Context context, PipelineState state) {
+            // Swapping the buffers doesn't change any of the recorded state
+            execute(context);
+        }
     }
 }
@@ -27,6 +27,8 @@ import com.flowpowered.math.imaginary.Quaternionf;
 import com.flowpowered.math.matrix.Matrix4f;
 import com.flowpowered.math.vector.Vector3f;
 
+import com.flowpowered.caustic.api.util.Frustum;
+
 /**
  * Represents a camera with a projection, position and rotation, for rendering purposes.
  */
@@ -37,6 +39,12 @@ public class Camera {
     private Matrix4f rotationMatrixInverse = Matrix4f.IDENTITY;
     private Matrix4f viewMatrix = Matrix4f.IDENTITY;
     private boolean updateViewMatrix = true;
+    // Changed every time the view matrix changes, so computations using it can be cached
+    private int viewVersion = 0;
+    // The view frustum, with the matrices it was last updated for
+    private final Frustum frustum = new Frustum();
+    private Matrix4f frustumProjection = null;
+    private int frustumViewVersion;
 
     /**
      * Creates a new camera from the supplied projection matrix.
@@ -65,6 +73,29 @@ public class Camera {
         this.projection = projection;
     }
 
+    /**
+     * Returns the view version, a number that changes every time the view matrix does. Values computed from the view matrix can be cached until it changes.
+     *
+     * @return The view version
+     */
+    public int getViewVersion() {
+        return viewVersion;
+    }
+
+    /**
+     * Returns the view frustum, in world space. It is only updated when the projection or view matrices changed since the last call.
+     *
+     * @return The view frustum
+     */
+    public Frustum getFrustum() {
+        if (frustumProjection != projection || frustumViewVersion != viewVersion) {
+            frustum.update(projection, getViewMatrix());
+            frustumProjection = projection;
+            frustumViewVersion = viewVersion;
+        }
+        return frustum;
+    }
+
     /**
      * Returns the view matrix, which is the transformation matrix for the position and rotation.
      *
@@ -98,6 +129,7 @@ public class Camera {
     public void setPosition(Vector3f position) {
         this.position = position;
         updateViewMatrix = true;
+        viewVersion++;
     }
 
     /**
@@ -117,6 +149,7 @@ public class Camera {
     public void setRotation(Quaternionf rotation) {
         this.rotation = rotation;
         updateViewMatrix = true;
+        viewVersion++;
     }
 
     /**
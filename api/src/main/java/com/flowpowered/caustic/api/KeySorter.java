@@ -0,0 +1,144 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api;
+
+import java.util.Arrays;
+
+/**
+ * Sorts indices by their 64 bit keys, without allocating once the arrays are large enough for the count. The sorted order is kept between sorts, and only fixed by insertion when the count is the same
+ * and few keys changed, in which case the indices with equal keys keep their last order. Otherwise the indices are sorted again with a least significant digit radix sort, which keeps the indices with
+ * equal keys in increasing order. The keys should be positive, since the radix sort compares them as unsigned values.
+ */
+class KeySorter {
+    private static final int RADIX_BITS = 8, RADIX = 1 << RADIX_BITS;
+    // The keys by index and the sorted order of the indices
+    private long[] keys = new long[0];
+    private int[] order = new int[0];
+    private int lastCount = -1;
+    // The scratch space for the radix sort
+    private long[] sortKeys = new long[0], sortKeysScratch = new long[0];
+    private int[] orderScratch = new int[0];
+    private final int[] radixCounts = new int[RADIX];
+
+    /**
+     * Returns the array in which to write the key of each index before sorting, which is at least as long as the count. Its contents are kept between sorts, but it is reallocated if it is too short.
+     *
+     * @param count The amount of keys to sort
+     * @return The keys array
+     */
+    long[] getKeys(int count) {
+        if (keys.length < count) {
+            keys = new long[count];
+            order = new int[count];
+            sortKeys = new long[count];
+            sortKeysScratch = new long[count];
+            orderScratch = new int[count];
+            lastCount = -1;
+        }
+        return keys;
+    }
+
+    /**
+     * Sorts the indices of the first keys, as written in {@link #getKeys(int)}.
+     *
+     * @param count The amount of keys to sort
+     * @return The indices in increasing key order, only valid up to the count and until the next sort
+     */
+    int[] sort(int count) {
+        getKeys(count);
+        // If the keys hardly changed, the last order only needs fixing, else sort it all again
+        if (count != lastCount || !insertionSort(count)) {
+            radixSort(count);
+        }
+        lastCount = count;
+        return order;
+    }
+
+    // Sorts the last order by insertion, which is fast when it is almost sorted, giving up if too many indices move
+    boolean insertionSort(int count) {
+        int moves = 0;
+        for (int i = 1; i < count; i++) {
+            final int index = order[i];
+            final long key = keys[index];
+            int j = i - 1;
+            while (j >= 0 && keys[order[j]] > key) {
+                if (++moves > count) {
+                    return false;
+                }
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+        return true;
+    }
+
+    // Sorts the indices by key with a least significant digit radix sort, which is stable
+    void radixSort(int count) {
+        long[] sourceKeys = sortKeys, destinationKeys = sortKeysScratch;
+        int[] sourceOrder = order, destinationOrder = orderScratch;
+        System.arraycopy(keys, 0, sourceKeys, 0, count);
+        for (int i = 0; i < count; i++) {
+            sourceOrder[i] = i;
+        }
+        if (count <= 1) {
+            return;
+        }
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            // Count the occurrences of each digit
+            Arrays.fill(radixCounts, 0);
+            for (int i = 0; i < count; i++) {
+                radixCounts[(int) (sourceKeys[i] >>> shift) & RADIX - 1]++;
+            }
+            // Skip the digits that are the same for all keys
+            if (radixCounts[(int) (sourceKeys[0] >>> shift) & RADIX - 1] == count) {
+                continue;
+            }
+            // Convert the counts to the start positions of each digit
+            for (int d = 0, position = 0; d < RADIX; d++) {
+                final int digitCount = radixCounts[d];
+                radixCounts[d] = position;
+                position += digitCount;
+            }
+            // Move the keys and indices to their positions
+            for (int i = 0; i < count; i++) {
+                final long key = sourceKeys[i];
+                final int position = radixCounts[(int) (key >>> shift) & RADIX - 1]++;
+                destinationKeys[position] = key;
+                destinationOrder[position] = sourceOrder[i];
+            }
+            // Swap the source and destination for the next digit
+            final long[] swapKeys = sourceKeys;
+            sourceKeys = destinationKeys;
+            destinationKeys = swapKeys;
+            final int[] swapOrder = sourceOrder;
+            sourceOrder = destinationOrder;
+            destinationOrder = swapOrder;
+        }
+        // Make sure the result ends up in the order
+        if (sourceOrder != order) {
+            System.arraycopy(sourceOrder, 0, order, 0, count);
+        }
+    }
+}
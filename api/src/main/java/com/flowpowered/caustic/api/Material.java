@@ -23,9 +23,13 @@
  */
 package com.flowpowered.caustic.api;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -40,12 +44,16 @@ import com.flowpowered.caustic.api.gl.Texture;
 public class Material implements Comparable<Material> {
     // Reflects the current available ID
     private static final AtomicInteger ID_COUNTER = new AtomicInteger();
+    // Sequential keys of the texture sets used so far, by their sorted unit and texture sort ID pairs, 0 being the empty set
+    private static final Map<TLongList, Integer> TEXTURES_KEYS = new HashMap<>();
     // private ID for batching models per material for rendering
     private final int id = ID_COUNTER.getAndIncrement();
     // Shader program
     private Program program;
     // Textures by unit
     private TIntObjectMap<Texture> textures;
+    // Identifies the set of textures for sorting, independently of the iteration order, -1 if it has to be found again
+    private int texturesKey = 0;
     // Material uniforms
     private final UniformHolder uniforms = new UniformHolder();
 
@@ -129,7 +137,10 @@ public class Material implements Comparable<Material> {
         if (textures == null) {
             textures = new TIntObjectHashMap<>();
         }
-        textures.put(unit, texture);
+        final Texture previous = textures.put(unit, texture);
+        if (previous != texture) {
+            texturesKey = -1;
+        }
     }
 
     /**
@@ -159,7 +170,48 @@ public class Material implements Comparable<Material> {
      */
     public void removeTexture(int unit) {
         if (textures != null) {
-            textures.remove(unit);
+            final Texture previous = textures.remove(unit);
+            if (previous != null) {
+                texturesKey = -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the unique ID of this material, in order of construction.
+     *
+     * @return The ID
+     */
+    public int getID() {
+        return id;
+    }
+
+    // Returns a key that is the same for materials with the same textures in the same units
+    int getTexturesKey() {
+        if (texturesKey < 0) {
+            texturesKey = findTexturesKey(textures);
+        }
+        return texturesKey;
+    }
+
+    private static int findTexturesKey(TIntObjectMap<Texture> textures) {
+        if (textures.isEmpty()) {
+            return 0;
+        }
+        final TLongList pairs = new TLongArrayList(textures.size());
+        final TIntObjectIterator<Texture> iterator = textures.iterator();
+        while (iterator.hasNext()) {
+            iterator.advance();
+            pairs.add((long) iterator.key() << 32 | iterator.value().getSortID());
+        }
+        pairs.sort();
+        synchronized (TEXTURES_KEYS) {
+            Integer key = TEXTURES_KEYS.get(pairs);
+            if (key == null) {
+                key = TEXTURES_KEYS.size() + 1;
+                TEXTURES_KEYS.put(pairs, key);
+            }
+            return key;
         }
     }
 
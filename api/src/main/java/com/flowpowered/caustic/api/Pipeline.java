@@ -51,9 +51,14 @@ import com.flowpowered.caustic.api.util.Rectangle;
 /**
  * Represents a rendering pipeline. A pipeline is built with a {@link PipelineBuilder}, as a series of actions. Running the pipeline results in the actions being executed in the order they were
  * added.
+ * <p/>
+ * The pipeline keeps a shadow of the context state it changed, so that the state changing actions that would set the current state again are skipped, in the same run or in the next ones. This
+ * assumes that the pipeline is the only one changing that state, so {@link #invalidateState()} must be called after changing it elsewhere, such as in another pipeline. The bound frame buffer is
+ * always forgotten between runs, since frame buffers rebind themselves when their attachments are changed.
  */
 public class Pipeline {
-    private final List<Action> actions;
+    private final Action[] actions;
+    private final PipelineState state = new PipelineState();
 
     /**
      * Constructs a new pipeline from the list of actions.
@@ -61,7 +66,7 @@ public class Pipeline {
      * @param actions The list of actions
      */
     protected Pipeline(List<Action> actions) {
-        this.actions = actions;
+        this.actions = actions.toArray(new Action[actions.size()]);
     }
 
     /**
@@ -70,11 +75,19 @@ public class Pipeline {
      * @param context The context to use.
      */
     public void run(Context context) {
+        state.invalidateFrameBuffer();
         for (Action action : actions) {
-            action.execute(context);
+            action.execute(context, state);
         }
     }
 
+    /**
+     * Forgets the known context state, so that the next run does all the state changes again. This must be called after the state was changed outside of the pipeline.
+     */
+    public void invalidateState() {
+        state.invalidate();
+    }
+
     /**
      * Used to built a pipeline through chained calls.
      */
@@ -188,8 +201,8 @@ public class Pipeline {
         }
 
         /**
-         * Builds the next action in the chain. The actions renders the model list. The models will be reordered to be grouped by material. This reordering is done via a stable sort ({@link
-         * java.util.Arrays#sort(java.lang.Object[])}) so that models with the same materials are not reordered. This grouping improves performance by reducing the amount of rendering calls.
+         * Builds the next action in the chain. The actions renders the model list. The models will be reordered to be grouped by program, textures, material and vertex array. Models with the same
+         * state are not reordered. This grouping improves performance by reducing the amount of rendering calls.
          *
          * @param models The models to render
          * @return The builder itself, for chained calls
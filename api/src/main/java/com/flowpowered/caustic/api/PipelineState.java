@@ -0,0 +1,190 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.FrameBuffer;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+/**
+ * A shadow of the context state changed by the pipeline actions, used to skip the changes to a state that is already current. Each setter records the new state and returns true if it differs from the
+ * known one, in which case the change has to be done in the context. The state starts unknown, and goes back to unknown when invalidated.
+ */
+public class PipelineState {
+    private Vector4f clearColor;
+    private boolean viewPortKnown = false;
+    private int viewPortX, viewPortY, viewPortWidth, viewPortHeight;
+    private final Set<Capability> enabledCapabilities = EnumSet.noneOf(Capability.class);
+    private final Set<Capability> disabledCapabilities = EnumSet.noneOf(Capability.class);
+    private boolean frameBufferKnown = false;
+    private FrameBuffer frameBuffer;
+    private Camera camera;
+    private Boolean depthMask;
+    private BlendFunction blendSource, blendDestination;
+
+    /**
+     * Records the clear color.
+     *
+     * @param color The clear color
+     * @return Whether or not the color has to be set in the context
+     */
+    public boolean setClearColor(Vector4f color) {
+        if (color != null && color.equals(clearColor)) {
+            return false;
+        }
+        clearColor = color;
+        return true;
+    }
+
+    /**
+     * Records the view port. The rectangle is copied, since it is mutable.
+     *
+     * @param viewPort The view port
+     * @return Whether or not the view port has to be set in the context
+     */
+    public boolean setViewPort(Rectangle viewPort) {
+        if (viewPort == null) {
+            return true;
+        }
+        if (viewPortKnown && viewPort.getX() == viewPortX && viewPort.getY() == viewPortY && viewPort.getWidth() == viewPortWidth && viewPort.getHeight() == viewPortHeight) {
+            return false;
+        }
+        viewPortKnown = true;
+        viewPortX = viewPort.getX();
+        viewPortY = viewPort.getY();
+        viewPortWidth = viewPort.getWidth();
+        viewPortHeight = viewPort.getHeight();
+        return true;
+    }
+
+    /**
+     * Records the capability status.
+     *
+     * @param capability The capability
+     * @param enabled Whether or not the capability is enabled
+     * @return Whether or not the capability has to be enabled or disabled in the context
+     */
+    public boolean setCapability(Capability capability, boolean enabled) {
+        if (capability == null) {
+            return true;
+        }
+        final Set<Capability> known = enabled ? enabledCapabilities : disabledCapabilities;
+        if (!known.add(capability)) {
+            return false;
+        }
+        (enabled ? disabledCapabilities : enabledCapabilities).remove(capability);
+        return true;
+    }
+
+    /**
+     * Records the bound frame buffer.
+     *
+     * @param frameBuffer The frame buffer, or null for the default one
+     * @return Whether or not the frame buffer has to be bound (or unbound) in the context
+     */
+    public boolean setFrameBuffer(FrameBuffer frameBuffer) {
+        if (frameBufferKnown && this.frameBuffer == frameBuffer) {
+            return false;
+        }
+        frameBufferKnown = true;
+        this.frameBuffer = frameBuffer;
+        return true;
+    }
+
+    /**
+     * Records the camera.
+     *
+     * @param camera The camera
+     * @return Whether or not the camera has to be set in the context
+     */
+    public boolean setCamera(Camera camera) {
+        if (camera != null && camera == this.camera) {
+            return false;
+        }
+        this.camera = camera;
+        return true;
+    }
+
+    /**
+     * Records the depth mask status.
+     *
+     * @param enabled Whether or not the depth mask is enabled
+     * @return Whether or not the depth mask has to be set in the context
+     */
+    public boolean setDepthMask(boolean enabled) {
+        if (depthMask != null && depthMask == enabled) {
+            return false;
+        }
+        depthMask = enabled;
+        return true;
+    }
+
+    /**
+     * Records the blending functions.
+     *
+     * @param source The source blending function
+     * @param destination The destination blending function
+     * @return Whether or not the blending functions have to be set in the context
+     */
+    public boolean setBlendingFunctions(BlendFunction source, BlendFunction destination) {
+        if (source == null || destination == null) {
+            return true;
+        }
+        if (source == blendSource && destination == blendDestination) {
+            return false;
+        }
+        blendSource = source;
+        blendDestination = destination;
+        return true;
+    }
+
+    /**
+     * Forgets the bound frame buffer. Frame buffers bind themselves when changing their attachments, so this one can't be assumed to stay current outside of the pipeline.
+     */
+    public void invalidateFrameBuffer() {
+        frameBufferKnown = false;
+        frameBuffer = null;
+    }
+
+    /**
+     * Forgets all the state, so that the next changes are all done in the context.
+     */
+    public void invalidate() {
+        clearColor = null;
+        viewPortKnown = false;
+        enabledCapabilities.clear();
+        disabledCapabilities.clear();
+        invalidateFrameBuffer();
+        camera = null;
+        depthMask = null;
+        blendSource = null;
+        blendDestination = null;
+    }
+}
@@ -96,6 +96,15 @@ public class UniformHolder implements Iterable<Uniform> {
         uniforms.remove(name);
     }
 
+    /**
+     * Returns true if the holder has no uniforms.
+     *
+     * @return Whether or not the holder is empty
+     */
+    public boolean isEmpty() {
+        return uniforms.isEmpty();
+    }
+
     /**
      * Removes all the uniforms.
      */
@@ -45,6 +45,7 @@ public class VertexAttribute implements Cloneable {
     protected final DataType type;
     protected final int size;
     protected final UploadMode uploadMode;
+    private int divisor = 0;
     private ByteBuffer buffer;
 
     /**
@@ -109,6 +110,28 @@ public class VertexAttribute implements Cloneable {
         return uploadMode;
     }
 
+    /**
+     * Returns the divisor of the attribute, which is the number of instances drawn before advancing to its next value. Zero means the attribute advances per vertex.
+     *
+     * @return The divisor
+     */
+    public int getDivisor() {
+        return divisor;
+    }
+
+    /**
+     * Sets the divisor of the attribute, which is the number of instances drawn before advancing to its next value. Zero, the default, means the attribute advances per vertex. A divisor greater
+     * than zero makes the attribute a per instance one, for {@link com.flowpowered.caustic.api.gl.VertexArray#drawInstanced(int)}.
+     *
+     * @param divisor The divisor, greater or equal to zero
+     */
+    public void setDivisor(int divisor) {
+        if (divisor < 0) {
+            throw new IllegalArgumentException("Divisor must be greater or equal to zero");
+        }
+        this.divisor = divisor;
+    }
+
     /**
      * Returns a new byte buffer filled and ready to read, containing the attribute data. This method will {@link java.nio.ByteBuffer#flip()} the buffer before returning it.
      *
@@ -216,6 +239,7 @@ public class VertexAttribute implements Cloneable {
     @Override
     public VertexAttribute clone() {
         final VertexAttribute clone = new VertexAttribute(name, type, size, uploadMode);
+        clone.setDivisor(divisor);
         clone.setData(this.buffer);
         return clone;
     }
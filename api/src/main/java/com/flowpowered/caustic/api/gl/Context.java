@@ -67,6 +67,13 @@ public abstract class Context extends Creatable implements GLVersioned {
      */
     public abstract Program newProgram();
 
+    /**
+     * Creates a new occlusion query.
+     *
+     * @return A new occlusion query
+     */
+    public abstract OcclusionQuery newOcclusionQuery();
+
     /**
      * Creates a new render buffer.
      *
@@ -193,6 +200,16 @@ public abstract class Context extends Creatable implements GLVersioned {
      */
     public abstract void setDepthMask(boolean enabled);
 
+    /**
+     * Enables or disables writing into the color buffer, for each component. Disabling all of them is useful for drawing the bounding volumes of an {@link OcclusionQuery}.
+     *
+     * @param red Whether or not to write the red component
+     * @param green Whether or not to write the green component
+     * @param blue Whether or not to write the blue component
+     * @param alpha Whether or not to write the alpha component
+     */
+    public abstract void setColorMask(boolean red, boolean green, boolean blue, boolean alpha);
+
     /**
      * Sets the blending functions for the source and destination buffers, for all buffers. Blending must be enabled with {@link #enableCapability(com.flowpowered.caustic.api.gl.Context.Capability)}.
      *
@@ -0,0 +1,74 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.gl;
+
+import com.flowpowered.caustic.api.Creatable;
+import com.flowpowered.caustic.api.GLVersioned;
+
+/**
+ * Represents an OpenGL occlusion query. The query counts the samples that pass the depth test for all the draw calls between {@link #begin()} and {@link #end()}. It can be used to test if an object
+ * is hidden, by drawing a simpler shape like its bounding box with color and depth writes disabled: if no samples passed, the object doesn't need to be drawn. Only one query can be active at a time.
+ */
+public abstract class OcclusionQuery extends Creatable implements GLVersioned {
+    protected int id;
+
+    @Override
+    public void destroy() {
+        id = 0;
+        super.destroy();
+    }
+
+    /**
+     * Starts counting the samples that pass the depth test. No other query can be active.
+     */
+    public abstract void begin();
+
+    /**
+     * Stops counting the samples. The result will be available once the draw calls since {@link #begin()} are done.
+     */
+    public abstract void end();
+
+    /**
+     * Returns true if the result of the query can be obtained without waiting.
+     *
+     * @return Whether or not the result is available
+     */
+    public abstract boolean isResultAvailable();
+
+    /**
+     * Returns the number of samples that passed the depth test between the last calls to {@link #begin()} and {@link #end()}. This waits for the result if it isn't available yet.
+     *
+     * @return The number of samples that passed
+     */
+    public abstract int getResult();
+
+    /**
+     * Gets the ID for this occlusion query as assigned by OpenGL.
+     *
+     * @return The ID
+     */
+    public int getID() {
+        return id;
+    }
+}
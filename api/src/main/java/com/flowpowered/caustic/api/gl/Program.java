@@ -25,6 +25,7 @@ package com.flowpowered.caustic.api.gl;
 
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.flowpowered.math.matrix.Matrix2f;
 import com.flowpowered.math.matrix.Matrix3f;
@@ -45,6 +46,10 @@ import com.flowpowered.caustic.api.data.UniformHolder;
  * partial, wrong or missing rendering, and affects models using multiple attributes. The texture layout should also be setup using {@link Shader#setTextureLayout(int, String)} in the same way.
  */
 public abstract class Program extends Creatable implements GLVersioned {
+    // Reflects the current available sort ID
+    private static final AtomicInteger SORT_ID_COUNTER = new AtomicInteger();
+    // Private ID for batching models per program for rendering, unlike the OpenGL ID it is never reused
+    private final int sortID = SORT_ID_COUNTER.getAndIncrement();
     protected int id;
 
     @Override
@@ -222,4 +227,13 @@ public abstract class Program extends Creatable implements GLVersioned {
     public int getID() {
         return id;
     }
+
+    /**
+     * Returns the unique ID of this program, in order of construction. Unlike the OpenGL ID, it is never reused and is assigned before the program is created.
+     *
+     * @return The sort ID
+     */
+    public int getSortID() {
+        return sortID;
+    }
 }
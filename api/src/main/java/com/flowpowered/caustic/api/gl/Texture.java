@@ -24,6 +24,7 @@
 package com.flowpowered.caustic.api.gl;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector4f;
@@ -36,6 +37,10 @@ import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
  * Represents a texture for OpenGL. Image data and various parameters can be set after creation. Image data should be set last.
  */
 public abstract class Texture extends Creatable implements GLVersioned {
+    // Reflects the current available sort ID
+    private static final AtomicInteger SORT_ID_COUNTER = new AtomicInteger();
+    // Private ID for batching models per texture for rendering, unlike the OpenGL ID it is never reused
+    private final int sortID = SORT_ID_COUNTER.getAndIncrement();
     protected int id = 0;
 
     @Override
@@ -65,6 +70,15 @@ public abstract class Texture extends Creatable implements GLVersioned {
         return id;
     }
 
+    /**
+     * Returns the unique ID of this texture, in order of construction. Unlike the OpenGL ID, it is never reused and is assigned before the texture is created.
+     *
+     * @return The sort ID
+     */
+    public int getSortID() {
+        return sortID;
+    }
+
     /**
      * Sets the texture's format.
      *
@@ -121,7 +135,8 @@ public abstract class Texture extends Creatable implements GLVersioned {
     public abstract void setWraps(WrapMode horizontalWrap, WrapMode verticalWrap);
 
     /**
-     * Sets the texture's min and mag filters. The mag filter cannot require mipmap generation.
+     * Sets the texture's min and mag filters. The mag filter cannot require mipmap generation. The defaults are those of the implementation: OpenGL uses {@link FilterMode#NEAREST_MIPMAP_LINEAR} and
+     * {@link FilterMode#LINEAR}, while the software renderer uses {@link FilterMode#NEAREST} for both, and only builds mipmaps once a min filter requires them.
      *
      * @param minFilter The min filter
      * @param magFilter The mag filter
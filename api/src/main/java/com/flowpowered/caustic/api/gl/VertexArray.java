@@ -23,15 +23,29 @@
  */
 package com.flowpowered.caustic.api.gl;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.flowpowered.math.vector.Vector3f;
+
 import com.flowpowered.caustic.api.Creatable;
 import com.flowpowered.caustic.api.GLVersioned;
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
 import com.flowpowered.caustic.api.data.VertexData;
 
 /**
  * Represent an OpenGL vertex array. The vertex data must be set with {@link #setData(com.flowpowered.caustic.api.data.VertexData)} before it can be created.
  */
 public abstract class VertexArray extends Creatable implements GLVersioned {
+    // Reflects the current available sort ID
+    private static final AtomicInteger SORT_ID_COUNTER = new AtomicInteger();
+    // Private ID for batching models per vertex array for rendering, unlike the OpenGL ID it is never reused
+    private final int sortID = SORT_ID_COUNTER.getAndIncrement();
     protected int id = 0;
+    // Bounding box and sphere of the positions of the last vertex data, null if unknown
+    private Vector3f boundsMin = null, boundsMax = null, boundsCenter = null;
+    private float boundsRadius = 0;
 
     @Override
     public void destroy() {
@@ -46,6 +60,15 @@ public abstract class VertexArray extends Creatable implements GLVersioned {
      */
     public abstract void setData(VertexData vertexData);
 
+    /**
+     * Sets the data of a single attribute, replacing the one at the index, or adding it if the index is the attribute count. This is cheaper than setting all the vertex data again, so it can be used
+     * for the per instance attributes that change between draws.
+     *
+     * @param index The index of the attribute, between zero and the attribute count inclusively
+     * @param attribute The attribute
+     */
+    public abstract void setAttribute(int index, VertexAttribute attribute);
+
     /**
      * Sets the vertex array's drawing mode.
      *
@@ -81,6 +104,102 @@ public abstract class VertexArray extends Creatable implements GLVersioned {
      */
     public abstract void draw();
 
+    /**
+     * Draws the primitives defined by the vertex data once per instance. The attributes with a divisor greater than zero advance once per that many instances, instead of per vertex.
+     *
+     * @param count The number of instances, greater or equal to zero
+     * @see com.flowpowered.caustic.api.data.VertexAttribute#setDivisor(int)
+     */
+    public abstract void drawInstanced(int count);
+
+    /**
+     * Returns the minimum corner of the bounding box of the vertex positions, computed when the data is set.
+     *
+     * @return The minimum corner, or null if unknown
+     */
+    public Vector3f getBoundsMin() {
+        return boundsMin;
+    }
+
+    /**
+     * Returns the maximum corner of the bounding box of the vertex positions, computed when the data is set.
+     *
+     * @return The maximum corner, or null if unknown
+     */
+    public Vector3f getBoundsMax() {
+        return boundsMax;
+    }
+
+    /**
+     * Returns the center of the bounding sphere of the vertex positions, computed when the data is set. This is the center of the bounding box.
+     *
+     * @return The center, or null if unknown
+     */
+    public Vector3f getBoundsCenter() {
+        return boundsCenter;
+    }
+
+    /**
+     * Returns the radius of the bounding sphere of the vertex positions, computed when the data is set.
+     *
+     * @return The radius, zero if unknown
+     */
+    public float getBoundsRadius() {
+        return boundsRadius;
+    }
+
+    /**
+     * Computes the bounds from the positions, which are expected to be the float attribute at index zero. The bounds are unknown if there is no such attribute. Implementations should call this when
+     * the data is set.
+     *
+     * @param vertexData The vertex data
+     */
+    protected void updateBounds(VertexData vertexData) {
+        boundsMin = null;
+        boundsMax = null;
+        boundsCenter = null;
+        boundsRadius = 0;
+        final VertexAttribute positions = vertexData.getAttribute(0);
+        if (positions == null || positions.getType() != DataType.FLOAT || positions.getDivisor() != 0) {
+            return;
+        }
+        final int size = positions.getSize();
+        final ByteBuffer data = positions.getData();
+        final int count = data.remaining() / (DataType.FLOAT.getByteSize() * size);
+        if (count <= 0 || size < 2) {
+            return;
+        }
+        // Find the bounding box
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            final int index = i * size * DataType.FLOAT.getByteSize();
+            final float x = data.getFloat(index);
+            final float y = data.getFloat(index + 4);
+            final float z = size > 2 ? data.getFloat(index + 8) : 0;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        // Center the sphere on the box, and find the farthest position from the center for the radius
+        final float centerX = (minX + maxX) / 2, centerY = (minY + maxY) / 2, centerZ = (minZ + maxZ) / 2;
+        float radiusSquared = 0;
+        for (int i = 0; i < count; i++) {
+            final int index = i * size * DataType.FLOAT.getByteSize();
+            final float dx = data.getFloat(index) - centerX;
+            final float dy = data.getFloat(index + 4) - centerY;
+            final float dz = (size > 2 ? data.getFloat(index + 8) : 0) - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        boundsMin = new Vector3f(minX, minY, minZ);
+        boundsMax = new Vector3f(maxX, maxY, maxZ);
+        boundsCenter = new Vector3f(centerX, centerY, centerZ);
+        boundsRadius = (float) Math.sqrt(radiusSquared);
+    }
+
     /**
      * Gets the ID for this vertex array as assigned by OpenGL.
      *
@@ -90,6 +209,15 @@ public abstract class VertexArray extends Creatable implements GLVersioned {
         return id;
     }
 
+    /**
+     * Returns the unique ID of this vertex array, in order of construction. Unlike the OpenGL ID, it is never reused and is assigned before the vertex array is created.
+     *
+     * @return The sort ID
+     */
+    public int getSortID() {
+        return sortID;
+    }
+
     /**
      * Represents the different drawing modes for the vertex array
      */
@@ -26,9 +26,11 @@ package com.flowpowered.caustic.api.model;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.flowpowered.caustic.api.Camera;
 import com.flowpowered.caustic.api.Material;
 import com.flowpowered.caustic.api.data.UniformHolder;
 import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.util.CausticUtil;
 import com.flowpowered.math.imaginary.Quaternionf;
 import com.flowpowered.math.matrix.Matrix4f;
 import com.flowpowered.math.vector.Vector3f;
@@ -38,6 +40,10 @@ import com.flowpowered.math.vector.Vector3f;
  * shader.
  */
 public class Model implements Comparable<Model> {
+    /**
+     * The number of floats written by {@link #getWorldBounds(float[], int)}.
+     */
+    public static final int WORLD_BOUNDS_SIZE = 10;
     // Vertex array
     private VertexArray vertexArray;
     // Material
@@ -48,13 +54,26 @@ public class Model implements Comparable<Model> {
     private Quaternionf rotation = new Quaternionf();
     private Matrix4f matrix = new Matrix4f();
     private boolean updateMatrix = true;
+    // Changed every time the matrix changes
+    private int matrixVersion = 0;
+    // The normal matrix, cached with the versions of the matrices it was computed from
+    private Matrix4f normalMatrix = null;
+    private Camera normalMatrixCamera = null;
+    private int normalMatrixVersion, normalMatrixViewVersion;
     // Model uniforms
     private final UniformHolder uniforms = new UniformHolder();
+    // Optional bounding box of the mesh in model space, and whether or not the mesh fills it
+    private Vector3f boundsMin = null;
+    private Vector3f boundsMax = null;
+    private boolean occluder = false;
     // Optional parent model
     private Model parent = null;
     private final Set<Model> children = new HashSet<>();
     private Matrix4f lastParentMatrix = null;
     private Matrix4f childMatrix = null;
+    // Optional transform store holding the matrix, and the model's slot in it
+    private TransformStore store = null;
+    private int slot = -1;
 
     /**
      * An empty constructor for child classes only.
@@ -70,6 +89,9 @@ public class Model implements Comparable<Model> {
     protected Model(Model model) {
         this.vertexArray = model.getVertexArray();
         this.material = model.getMaterial();
+        this.boundsMin = model.boundsMin;
+        this.boundsMax = model.boundsMax;
+        this.occluder = model.isOccluder();
         uniforms.addAll(model.uniforms);
     }
 
@@ -99,7 +121,8 @@ public class Model implements Comparable<Model> {
     }
 
     /**
-     * Draws the model to the screen.
+     * Draws the model to the screen. Overrides may change the draw range or the uniforms, but must leave the context state recorded by {@link com.flowpowered.caustic.api.PipelineState} (capabilities,
+     * depth mask, blending functions, view port, frame buffer, clear color and camera) as they found it, since the pipeline doesn't invalidate that state after rendering the models.
      */
     public void render() {
         if (vertexArray == null) {
@@ -152,17 +175,135 @@ public class Model implements Comparable<Model> {
     }
 
     /**
-     * Returns the transformation matrix that represent the model's current scale, rotation and position.
+     * Returns the minimum corner of the model's bounding box, in model space. If the bounds aren't set, they are those of the vertex array.
+     *
+     * @return The minimum corner, or null if the bounds are unknown
+     */
+    public Vector3f getBoundsMin() {
+        if (boundsMin == null && vertexArray != null) {
+            return vertexArray.getBoundsMin();
+        }
+        return boundsMin;
+    }
+
+    /**
+     * Returns the maximum corner of the model's bounding box, in model space. If the bounds aren't set, they are those of the vertex array.
+     *
+     * @return The maximum corner, or null if the bounds are unknown
+     */
+    public Vector3f getBoundsMax() {
+        if (boundsMax == null && vertexArray != null) {
+            return vertexArray.getBoundsMax();
+        }
+        return boundsMax;
+    }
+
+    /**
+     * Writes the model's bounds transformed to world space by the model matrix, for culling. The bounds are written as the minimum and maximum corners of the bounding box, followed by the center
+     * and radius of the bounding sphere, for a total of {@link #WORLD_BOUNDS_SIZE} floats. Nothing is written if the bounds are unknown.
+     *
+     * @param destination The array to write to
+     * @param offset The offset at which to start writing
+     * @return Whether or not the bounds are known and were written
+     */
+    public boolean getWorldBounds(float[] destination, int offset) {
+        final Vector3f min = getBoundsMin();
+        if (min == null) {
+            return false;
+        }
+        final Vector3f max = getBoundsMax();
+        final float boxX = (min.getX() + max.getX()) / 2, boxY = (min.getY() + max.getY()) / 2, boxZ = (min.getZ() + max.getZ()) / 2;
+        final float extentX = (max.getX() - min.getX()) / 2, extentY = (max.getY() - min.getY()) / 2, extentZ = (max.getZ() - min.getZ()) / 2;
+        // Use the tighter sphere of the vertex array if the bounds aren't set, else the one around the box
+        final float sphereX, sphereY, sphereZ, radius;
+        if (boundsMin == null) {
+            final Vector3f center = vertexArray.getBoundsCenter();
+            sphereX = center.getX();
+            sphereY = center.getY();
+            sphereZ = center.getZ();
+            radius = vertexArray.getBoundsRadius();
+        } else {
+            sphereX = boxX;
+            sphereY = boxY;
+            sphereZ = boxZ;
+            radius = (float) Math.sqrt(extentX * extentX + extentY * extentY + extentZ * extentZ);
+        }
+        final Matrix4f matrix = getMatrix();
+        for (int row = 0; row < 3; row++) {
+            final float m0 = matrix.get(row, 0), m1 = matrix.get(row, 1), m2 = matrix.get(row, 2), m3 = matrix.get(row, 3);
+            // Transform the box center, and project the box extents on the world axis
+            final float boxCenter = m0 * boxX + m1 * boxY + m2 * boxZ + m3;
+            final float extent = Math.abs(m0) * extentX + Math.abs(m1) * extentY + Math.abs(m2) * extentZ;
+            destination[offset + row] = boxCenter - extent;
+            destination[offset + 3 + row] = boxCenter + extent;
+            // Transform the sphere center
+            destination[offset + 6 + row] = m0 * sphereX + m1 * sphereY + m2 * sphereZ + m3;
+        }
+        // Scale the radius by the largest scale of the axes
+        float scaleSquared = 0;
+        for (int column = 0; column < 3; column++) {
+            final float x = matrix.get(0, column), y = matrix.get(1, column), z = matrix.get(2, column);
+            scaleSquared = Math.max(scaleSquared, x * x + y * y + z * z);
+        }
+        destination[offset + 9] = radius * (float) Math.sqrt(scaleSquared);
+        return true;
+    }
+
+    /**
+     * Sets the model's bounding box, in model space, which must contain the whole mesh. It is used to skip drawing the model when it is hidden. Both corners can be null to remove the bounds, in which
+     * case those of the vertex array are used.
+     *
+     * @param min The minimum corner
+     * @param max The maximum corner
+     */
+    public void setBounds(Vector3f min, Vector3f max) {
+        if ((min == null) != (max == null)) {
+            throw new IllegalArgumentException("Both corners must be null or not null");
+        }
+        if (min != null && (min.getX() > max.getX() || min.getY() > max.getY() || min.getZ() > max.getZ())) {
+            throw new IllegalArgumentException("Minimum corner cannot be greater than the maximum one");
+        }
+        boundsMin = min;
+        boundsMax = max;
+    }
+
+    /**
+     * Returns true if the model's mesh fills its bounding box, so it can hide the models behind it.
+     *
+     * @return Whether or not the model is an occluder
+     */
+    public boolean isOccluder() {
+        return occluder;
+    }
+
+    /**
+     * Sets if the model's mesh fills its bounding box, so it can hide the models behind it. This should only be set for solid box shaped meshes, like walls or cubes, else visible models might be
+     * skipped. It has no effect if the bounds aren't set.
+     *
+     * @param occluder Whether or not the model is an occluder
+     */
+    public void setOccluder(boolean occluder) {
+        this.occluder = occluder;
+    }
+
+    /**
+     * Returns the transformation matrix that represent the model's current scale, rotation and position. If the model is in a {@link TransformStore}, the matrix is read from it.
      *
      * @return The transformation matrix
      */
     public Matrix4f getMatrix() {
+        if (store != null) {
+            return store.getMatrix(slot);
+        }
         if (updateMatrix) {
             final Matrix4f matrix = Matrix4f.createScaling(scale.toVector4(1)).rotate(rotation).translate(position);
             if (parent == null) {
                 this.matrix = matrix;
+                matrixVersion++;
             } else {
                 childMatrix = matrix;
+                // Force the product with the parent matrix to be updated
+                lastParentMatrix = null;
             }
             updateMatrix = false;
         }
@@ -171,11 +312,32 @@ public class Model implements Comparable<Model> {
             if (parentMatrix != lastParentMatrix) {
                 matrix = parentMatrix.mul(childMatrix);
                 lastParentMatrix = parentMatrix;
+                matrixVersion++;
             }
         }
         return matrix;
     }
 
+    /**
+     * Returns the normal matrix for the camera, which is the inverse transpose of the product of the camera's view matrix and the model's matrix. It is only computed again when either of them
+     * changed since the last call.
+     *
+     * @param camera The camera
+     * @return The normal matrix
+     */
+    public Matrix4f getNormalMatrix(Camera camera) {
+        final Matrix4f matrix = getMatrix();
+        final int matrixVersion = store != null ? store.getVersion(slot) : this.matrixVersion;
+        final int viewVersion = camera.getViewVersion();
+        if (normalMatrix == null || camera != normalMatrixCamera || matrixVersion != normalMatrixVersion || viewVersion != normalMatrixViewVersion) {
+            normalMatrix = CausticUtil.createNormalMatrix(camera.getViewMatrix(), matrix);
+            normalMatrixCamera = camera;
+            normalMatrixVersion = matrixVersion;
+            normalMatrixViewVersion = viewVersion;
+        }
+        return normalMatrix;
+    }
+
     /**
      * Gets the model position.
      *
@@ -192,7 +354,7 @@ public class Model implements Comparable<Model> {
      */
     public void setPosition(Vector3f position) {
         this.position = position;
-        updateMatrix = true;
+        transformChanged();
     }
 
     /**
@@ -211,7 +373,7 @@ public class Model implements Comparable<Model> {
      */
     public void setRotation(Quaternionf rotation) {
         this.rotation = rotation;
-        updateMatrix = true;
+        transformChanged();
     }
 
     /**
@@ -230,7 +392,7 @@ public class Model implements Comparable<Model> {
      */
     public void setScale(Vector3f scale) {
         this.scale = scale;
-        updateMatrix = true;
+        transformChanged();
     }
 
     /**
@@ -278,12 +440,48 @@ public class Model implements Comparable<Model> {
         if (parent == this) {
             throw new IllegalArgumentException("The model can't be its own parent");
         }
+        if (store != null) {
+            if (parent != null && parent.store != store) {
+                throw new IllegalArgumentException("The parent must be in the same transform store");
+            }
+            store.setParent(slot, parent == null ? -1 : parent.slot);
+        }
         if (parent == null) {
             this.parent.children.remove(this);
         } else {
             parent.children.add(this);
         }
         this.parent = parent;
+        // The matrix has to be computed again relative to the new parent
+        lastParentMatrix = null;
+        updateMatrix = true;
+    }
+
+    // Returns the transform store holding the matrix, or null if none
+    TransformStore getStore() {
+        return store;
+    }
+
+    // Returns the slot in the transform store, or -1 if none
+    int getSlot() {
+        return slot;
+    }
+
+    // Sets the transform store holding the matrix and the slot in it, or null and -1 to compute it again
+    void setStore(TransformStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+        updateMatrix = true;
+        lastParentMatrix = null;
+        // The store and the model use different versions, so they can't be compared
+        normalMatrix = null;
+    }
+
+    private void transformChanged() {
+        updateMatrix = true;
+        if (store != null) {
+            store.setLocal(slot, position, rotation, scale);
+        }
     }
 
     @Override
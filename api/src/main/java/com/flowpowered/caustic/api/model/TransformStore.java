@@ -0,0 +1,371 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+/**
+ * Stores the transforms of many models in flat arrays, so that their world matrices can be updated in bulk. Each model added gets a slot, with its local matrix, world matrix, parent slot and dirty
+ * bit. The slots are ordered by depth in the hierarchy, so a single linear pass updates all the world matrices, each after its parent's. Changes propagate to the children through the version of the
+ * parent matrix, so only the changed transforms and their descendants are computed again. Depth levels with many transforms are updated in parallel.
+ * <p/>
+ * Once a model is added, {@link Model#getMatrix()} reads its matrix from the store, which is updated first if needed. Parents must be added before their children, and children must be removed
+ * before their parents. The parent of a model in a store must be in the same store.
+ */
+public class TransformStore {
+    private static final int MATRIX_SIZE = 16;
+    // Levels with at least this many transforms are split in tasks of at least the minimum size
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int MINIMUM_TASK_SIZE = 1024;
+    private static ForkJoinPool pool;
+    // The models of the slots, null for the free ones, and the stack of free slots
+    private Model[] models = new Model[0];
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private int size = 0;
+    // The row major local and world matrices of each slot
+    private float[] locals = new float[0];
+    private float[] worlds = new float[0];
+    // The parent slot of each slot, -1 for none, and the number of children
+    private int[] parents = new int[0];
+    private int[] childCounts = new int[0];
+    // Whether or not the local matrix changed since the last update
+    private boolean[] dirty = new boolean[0];
+    private boolean anyDirty = false;
+    // The version of each world matrix, and the one of the parent when it was last computed
+    private int[] versions = new int[0];
+    private int[] parentVersions = new int[0];
+    // The matrix objects for the world matrices, built when requested, and the versions they were built for
+    private Matrix4f[] matrices = new Matrix4f[0];
+    private int[] matrixVersions = new int[0];
+    // The slots ordered by depth, the start of each depth level in the order, and the depth of each slot
+    private int[] order = new int[0];
+    private int[] levelStarts = new int[0];
+    private int levelCount = 0;
+    private int[] depths = new int[0];
+    private boolean orderDirty = false;
+
+    /**
+     * Adds the model to the store, with its current transform and parent. Its matrix will be read from the store from now on.
+     *
+     * @param model The model to add
+     * @throws IllegalArgumentException If the model is already in a store, or if its parent isn't in this one
+     */
+    public void add(Model model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Model cannot be null");
+        }
+        if (model.getStore() != null) {
+            throw new IllegalArgumentException("Model is already in a transform store");
+        }
+        final Model parent = model.getParent();
+        if (parent != null && parent.getStore() != this) {
+            throw new IllegalArgumentException("The parent must be added to the store first");
+        }
+        // Reuse a free slot if any, else grow the arrays
+        final int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = size + freeCount;
+            if (slot >= models.length) {
+                grow(Math.max(16, models.length * 2));
+            }
+        }
+        size++;
+        models[slot] = model;
+        parents[slot] = parent == null ? -1 : parent.getSlot();
+        if (parent != null) {
+            childCounts[parent.getSlot()]++;
+        }
+        childCounts[slot] = 0;
+        // Force the world matrix to be computed
+        versions[slot]++;
+        parentVersions[slot] = -1;
+        matrices[slot] = null;
+        model.setStore(this, slot);
+        setLocal(slot, model.getPosition(), model.getRotation(), model.getScale());
+        orderDirty = true;
+    }
+
+    /**
+     * Removes the model from the store. Its matrix will be computed by itself again.
+     *
+     * @param model The model to remove
+     * @throws IllegalArgumentException If the model isn't in this store, or if some of its children still are
+     */
+    public void remove(Model model) {
+        if (model == null || model.getStore() != this) {
+            throw new IllegalArgumentException("Model isn't in this transform store");
+        }
+        final int slot = model.getSlot();
+        if (childCounts[slot] > 0) {
+            throw new IllegalArgumentException("The children must be removed from the store first");
+        }
+        final int parent = parents[slot];
+        if (parent >= 0) {
+            childCounts[parent]--;
+        }
+        models[slot] = null;
+        matrices[slot] = null;
+        parents[slot] = -1;
+        dirty[slot] = false;
+        freeSlots[freeCount++] = slot;
+        size--;
+        model.setStore(null, -1);
+        orderDirty = true;
+    }
+
+    /**
+     * Returns the number of models in the store.
+     *
+     * @return The number of models
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Updates the world matrices of the changed transforms and their descendants. This is done automatically when a matrix is read from the store, but can be called after changing many transforms to
+     * do it ahead of time.
+     */
+    public void update() {
+        if (!anyDirty) {
+            return;
+        }
+        if (orderDirty) {
+            buildOrder();
+        }
+        for (int level = 0; level < levelCount; level++) {
+            final int start = levelStarts[level];
+            final int end = levelStarts[level + 1];
+            // The transforms of a level only depend on the previous ones, so they can be updated in parallel
+            if (end - start >= PARALLEL_THRESHOLD) {
+                getPool().invoke(new UpdateTask(start, end));
+            } else {
+                updateRange(start, end);
+            }
+        }
+        anyDirty = false;
+    }
+
+    private void updateRange(int start, int end) {
+        for (int i = start; i < end; i++) {
+            final int slot = order[i];
+            final int parent = parents[slot];
+            final int parentVersion = parent >= 0 ? versions[parent] : 0;
+            if (!dirty[slot] && parentVersion == parentVersions[slot]) {
+                continue;
+            }
+            final int offset = slot * MATRIX_SIZE;
+            if (parent >= 0) {
+                multiply(worlds, parent * MATRIX_SIZE, locals, offset, worlds, offset);
+            } else {
+                System.arraycopy(locals, offset, worlds, offset, MATRIX_SIZE);
+            }
+            dirty[slot] = false;
+            parentVersions[slot] = parentVersion;
+            versions[slot]++;
+        }
+    }
+
+    // Sorts the slots by depth with a counting sort, so that parents are always before their children
+    private void buildOrder() {
+        final int capacity = models.length;
+        Arrays.fill(depths, 0, capacity, -1);
+        int maxDepth = -1;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (models[slot] == null || depths[slot] >= 0) {
+                continue;
+            }
+            // Walk up to the first ancestor with a known depth, then assign the depths back down
+            int steps = 0;
+            int ancestor = slot;
+            while (ancestor >= 0 && depths[ancestor] < 0) {
+                steps++;
+                ancestor = parents[ancestor];
+            }
+            int depth = (ancestor < 0 ? -1 : depths[ancestor]) + steps;
+            maxDepth = Math.max(maxDepth, depth);
+            for (ancestor = slot; ancestor >= 0 && depths[ancestor] < 0; ancestor = parents[ancestor]) {
+                depths[ancestor] = depth--;
+            }
+        }
+        levelCount = maxDepth + 1;
+        if (levelStarts.length < levelCount + 1) {
+            levelStarts = new int[levelCount + 1];
+        }
+        Arrays.fill(levelStarts, 0, levelCount + 1, 0);
+        for (int slot = 0; slot < capacity; slot++) {
+            if (models[slot] != null) {
+                levelStarts[depths[slot] + 1]++;
+            }
+        }
+        for (int level = 0; level < levelCount; level++) {
+            levelStarts[level + 1] += levelStarts[level];
+        }
+        // Use the depths as the insertion positions, since they aren't needed anymore
+        for (int slot = 0; slot < capacity; slot++) {
+            if (models[slot] != null) {
+                order[levelStarts[depths[slot]]++] = slot;
+            }
+        }
+        // Shift the starts back, as they were advanced to the end of their level
+        for (int level = levelCount; level > 0; level--) {
+            levelStarts[level] = levelStarts[level - 1];
+        }
+        levelStarts[0] = 0;
+        orderDirty = false;
+    }
+
+    // Returns the world matrix of the slot, updating the store if needed
+    Matrix4f getMatrix(int slot) {
+        update();
+        if (matrices[slot] == null || matrixVersions[slot] != versions[slot]) {
+            final float[] w = worlds;
+            final int o = slot * MATRIX_SIZE;
+            matrices[slot] = new Matrix4f(
+                    w[o], w[o + 1], w[o + 2], w[o + 3],
+                    w[o + 4], w[o + 5], w[o + 6], w[o + 7],
+                    w[o + 8], w[o + 9], w[o + 10], w[o + 11],
+                    w[o + 12], w[o + 13], w[o + 14], w[o + 15]);
+            matrixVersions[slot] = versions[slot];
+        }
+        return matrices[slot];
+    }
+
+    // Returns the version of the world matrix of the slot, which changes every time it does
+    int getVersion(int slot) {
+        update();
+        return versions[slot];
+    }
+
+    // Sets the local matrix of the slot to the translation, rotation and scale, applied in the reverse order
+    void setLocal(int slot, Vector3f position, Quaternionf rotation, Vector3f scale) {
+        final float x = rotation.getX(), y = rotation.getY(), z = rotation.getZ(), w = rotation.getW();
+        final float lengthSquared = x * x + y * y + z * z + w * w;
+        final float s = lengthSquared > 0 ? 2 / lengthSquared : 0;
+        final float sx = scale.getX(), sy = scale.getY(), sz = scale.getZ();
+        final float[] m = locals;
+        final int o = slot * MATRIX_SIZE;
+        m[o] = (1 - s * (y * y + z * z)) * sx;
+        m[o + 1] = s * (x * y - z * w) * sy;
+        m[o + 2] = s * (x * z + y * w) * sz;
+        m[o + 3] = position.getX();
+        m[o + 4] = s * (x * y + z * w) * sx;
+        m[o + 5] = (1 - s * (x * x + z * z)) * sy;
+        m[o + 6] = s * (y * z - x * w) * sz;
+        m[o + 7] = position.getY();
+        m[o + 8] = s * (x * z - y * w) * sx;
+        m[o + 9] = s * (y * z + x * w) * sy;
+        m[o + 10] = (1 - s * (x * x + y * y)) * sz;
+        m[o + 11] = position.getZ();
+        m[o + 12] = 0;
+        m[o + 13] = 0;
+        m[o + 14] = 0;
+        m[o + 15] = 1;
+        dirty[slot] = true;
+        anyDirty = true;
+    }
+
+    // Sets the parent of the slot, -1 for none
+    void setParent(int slot, int parent) {
+        for (int ancestor = parent; ancestor >= 0; ancestor = parents[ancestor]) {
+            if (ancestor == slot) {
+                throw new IllegalArgumentException("The parent can't be a descendant of the model");
+            }
+        }
+        final int previous = parents[slot];
+        if (previous >= 0) {
+            childCounts[previous]--;
+        }
+        if (parent >= 0) {
+            childCounts[parent]++;
+        }
+        parents[slot] = parent;
+        dirty[slot] = true;
+        anyDirty = true;
+        orderDirty = true;
+    }
+
+    private void grow(int capacity) {
+        models = Arrays.copyOf(models, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        locals = Arrays.copyOf(locals, capacity * MATRIX_SIZE);
+        worlds = Arrays.copyOf(worlds, capacity * MATRIX_SIZE);
+        parents = Arrays.copyOf(parents, capacity);
+        childCounts = Arrays.copyOf(childCounts, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        parentVersions = Arrays.copyOf(parentVersions, capacity);
+        matrices = Arrays.copyOf(matrices, capacity);
+        matrixVersions = Arrays.copyOf(matrixVersions, capacity);
+        order = Arrays.copyOf(order, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+    }
+
+    // Multiplies the row major matrices a and b into the destination, which can't be a
+    private static void multiply(float[] a, int aOffset, float[] b, int bOffset, float[] destination, int offset) {
+        for (int row = 0; row < 4; row++) {
+            final int r = aOffset + row * 4;
+            final float a0 = a[r], a1 = a[r + 1], a2 = a[r + 2], a3 = a[r + 3];
+            for (int column = 0; column < 4; column++) {
+                destination[offset + row * 4 + column] = a0 * b[bOffset + column] + a1 * b[bOffset + 4 + column] + a2 * b[bOffset + 8 + column] + a3 * b[bOffset + 12 + column];
+            }
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    private class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+        private final int start, end;
+
+        private UpdateTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= MINIMUM_TASK_SIZE) {
+                updateRange(start, end);
+                return;
+            }
+            final int middle = (start + end) >>> 1;
+            invokeAll(new UpdateTask(start, middle), new UpdateTask(middle, end));
+        }
+    }
+}
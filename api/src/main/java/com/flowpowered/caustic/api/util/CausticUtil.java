@@ -38,6 +38,7 @@ import java.nio.ShortBuffer;
 import java.util.logging.Logger;
 
 import com.flowpowered.math.GenericMath;
+import com.flowpowered.math.matrix.Matrix4f;
 import com.flowpowered.math.vector.Vector4f;
 
 import com.flowpowered.caustic.api.GLVersioned;
@@ -358,6 +359,51 @@ public final class CausticUtil {
         return new Color(c.getX(), c.getY(), c.getZ(), c.getW());
     }
 
+    /**
+     * Creates the normal matrix for the view and model matrices, which is the inverse transpose of their product. This is computed directly from the components, so the result is the only allocated
+     * matrix.
+     *
+     * @param view The view matrix
+     * @param model The model matrix
+     * @return The normal matrix
+     * @throws ArithmeticException If the product of the matrices can't be inverted
+     */
+    public static Matrix4f createNormalMatrix(Matrix4f view, Matrix4f model) {
+        // Multiply the view and model matrices
+        final float a00 = multiplyRowColumn(view, 0, model, 0), a01 = multiplyRowColumn(view, 0, model, 1), a02 = multiplyRowColumn(view, 0, model, 2), a03 = multiplyRowColumn(view, 0, model, 3);
+        final float a10 = multiplyRowColumn(view, 1, model, 0), a11 = multiplyRowColumn(view, 1, model, 1), a12 = multiplyRowColumn(view, 1, model, 2), a13 = multiplyRowColumn(view, 1, model, 3);
+        final float a20 = multiplyRowColumn(view, 2, model, 0), a21 = multiplyRowColumn(view, 2, model, 1), a22 = multiplyRowColumn(view, 2, model, 2), a23 = multiplyRowColumn(view, 2, model, 3);
+        final float a30 = multiplyRowColumn(view, 3, model, 0), a31 = multiplyRowColumn(view, 3, model, 1), a32 = multiplyRowColumn(view, 3, model, 2), a33 = multiplyRowColumn(view, 3, model, 3);
+        // Compute the 2x2 determinants of the top and bottom rows, shared by the cofactors
+        final float b00 = a00 * a11 - a01 * a10;
+        final float b01 = a00 * a12 - a02 * a10;
+        final float b02 = a00 * a13 - a03 * a10;
+        final float b03 = a01 * a12 - a02 * a11;
+        final float b04 = a01 * a13 - a03 * a11;
+        final float b05 = a02 * a13 - a03 * a12;
+        final float b06 = a20 * a31 - a21 * a30;
+        final float b07 = a20 * a32 - a22 * a30;
+        final float b08 = a20 * a33 - a23 * a30;
+        final float b09 = a21 * a32 - a22 * a31;
+        final float b10 = a21 * a33 - a23 * a31;
+        final float b11 = a22 * a33 - a23 * a32;
+        final float det = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+        if (Math.abs(det) < GenericMath.FLT_EPSILON) {
+            throw new ArithmeticException("Cannot inverse a matrix with a zero determinant");
+        }
+        final float d = 1 / det;
+        // Write the inverse transposed
+        return new Matrix4f(
+                (a11 * b11 - a12 * b10 + a13 * b09) * d, (a12 * b08 - a10 * b11 - a13 * b07) * d, (a10 * b10 - a11 * b08 + a13 * b06) * d, (a11 * b07 - a10 * b09 - a12 * b06) * d,
+                (a02 * b10 - a01 * b11 - a03 * b09) * d, (a00 * b11 - a02 * b08 + a03 * b07) * d, (a01 * b08 - a00 * b10 - a03 * b06) * d, (a00 * b09 - a01 * b07 + a02 * b06) * d,
+                (a31 * b05 - a32 * b04 + a33 * b03) * d, (a32 * b02 - a30 * b05 - a33 * b01) * d, (a30 * b04 - a31 * b02 + a33 * b00) * d, (a31 * b01 - a30 * b03 - a32 * b00) * d,
+                (a22 * b04 - a21 * b05 - a23 * b03) * d, (a20 * b05 - a22 * b02 + a23 * b01) * d, (a21 * b02 - a20 * b04 - a23 * b00) * d, (a20 * b03 - a21 * b01 + a22 * b00) * d);
+    }
+
+    private static float multiplyRowColumn(Matrix4f a, int row, Matrix4f b, int column) {
+        return a.get(row, 0) * b.get(0, column) + a.get(row, 1) * b.get(1, column) + a.get(row, 2) * b.get(2, column) + a.get(row, 3) * b.get(3, column);
+    }
+
     /**
      * Creates a byte buffer of the desired capacity.
      *
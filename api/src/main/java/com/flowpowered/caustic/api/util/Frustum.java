@@ -0,0 +1,138 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.util;
+
+import com.flowpowered.math.matrix.Matrix4f;
+
+/**
+ * The six planes of a camera's view frustum, in world space, used to test if bounding volumes are visible. The planes are extracted from the product of the projection and view matrices, and point
+ * inwards.
+ */
+public class Frustum {
+    private static final int PLANE_COUNT = 6;
+    // The number of floats of the bounds tested in batches
+    private static final int BOUNDS_SIZE = 10;
+    // The normal x, y and z and the distance of each plane
+    private final float[] planes = new float[PLANE_COUNT * 4];
+
+    /**
+     * Updates the planes for the projection and view matrices.
+     *
+     * @param projection The projection matrix
+     * @param view The view matrix
+     */
+    public void update(Matrix4f projection, Matrix4f view) {
+        // Compute the last row of the view projection matrix, which is added to or subtracted from the others
+        final float w0 = multiplyRowColumn(projection, 3, view, 0), w1 = multiplyRowColumn(projection, 3, view, 1);
+        final float w2 = multiplyRowColumn(projection, 3, view, 2), w3 = multiplyRowColumn(projection, 3, view, 3);
+        // The left and right, bottom and top, and near and far planes come from the first, second and third rows
+        for (int row = 0; row < 3; row++) {
+            final float r0 = multiplyRowColumn(projection, row, view, 0), r1 = multiplyRowColumn(projection, row, view, 1);
+            final float r2 = multiplyRowColumn(projection, row, view, 2), r3 = multiplyRowColumn(projection, row, view, 3);
+            setPlane(row * 2, w0 + r0, w1 + r1, w2 + r2, w3 + r3);
+            setPlane(row * 2 + 1, w0 - r0, w1 - r1, w2 - r2, w3 - r3);
+        }
+    }
+
+    private void setPlane(int plane, float x, float y, float z, float distance) {
+        // Normalize the plane so that the distances to it are in world units
+        final float length = (float) Math.sqrt(x * x + y * y + z * z);
+        final float inverse = length > 0 ? 1 / length : 0;
+        final int index = plane * 4;
+        planes[index] = x * inverse;
+        planes[index + 1] = y * inverse;
+        planes[index + 2] = z * inverse;
+        planes[index + 3] = distance * inverse;
+    }
+
+    private static float multiplyRowColumn(Matrix4f a, int row, Matrix4f b, int column) {
+        return a.get(row, 0) * b.get(0, column) + a.get(row, 1) * b.get(1, column) + a.get(row, 2) * b.get(2, column) + a.get(row, 3) * b.get(3, column);
+    }
+
+    /**
+     * Returns true if the sphere is at least partially inside the frustum.
+     *
+     * @param x The x coordinate of the center
+     * @param y The y coordinate of the center
+     * @param z The z coordinate of the center
+     * @param radius The radius
+     * @return Whether or not the sphere is visible
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the axis aligned box is at least partially inside the frustum. Boxes near the frustum corners might be reported as visible while outside.
+     *
+     * @param minX The minimum x coordinate
+     * @param minY The minimum y coordinate
+     * @param minZ The minimum z coordinate
+     * @param maxX The maximum x coordinate
+     * @param maxY The maximum y coordinate
+     * @param maxZ The maximum z coordinate
+     * @return Whether or not the box is visible
+     */
+    public boolean intersectsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            final float x = planes[i], y = planes[i + 1], z = planes[i + 2];
+            // Test the corner the farthest along the plane normal
+            if (x * (x > 0 ? maxX : minX) + y * (y > 0 ? maxY : minY) + z * (z > 0 ? maxZ : minZ) + planes[i + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests a batch of bounds, each made of the minimum x, y and z and maximum x, y and z of a box, followed by the center x, y and z and radius of a sphere around it, as written by {@link
+     * com.flowpowered.caustic.api.model.Model#getWorldBounds(float[], int)}. The sphere is tested first, and the box only if the sphere isn't rejected.
+     *
+     * @param bounds The packed bounds
+     * @param stride The number of floats from the start of one of the bounds to the next, at least 10
+     * @param count The number of bounds to test
+     * @param visible Where to write the result for each of the bounds
+     * @return The number of visible bounds
+     */
+    public int intersectsBounds(float[] bounds, int stride, int count, boolean[] visible) {
+        if (stride < BOUNDS_SIZE) {
+            throw new IllegalArgumentException("Stride cannot be smaller than " + BOUNDS_SIZE);
+        }
+        int visibleCount = 0;
+        for (int i = 0, j = 0; i < count; i++, j += stride) {
+            final boolean result = intersectsSphere(bounds[j + 6], bounds[j + 7], bounds[j + 8], bounds[j + 9])
+                    && intersectsBox(bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3], bounds[j + 4], bounds[j + 5]);
+            visible[i] = result;
+            if (result) {
+                visibleCount++;
+            }
+        }
+        return visibleCount;
+    }
+}
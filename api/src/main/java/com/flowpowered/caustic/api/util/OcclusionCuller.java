@@ -0,0 +1,241 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.util;
+
+import java.util.Arrays;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+import com.flowpowered.caustic.api.Camera;
+import com.flowpowered.caustic.api.model.Model;
+
+/**
+ * A coarse occlusion culler running on the CPU, used to skip the hidden models before their draw calls are issued. The bounding boxes of the occluder models are rasterized into a low resolution
+ * depth buffer, against which the bounding boxes of the models are tested. Occluders only write their farthest depth, and only to the cells they cover entirely, so a visible model is never reported
+ * as hidden, as long as the occluders fill their bounds.
+ *
+ * @see Model#setOccluder(boolean)
+ */
+public class OcclusionCuller {
+    private final int width, height;
+    // The depth of each cell in normalized device coordinates, by rows
+    private final float[] depths;
+    private Matrix4f viewProjection = Matrix4f.IDENTITY;
+    // The projected corners of the last box, as x and y in cells followed by the depth
+    private final float[] corners = new float[8 * 3];
+    // The corner indices, sorted to compute the convex hull, and the hull in counter-clockwise order
+    private final int[] sortedCorners = new int[8];
+    private final int[] hull = new int[8 * 2];
+
+    /**
+     * Constructs a new occlusion culler with a depth buffer of the desired size. The resolution should be low, as the occluders and models are tested by cell.
+     *
+     * @param width The width of the depth buffer, in cells
+     * @param height The height of the depth buffer, in cells
+     */
+    public OcclusionCuller(int width, int height) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width must be greater than zero");
+        }
+        if (height <= 0) {
+            throw new IllegalArgumentException("Height must be greater than zero");
+        }
+        this.width = width;
+        this.height = height;
+        depths = new float[width * height];
+    }
+
+    /**
+     * Clears the depth buffer and starts culling for the camera. The occluders should then be added before testing the models.
+     *
+     * @param camera The camera the models will be rendered with
+     */
+    public void begin(Camera camera) {
+        if (camera == null) {
+            throw new IllegalArgumentException("Camera cannot be null");
+        }
+        viewProjection = camera.getProjectionMatrix().mul(camera.getViewMatrix());
+        Arrays.fill(depths, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Rasterizes the model's bounding box into the depth buffer, if it is an occluder with bounds. Else this does nothing.
+     *
+     * @param model The model to add as an occluder
+     */
+    public void addOccluder(Model model) {
+        if (!model.isOccluder() || model.getBoundsMin() == null || !project(model)) {
+            return;
+        }
+        final int hullSize = computeHull();
+        // Nothing can be covered entirely if the box is seen as a line
+        if (hullSize < 3) {
+            return;
+        }
+        // Compute the bounds of the hull and the farthest depth
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float farthest = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            minX = Math.min(minX, corners[i * 3]);
+            minY = Math.min(minY, corners[i * 3 + 1]);
+            maxX = Math.max(maxX, corners[i * 3]);
+            maxY = Math.max(maxY, corners[i * 3 + 1]);
+            farthest = Math.max(farthest, corners[i * 3 + 2]);
+        }
+        final int startX = Math.max((int) Math.floor(minX), 0);
+        final int startY = Math.max((int) Math.floor(minY), 0);
+        final int endX = Math.min((int) Math.ceil(maxX), width);
+        final int endY = Math.min((int) Math.ceil(maxY), height);
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                if (isCellInHull(x, y, hullSize)) {
+                    final int i = x + y * width;
+                    depths[i] = Math.min(depths[i], farthest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the model might be visible, which is when it has no bounds, or when they are in front of the depth of at least one of the cells they overlap. Models entirely outside of the
+     * view are reported as hidden.
+     *
+     * @param model The model to test
+     * @return Whether or not the model might be visible
+     */
+    public boolean isVisible(Model model) {
+        // Without bounds, or crossing the camera plane, the model can't be tested
+        if (model.getBoundsMin() == null || !project(model)) {
+            return true;
+        }
+        // Compute the bounds of the box and the nearest depth
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < 8; i++) {
+            minX = Math.min(minX, corners[i * 3]);
+            minY = Math.min(minY, corners[i * 3 + 1]);
+            maxX = Math.max(maxX, corners[i * 3]);
+            maxY = Math.max(maxY, corners[i * 3 + 1]);
+            nearest = Math.min(nearest, corners[i * 3 + 2]);
+        }
+        final int startX = Math.max((int) Math.floor(minX), 0);
+        final int startY = Math.max((int) Math.floor(minY), 0);
+        final int endX = Math.min((int) Math.ceil(maxX), width);
+        final int endY = Math.min((int) Math.ceil(maxY), height);
+        // The model is visible if any of the overlapped cells isn't in front of it
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                if (depths[x + y * width] >= nearest) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Projects the corners of the model's bounding box to the depth buffer, returns false if any are behind the camera
+    private boolean project(Model model) {
+        final Matrix4f matrix = viewProjection.mul(model.getMatrix());
+        final Vector3f min = model.getBoundsMin();
+        final Vector3f max = model.getBoundsMax();
+        for (int i = 0; i < 8; i++) {
+            final float x = (i & 1) == 0 ? min.getX() : max.getX();
+            final float y = (i & 2) == 0 ? min.getY() : max.getY();
+            final float z = (i & 4) == 0 ? min.getZ() : max.getZ();
+            final float w = matrix.get(3, 0) * x + matrix.get(3, 1) * y + matrix.get(3, 2) * z + matrix.get(3, 3);
+            if (w <= 0) {
+                return false;
+            }
+            // Convert to normalized device coordinates, then x and y to cells
+            final float wInverse = 1 / w;
+            final float ndcX = (matrix.get(0, 0) * x + matrix.get(0, 1) * y + matrix.get(0, 2) * z + matrix.get(0, 3)) * wInverse;
+            final float ndcY = (matrix.get(1, 0) * x + matrix.get(1, 1) * y + matrix.get(1, 2) * z + matrix.get(1, 3)) * wInverse;
+            corners[i * 3] = (ndcX + 1) / 2 * width;
+            corners[i * 3 + 1] = (ndcY + 1) / 2 * height;
+            corners[i * 3 + 2] = (matrix.get(2, 0) * x + matrix.get(2, 1) * y + matrix.get(2, 2) * z + matrix.get(2, 3)) * wInverse;
+        }
+        return true;
+    }
+
+    // Computes the convex hull of the projected corners using the monotone chain algorithm, returns the number of hull corners
+    private int computeHull() {
+        // Sort the corners by x, then y
+        for (int i = 0; i < 8; i++) {
+            int j = i;
+            while (j > 0 && compareCorners(sortedCorners[j - 1], i) > 0) {
+                sortedCorners[j] = sortedCorners[j - 1];
+                j--;
+            }
+            sortedCorners[j] = i;
+        }
+        // Build the lower hull, then the upper one
+        int size = 0;
+        for (int i = 0; i < 8; i++) {
+            while (size >= 2 && cross(hull[size - 2], hull[size - 1], sortedCorners[i]) <= 0) {
+                size--;
+            }
+            hull[size++] = sortedCorners[i];
+        }
+        final int lowerSize = size + 1;
+        for (int i = 6; i >= 0; i--) {
+            while (size >= lowerSize && cross(hull[size - 2], hull[size - 1], sortedCorners[i]) <= 0) {
+                size--;
+            }
+            hull[size++] = sortedCorners[i];
+        }
+        // The last corner is the same as the first one
+        return size - 1;
+    }
+
+    private int compareCorners(int a, int b) {
+        final int compareX = Float.compare(corners[a * 3], corners[b * 3]);
+        return compareX != 0 ? compareX : Float.compare(corners[a * 3 + 1], corners[b * 3 + 1]);
+    }
+
+    // The z component of the cross product of the vectors from o to a and o to b, positive when counter-clockwise
+    private float cross(int o, int a, int b) {
+        final float ox = corners[o * 3], oy = corners[o * 3 + 1];
+        return (corners[a * 3] - ox) * (corners[b * 3 + 1] - oy) - (corners[a * 3 + 1] - oy) * (corners[b * 3] - ox);
+    }
+
+    // Returns true if the cell is entirely inside the hull, which for a convex one is when all its corners are
+    private boolean isCellInHull(int x, int y, int hullSize) {
+        for (int i = 0; i < hullSize; i++) {
+            final int a = hull[i] * 3;
+            final int b = hull[i + 1] * 3;
+            final float edgeX = corners[b] - corners[a];
+            final float edgeY = corners[b + 1] - corners[a + 1];
+            // Only test the cell corner the farthest to the right of the edge
+            final float cornerX = edgeY > 0 ? x + 1 : x;
+            final float cornerY = edgeX > 0 ? y : y + 1;
+            if (edgeX * (cornerY - corners[a + 1]) - edgeY * (cornerX - corners[a]) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeySorterTest {
+    private static final int COUNT = 1000;
+
+    @Test
+    public void testRandomKeys() {
+        final Random random = new Random(1);
+        final KeySorter sorter = new KeySorter();
+        final long[] keys = sorter.getKeys(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = random.nextLong() >>> 1;
+        }
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+        // Sort again from an unrelated order, which is too far off for the insertion sort
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = random.nextLong() >>> 1;
+        }
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+    }
+
+    @Test
+    public void testSortedKeys() {
+        final KeySorter sorter = new KeySorter();
+        final long[] keys = sorter.getKeys(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = i * 1000003L;
+        }
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+        // The last order is already sorted, so the insertion sort doesn't move anything
+        Assert.assertTrue(sorter.insertionSort(COUNT));
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+        sorter.radixSort(COUNT);
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+    }
+
+    @Test
+    public void testNearlySortedKeys() {
+        final Random random = new Random(2);
+        final KeySorter sorter = new KeySorter();
+        final long[] keys = sorter.getKeys(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = random.nextLong() >>> 1;
+        }
+        final int[] order = sorter.sort(COUNT);
+        // Swap a few keys that are close in the sorted order, so the last order is nearly sorted
+        for (int n = 0; n < 5; n++) {
+            final int position = random.nextInt(COUNT - 10);
+            final int a = order[position], b = order[position + 1 + random.nextInt(10)];
+            final long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+        }
+        Assert.assertTrue(sorter.insertionSort(COUNT));
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+        // The radix sort must give the same order
+        sorter.radixSort(COUNT);
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+    }
+
+    @Test
+    public void testInsertionSortGivesUp() {
+        final KeySorter sorter = new KeySorter();
+        final long[] keys = sorter.getKeys(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = i;
+        }
+        sorter.sort(COUNT);
+        // Reversing the keys would take too many moves
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = COUNT - i;
+        }
+        Assert.assertFalse(sorter.insertionSort(COUNT));
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        final Random random = new Random(3);
+        final KeySorter sorter = new KeySorter();
+        final long[] keys = sorter.getKeys(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            keys[i] = random.nextInt(8) * 0x0101010101L;
+        }
+        // The radix sort keeps the indices with equal keys in increasing order, as does the stable Arrays.sort
+        assertOrder(keys, sorter.sort(COUNT), COUNT);
+        // Move a few keys to a neighbouring value, the insertion sort keeps the last order of the indices with equal keys
+        final int[] last = Arrays.copyOf(sorter.sort(COUNT), COUNT);
+        for (int n = 0; n < 5; n++) {
+            final int index = random.nextInt(COUNT);
+            final long value = keys[index] / 0x0101010101L;
+            keys[index] = (value == 7 ? 6 : value + 1) * 0x0101010101L;
+        }
+        Assert.assertTrue(sorter.insertionSort(COUNT));
+        final int[] order = sorter.sort(COUNT);
+        final int[] expected = getExpectedOrder(keys, last, COUNT);
+        Assert.assertArrayEquals(expected, Arrays.copyOf(order, COUNT));
+    }
+
+    @Test
+    public void testSmallCounts() {
+        final KeySorter sorter = new KeySorter();
+        sorter.sort(0);
+        Assert.assertEquals(0, sorter.getKeys(0).length);
+        final long[] keys = sorter.getKeys(1);
+        keys[0] = 42;
+        Assert.assertEquals(0, sorter.sort(1)[0]);
+        Assert.assertEquals(0, sorter.sort(1)[0]);
+        // Shrink the count after a larger sort, which leaves longer arrays
+        final long[] larger = sorter.getKeys(3);
+        larger[0] = 3;
+        larger[1] = 2;
+        larger[2] = 1;
+        assertOrder(larger, sorter.sort(3), 3);
+        sorter.sort(0);
+        larger[0] = 7;
+        Assert.assertEquals(0, sorter.sort(1)[0]);
+    }
+
+    private static void assertOrder(long[] keys, int[] order, int count) {
+        final int[] initial = new int[count];
+        for (int i = 0; i < count; i++) {
+            initial[i] = i;
+        }
+        Assert.assertArrayEquals(getExpectedOrder(keys, initial, count), Arrays.copyOf(order, count));
+    }
+
+    // Sorts the indices from the initial order by key with Arrays.sort, which is stable for objects
+    private static int[] getExpectedOrder(final long[] keys, int[] initial, int count) {
+        final Integer[] indices = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = initial[i];
+        }
+        Arrays.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(keys[a], keys[b]);
+            }
+        });
+        final int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = indices[i];
+        }
+        return order;
+    }
+}
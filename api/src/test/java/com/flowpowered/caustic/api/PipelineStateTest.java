@@ -0,0 +1,190 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.FrameBuffer;
+import com.flowpowered.caustic.api.gl.RenderBuffer;
+import com.flowpowered.caustic.api.gl.Texture;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+public class PipelineStateTest {
+    @Test
+    public void testClearColor() {
+        final PipelineState state = new PipelineState();
+        Assert.assertTrue(state.setClearColor(new Vector4f(0, 0, 0, 1)));
+        // Compared by value, not identity
+        Assert.assertFalse(state.setClearColor(new Vector4f(0, 0, 0, 1)));
+        Assert.assertTrue(state.setClearColor(new Vector4f(1, 0, 0, 1)));
+        // Null is never known
+        Assert.assertTrue(state.setClearColor(null));
+        Assert.assertTrue(state.setClearColor(null));
+    }
+
+    @Test
+    public void testViewPort() {
+        final PipelineState state = new PipelineState();
+        final Rectangle viewPort = new Rectangle(0, 0, 64, 32);
+        Assert.assertTrue(state.setViewPort(viewPort));
+        Assert.assertFalse(state.setViewPort(new Rectangle(0, 0, 64, 32)));
+        // The rectangle is copied, so changing it afterwards is a change of state
+        viewPort.setSize(32, 32);
+        Assert.assertTrue(state.setViewPort(viewPort));
+        Assert.assertFalse(state.setViewPort(viewPort));
+        Assert.assertTrue(state.setViewPort(new Rectangle(1, 0, 32, 32)));
+        Assert.assertTrue(state.setViewPort(null));
+    }
+
+    @Test
+    public void testCapabilities() {
+        final PipelineState state = new PipelineState();
+        Assert.assertTrue(state.setCapability(Capability.DEPTH_TEST, true));
+        Assert.assertFalse(state.setCapability(Capability.DEPTH_TEST, true));
+        // Each capability is tracked on its own, and unknown ones are applied whether enabled or disabled
+        Assert.assertTrue(state.setCapability(Capability.BLEND, false));
+        Assert.assertFalse(state.setCapability(Capability.BLEND, false));
+        Assert.assertFalse(state.setCapability(Capability.DEPTH_TEST, true));
+        Assert.assertTrue(state.setCapability(Capability.DEPTH_TEST, false));
+        Assert.assertFalse(state.setCapability(Capability.DEPTH_TEST, false));
+        Assert.assertTrue(state.setCapability(Capability.DEPTH_TEST, true));
+        Assert.assertTrue(state.setCapability(null, true));
+    }
+
+    @Test
+    public void testFrameBuffer() {
+        final PipelineState state = new PipelineState();
+        final FrameBuffer frameBuffer = new TestFrameBuffer();
+        // The default frame buffer isn't assumed to be bound at first
+        Assert.assertTrue(state.setFrameBuffer(null));
+        Assert.assertFalse(state.setFrameBuffer(null));
+        Assert.assertTrue(state.setFrameBuffer(frameBuffer));
+        Assert.assertFalse(state.setFrameBuffer(frameBuffer));
+        Assert.assertTrue(state.setFrameBuffer(new TestFrameBuffer()));
+    }
+
+    @Test
+    public void testCameraDepthMaskAndBlending() {
+        final PipelineState state = new PipelineState();
+        final Camera camera = Camera.createOrthographic(1, -1, 1, -1, 0, 1);
+        Assert.assertTrue(state.setCamera(camera));
+        Assert.assertFalse(state.setCamera(camera));
+        // Cameras are mutable, so they are compared by identity
+        Assert.assertTrue(state.setCamera(Camera.createOrthographic(1, -1, 1, -1, 0, 1)));
+        Assert.assertTrue(state.setCamera(null));
+        Assert.assertTrue(state.setDepthMask(false));
+        Assert.assertFalse(state.setDepthMask(false));
+        Assert.assertTrue(state.setDepthMask(true));
+        Assert.assertTrue(state.setBlendingFunctions(BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE_MINUS_SRC_ALPHA));
+        Assert.assertFalse(state.setBlendingFunctions(BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE_MINUS_SRC_ALPHA));
+        Assert.assertTrue(state.setBlendingFunctions(BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE));
+        Assert.assertTrue(state.setBlendingFunctions(null, BlendFunction.GL_ONE));
+        Assert.assertFalse(state.setBlendingFunctions(BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE));
+    }
+
+    @Test
+    public void testInvalidateFrameBuffer() {
+        final PipelineState state = new PipelineState();
+        final FrameBuffer frameBuffer = new TestFrameBuffer();
+        final Rectangle viewPort = new Rectangle(0, 0, 64, 64);
+        state.setFrameBuffer(frameBuffer);
+        state.setViewPort(viewPort);
+        state.setCapability(Capability.DEPTH_TEST, true);
+        state.invalidateFrameBuffer();
+        // Only the frame buffer is forgotten, including the default one
+        Assert.assertTrue(state.setFrameBuffer(frameBuffer));
+        state.invalidateFrameBuffer();
+        Assert.assertTrue(state.setFrameBuffer(null));
+        Assert.assertFalse(state.setViewPort(viewPort));
+        Assert.assertFalse(state.setCapability(Capability.DEPTH_TEST, true));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final PipelineState state = new PipelineState();
+        final Vector4f color = new Vector4f(0, 0, 0, 1);
+        final Rectangle viewPort = new Rectangle(0, 0, 64, 64);
+        final FrameBuffer frameBuffer = new TestFrameBuffer();
+        final Camera camera = Camera.createOrthographic(1, -1, 1, -1, 0, 1);
+        Assert.assertTrue(state.setClearColor(color));
+        Assert.assertTrue(state.setViewPort(viewPort));
+        Assert.assertTrue(state.setCapability(Capability.DEPTH_TEST, true));
+        Assert.assertTrue(state.setCapability(Capability.BLEND, false));
+        Assert.assertTrue(state.setFrameBuffer(frameBuffer));
+        Assert.assertTrue(state.setCamera(camera));
+        Assert.assertTrue(state.setDepthMask(true));
+        Assert.assertTrue(state.setBlendingFunctions(BlendFunction.GL_ONE, BlendFunction.GL_ZERO));
+        state.invalidate();
+        // Everything is applied again, then known again
+        for (int i = 0; i < 2; i++) {
+            final boolean expected = i == 0;
+            Assert.assertEquals(expected, state.setClearColor(color));
+            Assert.assertEquals(expected, state.setViewPort(viewPort));
+            Assert.assertEquals(expected, state.setCapability(Capability.DEPTH_TEST, true));
+            Assert.assertEquals(expected, state.setCapability(Capability.BLEND, false));
+            Assert.assertEquals(expected, state.setFrameBuffer(frameBuffer));
+            Assert.assertEquals(expected, state.setCamera(camera));
+            Assert.assertEquals(expected, state.setDepthMask(true));
+            Assert.assertEquals(expected, state.setBlendingFunctions(BlendFunction.GL_ONE, BlendFunction.GL_ZERO));
+        }
+    }
+
+    // A frame buffer that only has an identity, since the state never calls it
+    private static class TestFrameBuffer extends FrameBuffer {
+        @Override
+        public void bind() {
+        }
+
+        @Override
+        public void unbind() {
+        }
+
+        @Override
+        public void attach(AttachmentPoint point, Texture texture) {
+        }
+
+        @Override
+        public void attach(AttachmentPoint point, RenderBuffer buffer) {
+        }
+
+        @Override
+        public void detach(AttachmentPoint point) {
+        }
+
+        @Override
+        public boolean isComplete() {
+            return true;
+        }
+
+        @Override
+        public GLVersion getGLVersion() {
+            return GLVersion.OTHER;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+import com.flowpowered.caustic.api.Camera;
+import com.flowpowered.caustic.api.util.CausticUtil;
+
+public class ModelTest {
+    @Test
+    public void testNormalMatrix() {
+        final Camera camera = Camera.createPerspective(60, 100, 100, 0.1f, 100);
+        final Model model = new Model();
+        assertNormalMatrix(model, camera);
+        // Every model transform change invalidates the cached matrix
+        model.setPosition(new Vector3f(1, -2, 3));
+        assertNormalMatrix(model, camera);
+        model.setRotation(Quaternionf.fromAngleDegAxis(40, 1, 2, 0));
+        assertNormalMatrix(model, camera);
+        model.setScale(new Vector3f(2, 0.5f, 3));
+        assertNormalMatrix(model, camera);
+        // So does every view change
+        camera.setPosition(new Vector3f(-4, 1, 5));
+        assertNormalMatrix(model, camera);
+        camera.setRotation(Quaternionf.fromAngleDegAxis(-30, 0, 1, 1));
+        assertNormalMatrix(model, camera);
+        // The matrix is cached for a single camera at a time
+        final Camera other = Camera.createPerspective(60, 100, 100, 0.1f, 100);
+        other.setPosition(new Vector3f(0, 3, 0));
+        other.setRotation(Quaternionf.fromAngleDegAxis(70, 1, 0, 0));
+        Assert.assertEquals(camera.getViewVersion(), other.getViewVersion());
+        assertNormalMatrix(model, other);
+        assertNormalMatrix(model, camera);
+        // Parent changes invalidate the children matrices
+        final Model parent = new Model();
+        parent.setScale(new Vector3f(1, 4, 1));
+        model.setParent(parent);
+        assertNormalMatrix(model, camera);
+        parent.setRotation(Quaternionf.fromAngleDegAxis(90, 0, 0, 1));
+        assertNormalMatrix(model, camera);
+        // Adding and removing the model from a store switches the source of the matrix
+        final TransformStore store = new TransformStore();
+        store.add(parent);
+        store.add(model);
+        assertNormalMatrix(model, camera);
+        parent.setPosition(new Vector3f(0, 0, -6));
+        store.update();
+        assertNormalMatrix(model, camera);
+        store.remove(model);
+        parent.setPosition(new Vector3f(3, 0, 0));
+        assertNormalMatrix(model, camera);
+        // The versions of the store and of the model are unrelated, both are 2 here but the matrix changed
+        final Model single = new Model();
+        assertNormalMatrix(single, camera);
+        single.setPosition(new Vector3f(0, 5, 0));
+        assertNormalMatrix(single, camera);
+        single.setPosition(new Vector3f(0, -5, 0));
+        final TransformStore singleStore = new TransformStore();
+        singleStore.add(single);
+        Assert.assertEquals(2, singleStore.getVersion(single.getSlot()));
+        assertNormalMatrix(single, camera);
+    }
+
+    // Compares the cached normal matrix to the one computed from the matrices as the model and camera are now
+    private static void assertNormalMatrix(Model model, Camera camera) {
+        final Matrix4f expected = CausticUtil.createNormalMatrix(camera.getViewMatrix(), getExpectedMatrix(model));
+        final Matrix4f actual = model.getNormalMatrix(camera);
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                final float value = expected.get(row, column);
+                Assert.assertEquals(value, actual.get(row, column), 1e-4f * Math.max(1, Math.abs(value)));
+            }
+        }
+        // The same matrix is returned while nothing changes
+        Assert.assertSame(actual, model.getNormalMatrix(camera));
+    }
+
+    private static Matrix4f getExpectedMatrix(Model model) {
+        final Matrix4f matrix = Matrix4f.createScaling(model.getScale().toVector4(1)).rotate(model.getRotation()).translate(model.getPosition());
+        final Model parent = model.getParent();
+        return parent != null ? getExpectedMatrix(parent).mul(matrix) : matrix;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+public class TransformStoreTest {
+    // The size of each depth level, the third is large enough to be updated in parallel
+    private static final int[] LEVEL_SIZES = {3, 16, 5000, 200};
+    private final Random random = new Random(1);
+
+    @Test
+    public void testHierarchy() {
+        final TransformStore store = new TransformStore();
+        final List<List<Model>> levels = new ArrayList<>();
+        for (int level = 0; level < LEVEL_SIZES.length; level++) {
+            final List<Model> models = new ArrayList<>();
+            for (int i = 0; i < LEVEL_SIZES[level]; i++) {
+                final Model model = new Model();
+                randomizeTransform(model);
+                if (level > 0) {
+                    final List<Model> parents = levels.get(level - 1);
+                    model.setParent(parents.get(i % parents.size()));
+                }
+                store.add(model);
+                models.add(model);
+            }
+            levels.add(models);
+        }
+        Assert.assertEquals(3 + 16 + 5000 + 200, store.size());
+        assertMatrices(levels);
+        // Move a second level model and its descendants under a third level model of another branch, which changes their depth
+        final Model moved = levels.get(1).get(0);
+        final Model newParent = levels.get(2).get(1);
+        Assert.assertNotSame(moved, newParent.getParent());
+        moved.setParent(newParent);
+        assertMatrices(levels);
+        // Change a root, which has to propagate to all its descendants
+        randomizeTransform(levels.get(0).get(1));
+        assertMatrices(levels);
+        // Change many models at once
+        for (Model model : levels.get(2)) {
+            randomizeTransform(model);
+        }
+        store.update();
+        assertMatrices(levels);
+    }
+
+    private void randomizeTransform(Model model) {
+        model.setPosition(new Vector3f(random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10));
+        model.setRotation(Quaternionf.fromAngleDegAxis(random.nextFloat() * 360, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f));
+        model.setScale(new Vector3f(0.5f + random.nextFloat(), 0.5f + random.nextFloat(), 0.5f + random.nextFloat()));
+    }
+
+    private static void assertMatrices(List<List<Model>> levels) {
+        final Map<Model, Matrix4f> expected = new IdentityHashMap<>();
+        for (List<Model> models : levels) {
+            for (Model model : models) {
+                assertMatrixEquals(getExpectedMatrix(model, expected), model.getMatrix());
+            }
+        }
+    }
+
+    // Computes the matrix with the recursive formula used by models outside of a store
+    private static Matrix4f getExpectedMatrix(Model model, Map<Model, Matrix4f> expected) {
+        Matrix4f matrix = expected.get(model);
+        if (matrix == null) {
+            matrix = Matrix4f.createScaling(model.getScale().toVector4(1)).rotate(model.getRotation()).translate(model.getPosition());
+            final Model parent = model.getParent();
+            if (parent != null) {
+                matrix = getExpectedMatrix(parent, expected).mul(matrix);
+            }
+            expected.put(model, matrix);
+        }
+        return matrix;
+    }
+
+    private static void assertMatrixEquals(Matrix4f expected, Matrix4f actual) {
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                final float value = expected.get(row, column);
+                Assert.assertEquals(value, actual.get(row, column), 1e-4f * Math.max(1, Math.abs(value)));
+            }
+        }
+    }
+}
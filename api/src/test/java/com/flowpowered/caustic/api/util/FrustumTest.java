@@ -0,0 +1,165 @@
+/*
+ * This file is part of Caustic API, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api.util;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.imaginary.Quaternionf;
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+
+import com.flowpowered.caustic.api.model.Model;
+
+public class FrustumTest {
+    // The distance of the test volumes to the planes, and their sizes when they shouldn't and should reach the planes
+    private static final float OFFSET = 0.5f, SMALL = 0.1f, LARGE = 1;
+    private static final Vector3f EYE = new Vector3f(3, -2, 7);
+    private static final Quaternionf ROTATION = Quaternionf.fromAxesAnglesDeg(20, 35, -10);
+
+    @Test
+    public void testOrthographicPlanes() {
+        // Left and right at x = -2 and 2, bottom and top at y = -3 and 3, near and far at z = -1 and -10
+        final Matrix4f projection = Matrix4f.createOrthographic(2, -2, 3, -3, 1, 10);
+        final float[][] planes = {
+                {-2, 0, -5, -1, 0, 0}, {2, 0, -5, 1, 0, 0},
+                {0, -3, -5, 0, -1, 0}, {0, 3, -5, 0, 1, 0},
+                {0, 0, -1, 0, 0, 1}, {0, 0, -10, 0, 0, -1}
+        };
+        assertPlanes(projection, Vector3f.ZERO, Quaternionf.IDENTITY, planes);
+        assertPlanes(projection, EYE, ROTATION, planes);
+    }
+
+    @Test
+    public void testPerspectivePlanes() {
+        // With a vertical field of view of 90 degrees and an aspect ratio of 2, the sides are at x = -2z and y = -z
+        final Matrix4f projection = Matrix4f.createPerspective(90, 2, 1, 10);
+        final float sideX = 1 / (float) Math.sqrt(5), sideZ = 2 / (float) Math.sqrt(5), diagonal = 1 / (float) Math.sqrt(2);
+        final float[][] planes = {
+                {-10, 0, -5, -sideX, 0, sideZ}, {10, 0, -5, sideX, 0, sideZ},
+                {0, -5, -5, 0, -diagonal, diagonal}, {0, 5, -5, 0, diagonal, diagonal},
+                {0, 0, -1, 0, 0, 1}, {0, 0, -10, 0, 0, -1}
+        };
+        assertPlanes(projection, Vector3f.ZERO, Quaternionf.IDENTITY, planes);
+        assertPlanes(projection, EYE, ROTATION, planes);
+    }
+
+    @Test
+    public void testBounds() {
+        final Frustum frustum = new Frustum();
+        frustum.update(Matrix4f.createOrthographic(2, -2, 3, -3, 1, 10), Matrix4f.IDENTITY);
+        // Use a stride larger than the bounds, with garbage in between
+        final int stride = 12;
+        final float[] bounds = new float[stride * 4];
+        Arrays.fill(bounds, Float.NaN);
+        // Inside
+        setBounds(bounds, 0, new Vector3f(-1, -1, -6), new Vector3f(1, 1, -4), new Vector3f(0, 0, -5), 1.8f);
+        // Sphere outside the right plane
+        setBounds(bounds, stride, new Vector3f(2.5f, -1, -6), new Vector3f(4.5f, 1, -4), new Vector3f(3.5f, 0, -5), 1.4f);
+        // Sphere straddling the top plane, but not the box inside it
+        setBounds(bounds, stride * 2, new Vector3f(-1, 3.5f, -6), new Vector3f(1, 5, -4), new Vector3f(0, 4.25f, -5), 1.6f);
+        // Straddling the far plane
+        setBounds(bounds, stride * 3, new Vector3f(-1, -1, -11), new Vector3f(1, 1, -9), new Vector3f(0, 0, -10), 1.8f);
+        final boolean[] visible = new boolean[4];
+        Assert.assertEquals(2, frustum.intersectsBounds(bounds, stride, 4, visible));
+        Assert.assertArrayEquals(new boolean[]{true, false, false, true}, visible);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBoundsStride() {
+        new Frustum().intersectsBounds(new float[20], 9, 2, new boolean[2]);
+    }
+
+    @Test
+    public void testRotatedModel() {
+        final Frustum frustum = new Frustum();
+        frustum.update(Matrix4f.createOrthographic(2, -2, 3, -3, 1, 10), Matrix4f.IDENTITY);
+        // A long model above the top plane, with its bounding sphere straddling it
+        final Model model = new Model() {
+        };
+        model.setBounds(new Vector3f(-4, -0.5f, -0.5f), new Vector3f(4, 0.5f, 0.5f));
+        model.setPosition(new Vector3f(0, 5, -5));
+        final float[] bounds = new float[Model.WORLD_BOUNDS_SIZE];
+        final boolean[] visible = new boolean[1];
+        Assert.assertTrue(model.getWorldBounds(bounds, 0));
+        assertBounds(new float[]{-4, 4.5f, -5.5f, 4, 5.5f, -4.5f, 0, 5, -5, (float) Math.sqrt(16.5)}, bounds);
+        Assert.assertEquals(0, frustum.intersectsBounds(bounds, Model.WORLD_BOUNDS_SIZE, 1, visible));
+        // Rotating it around the z axis makes it stand up through the top plane, so its world box changes
+        model.setRotation(Quaternionf.fromAngleDegAxis(90, 0, 0, 1));
+        Assert.assertTrue(model.getWorldBounds(bounds, 0));
+        assertBounds(new float[]{-0.5f, 1, -5.5f, 0.5f, 9, -4.5f, 0, 5, -5, (float) Math.sqrt(16.5)}, bounds);
+        Assert.assertEquals(1, frustum.intersectsBounds(bounds, Model.WORLD_BOUNDS_SIZE, 1, visible));
+        // Rotating it back hides it again
+        model.setRotation(Quaternionf.IDENTITY);
+        Assert.assertTrue(model.getWorldBounds(bounds, 0));
+        Assert.assertEquals(0, frustum.intersectsBounds(bounds, Model.WORLD_BOUNDS_SIZE, 1, visible));
+    }
+
+    // Tests spheres and boxes inside, outside and straddling each plane, given in view space as a point on it and its outward unit normal
+    private static void assertPlanes(Matrix4f projection, Vector3f eye, Quaternionf rotation, float[][] planes) {
+        final Frustum frustum = new Frustum();
+        frustum.update(projection, Matrix4f.createRotation(rotation.invert()).mul(Matrix4f.createTranslation(eye.negate())));
+        for (float[] plane : planes) {
+            final Vector3f point = new Vector3f(plane[0], plane[1], plane[2]);
+            final Vector3f normal = new Vector3f(plane[3], plane[4], plane[5]).mul(OFFSET);
+            final Vector3f inside = eye.add(rotation.rotate(point.sub(normal)));
+            final Vector3f outside = eye.add(rotation.rotate(point.add(normal)));
+            Assert.assertTrue(intersectsSphere(frustum, inside, SMALL));
+            Assert.assertFalse(intersectsSphere(frustum, outside, SMALL));
+            Assert.assertTrue(intersectsSphere(frustum, outside, LARGE));
+            Assert.assertTrue(intersectsBox(frustum, inside, SMALL));
+            Assert.assertFalse(intersectsBox(frustum, outside, SMALL));
+            Assert.assertTrue(intersectsBox(frustum, outside, LARGE));
+        }
+    }
+
+    private static boolean intersectsSphere(Frustum frustum, Vector3f center, float radius) {
+        return frustum.intersectsSphere(center.getX(), center.getY(), center.getZ(), radius);
+    }
+
+    private static boolean intersectsBox(Frustum frustum, Vector3f center, float extent) {
+        return frustum.intersectsBox(center.getX() - extent, center.getY() - extent, center.getZ() - extent, center.getX() + extent, center.getY() + extent, center.getZ() + extent);
+    }
+
+    private static void setBounds(float[] bounds, int offset, Vector3f min, Vector3f max, Vector3f center, float radius) {
+        bounds[offset] = min.getX();
+        bounds[offset + 1] = min.getY();
+        bounds[offset + 2] = min.getZ();
+        bounds[offset + 3] = max.getX();
+        bounds[offset + 4] = max.getY();
+        bounds[offset + 5] = max.getZ();
+        bounds[offset + 6] = center.getX();
+        bounds[offset + 7] = center.getY();
+        bounds[offset + 8] = center.getZ();
+        bounds[offset + 9] = radius;
+    }
+
+    private static void assertBounds(float[] expected, float[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], actual[i], 1e-4f);
+        }
+    }
+}
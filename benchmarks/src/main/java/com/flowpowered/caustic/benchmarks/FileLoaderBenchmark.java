@@ -0,0 +1,84 @@
+/*
+ * This file is part of Caustic Benchmarks, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flowpowered.caustic.api.util.ColladaFileLoader;
+import com.flowpowered.caustic.api.util.ObjFileLoader;
+
+/**
+ * Benchmarks for the {@link ObjFileLoader} and {@link ColladaFileLoader} on large synthetic meshes, loaded from memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileLoaderBenchmark {
+    @Param({"32", "128", "256"})
+    private int cells;
+    private byte[] obj;
+    private byte[] collada;
+
+    @Setup
+    public void setup() {
+        final SyntheticMesh mesh = new SyntheticMesh(cells);
+        obj = mesh.toObj().getBytes(StandardCharsets.UTF_8);
+        collada = mesh.toCollada().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public TIntList loadObj() {
+        final TIntList indices = new TIntArrayList();
+        ObjFileLoader.load(new ByteArrayInputStream(obj), new TFloatArrayList(), new TFloatArrayList(), new TFloatArrayList(), indices);
+        return indices;
+    }
+
+    @Benchmark
+    public TIntList loadCollada() {
+        final TIntList indices = new TIntArrayList();
+        ColladaFileLoader.load(new ByteArrayInputStream(collada), new TFloatArrayList(), new TFloatArrayList(), new TFloatArrayList(), indices);
+        return indices;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of Caustic Benchmarks, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flowpowered.math.vector.Vector2f;
+import com.flowpowered.math.vector.Vector3f;
+
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.util.MeshGenerator;
+
+/**
+ * Benchmarks for the {@link MeshGenerator} shape generators, and normal and tangent generation on large meshes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MeshGeneratorBenchmark {
+    @Param({"16", "128", "512"})
+    private int cells;
+    private SyntheticMesh mesh;
+    private TFloatList normals;
+    private TFloatList tangents;
+
+    @Setup
+    public void setup() {
+        mesh = new SyntheticMesh(cells);
+        normals = new TFloatArrayList(mesh.normals.size());
+        tangents = new TFloatArrayList(mesh.positions.size() / 3 * 4);
+    }
+
+    @Benchmark
+    public VertexData generatePlane() {
+        return MeshGenerator.generatePlane(new Vector2f(1, 1));
+    }
+
+    @Benchmark
+    public VertexData generateCuboid() {
+        return MeshGenerator.generateCuboid(new Vector3f(1, 1, 1));
+    }
+
+    @Benchmark
+    public VertexData generateSphere() {
+        return MeshGenerator.generateSphere(1);
+    }
+
+    @Benchmark
+    public VertexData generateCylinder() {
+        return MeshGenerator.generateCylinder(1, 2);
+    }
+
+    @Benchmark
+    public VertexData generateCone() {
+        return MeshGenerator.generateCone(1, 2);
+    }
+
+    @Benchmark
+    public VertexData generateCapsule() {
+        return MeshGenerator.generateCapsule(1, 2);
+    }
+
+    @Benchmark
+    public TFloatList generateNormals() {
+        normals.clear();
+        MeshGenerator.generateNormals(mesh.positions, mesh.indices, normals);
+        return normals;
+    }
+
+    @Benchmark
+    public TFloatList generateTangents() {
+        tangents.clear();
+        MeshGenerator.generateTangents(mesh.positions, mesh.normals, mesh.textureCoords, mesh.indices, tangents);
+        return tangents;
+    }
+
+    @Benchmark
+    public TIntList toWireframe() {
+        final TIntList indices = new TIntArrayList(mesh.indices);
+        MeshGenerator.toWireframe(mesh.positions, indices, true);
+        return indices;
+    }
+}
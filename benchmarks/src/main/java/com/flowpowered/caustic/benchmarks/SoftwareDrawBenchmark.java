@@ -0,0 +1,218 @@
+/*
+ * This file is part of Caustic Benchmarks, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.data.ShaderSource;
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.gl.VertexArray.DrawingMode;
+import com.flowpowered.caustic.software.DataFormat;
+import com.flowpowered.caustic.software.HeadlessSoftwareContext;
+import com.flowpowered.caustic.software.InBuffer;
+import com.flowpowered.caustic.software.OutBuffer;
+import com.flowpowered.caustic.software.ShaderImplementation;
+import com.flowpowered.caustic.software.SoftwareContext;
+
+/**
+ * Benchmarks for drawing with the software renderer. A grid covering the whole window is drawn once per overdraw level, with depth testing disabled so every layer is shaded. This measures the
+ * vertex processing, rasterization and fill-rate of the points, lines and triangles paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SoftwareDrawBenchmark {
+    // Number of grid cells on each axis
+    private static final int GRID_CELLS = 64;
+    @Param({"320x240", "640x480", "1280x720"})
+    private String resolution;
+    @Param({"1", "4", "16"})
+    private int overdraw;
+    @Param({"POINTS", "LINES", "TRIANGLES"})
+    private DrawingMode mode;
+    private SoftwareContext context;
+    private Program program;
+    private VertexArray vertexArray;
+
+    @Setup
+    public void setup() {
+        final String[] size = resolution.split("x");
+        context = new HeadlessSoftwareContext();
+        context.setWindowSize(new Vector2i(Integer.parseInt(size[0]), Integer.parseInt(size[1])));
+        context.create();
+        context.setClearColor(new Vector4f(0, 0, 0, 1));
+        context.disableCapability(Capability.DEPTH_TEST);
+        context.disableCapability(Capability.CULL_FACE);
+        final Shader vertexShader = context.newShader();
+        vertexShader.create();
+        vertexShader.setSource(new ShaderSource(ColorVertexShader.class.getName()));
+        vertexShader.compile();
+        final Shader fragmentShader = context.newShader();
+        fragmentShader.create();
+        fragmentShader.setSource(new ShaderSource(ColorFragmentShader.class.getName()));
+        fragmentShader.compile();
+        program = context.newProgram();
+        program.create();
+        program.attachShader(vertexShader);
+        program.attachShader(fragmentShader);
+        program.link();
+        vertexArray = context.newVertexArray();
+        vertexArray.create();
+        vertexArray.setData(generateGrid(GRID_CELLS));
+        vertexArray.setDrawingMode(mode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.destroy();
+    }
+
+    @Benchmark
+    public void drawFrame() {
+        context.clearCurrentBuffer();
+        program.use();
+        for (int i = 0; i < overdraw; i++) {
+            vertexArray.draw();
+        }
+        context.updateDisplay();
+    }
+
+    /**
+     * Generates a grid of triangles covering the whole normalized device coordinates range, with a color per vertex.
+     *
+     * @param cells The number of cells on each axis
+     * @return The vertex data
+     */
+    static VertexData generateGrid(int cells) {
+        final TFloatList positions = new TFloatArrayList();
+        final TFloatList colors = new TFloatArrayList();
+        final TIntList indices = new TIntArrayList();
+        // Add the vertices
+        for (int y = 0; y <= cells; y++) {
+            for (int x = 0; x <= cells; x++) {
+                final float u = x / (float) cells;
+                final float v = y / (float) cells;
+                positions.add(u * 2 - 1);
+                positions.add(v * 2 - 1);
+                positions.add(0);
+                colors.add(u);
+                colors.add(v);
+                colors.add(1 - u);
+            }
+        }
+        // Add two triangles per cell
+        final int row = cells + 1;
+        for (int y = 0; y < cells; y++) {
+            for (int x = 0; x < cells; x++) {
+                final int i = y * row + x;
+                indices.add(i);
+                indices.add(i + 1);
+                indices.add(i + row);
+                indices.add(i + row);
+                indices.add(i + 1);
+                indices.add(i + row + 1);
+            }
+        }
+        final VertexData vertexData = new VertexData();
+        final VertexAttribute positionAttribute = new VertexAttribute("positions", DataType.FLOAT, 3);
+        positionAttribute.setData(positions);
+        vertexData.addAttribute(0, positionAttribute);
+        final VertexAttribute colorAttribute = new VertexAttribute("colors", DataType.FLOAT, 3);
+        colorAttribute.setData(colors);
+        vertexData.addAttribute(1, colorAttribute);
+        vertexData.getIndices().addAll(indices);
+        return vertexData;
+    }
+
+    /**
+     * Passes through the position and color.
+     */
+    public static class ColorVertexShader extends ShaderImplementation {
+        public ColorVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 3)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), 1);
+            in.skip();
+            out.writeFloat3(in.readFloat(0), in.readFloat(1), in.readFloat(2));
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    /**
+     * Outputs the interpolated color.
+     */
+    public static class ColorFragmentShader extends ShaderImplementation {
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            // Skip the fragment position
+            in.skip();
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), 1);
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.FRAGMENT;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of Caustic Benchmarks, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.benchmarks;
+
+import gnu.trove.list.TFloatList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * A large synthetic mesh for benchmarking: a wavy grid of triangles with positions, normals and texture coordinates.
+ */
+class SyntheticMesh {
+    final TFloatList positions = new TFloatArrayList();
+    final TFloatList normals = new TFloatArrayList();
+    final TFloatList textureCoords = new TFloatArrayList();
+    final TIntList indices = new TIntArrayList();
+
+    /**
+     * Generates a grid with the desired number of cells on each axis. There are two triangles per cell.
+     *
+     * @param cells The number of cells on each axis
+     */
+    SyntheticMesh(int cells) {
+        // Add the vertices, with the height following a sine wave
+        for (int y = 0; y <= cells; y++) {
+            for (int x = 0; x <= cells; x++) {
+                final float u = x / (float) cells;
+                final float v = y / (float) cells;
+                final float angle = (u + v) * (float) Math.PI * 4;
+                positions.add(u);
+                positions.add((float) Math.sin(angle) * 0.1f);
+                positions.add(v);
+                // Normal of the height field
+                final float slope = -(float) Math.cos(angle) * 0.1f * (float) Math.PI * 4;
+                final float length = (float) Math.sqrt(slope * slope * 2 + 1);
+                normals.add(slope / length);
+                normals.add(1 / length);
+                normals.add(slope / length);
+                textureCoords.add(u);
+                textureCoords.add(v);
+            }
+        }
+        // Add two triangles per cell
+        final int row = cells + 1;
+        for (int y = 0; y < cells; y++) {
+            for (int x = 0; x < cells; x++) {
+                final int i = y * row + x;
+                indices.add(i);
+                indices.add(i + row);
+                indices.add(i + 1);
+                indices.add(i + 1);
+                indices.add(i + row);
+                indices.add(i + row + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns the mesh as the contents of a Wavefront .obj file, with faces referencing the position, texture coordinate and normal of each vertex.
+     *
+     * @return The .obj file contents
+     */
+    String toObj() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < positions.size(); i += 3) {
+            builder.append("v ").append(positions.get(i)).append(' ').append(positions.get(i + 1)).append(' ').append(positions.get(i + 2)).append('\n');
+        }
+        for (int i = 0; i < textureCoords.size(); i += 2) {
+            builder.append("vt ").append(textureCoords.get(i)).append(' ').append(textureCoords.get(i + 1)).append('\n');
+        }
+        for (int i = 0; i < normals.size(); i += 3) {
+            builder.append("vn ").append(normals.get(i)).append(' ').append(normals.get(i + 1)).append(' ').append(normals.get(i + 2)).append('\n');
+        }
+        for (int i = 0; i < indices.size(); i += 3) {
+            builder.append('f');
+            for (int ii = 0; ii < 3; ii++) {
+                // Indices are 1 based
+                final int index = indices.get(i + ii) + 1;
+                builder.append(' ').append(index).append('/').append(index).append('/').append(index);
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the mesh as the contents of a COLLADA .dae file, with only the geometry library.
+     *
+     * @return The .dae file contents
+     */
+    String toCollada() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        builder.append("<COLLADA version=\"1.4.1\">\n");
+        builder.append("<library_geometries>\n");
+        builder.append("<geometry id=\"mesh\">\n");
+        builder.append("<mesh>\n");
+        appendSource(builder, "positions", this.positions);
+        appendSource(builder, "normals", this.normals);
+        appendSource(builder, "texture-coords", this.textureCoords);
+        builder.append("<vertices id=\"vertices\"><input semantic=\"POSITION\" source=\"#positions\"/></vertices>\n");
+        builder.append("<triangles count=\"").append(indices.size() / 3).append("\">\n");
+        builder.append("<input semantic=\"VERTEX\" source=\"#vertices\" offset=\"0\"/>\n");
+        builder.append("<input semantic=\"NORMAL\" source=\"#normals\" offset=\"1\"/>\n");
+        builder.append("<input semantic=\"TEXCOORD\" source=\"#texture-coords\" offset=\"2\"/>\n");
+        builder.append("<p>");
+        for (int i = 0; i < indices.size(); i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            // Same index for the position, normal and texture coordinate
+            final int index = indices.get(i);
+            builder.append(index).append(' ').append(index).append(' ').append(index);
+        }
+        builder.append("</p>\n");
+        builder.append("</triangles>\n");
+        builder.append("</mesh>\n");
+        builder.append("</geometry>\n");
+        builder.append("</library_geometries>\n");
+        builder.append("</COLLADA>\n");
+        return builder.toString();
+    }
+
+    private static void appendSource(StringBuilder builder, String id, TFloatList values) {
+        builder.append("<source id=\"").append(id).append("\">");
+        builder.append("<float_array id=\"").append(id).append("-array\" count=\"").append(values.size()).append("\">");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(values.get(i));
+        }
+        builder.append("</float_array>");
+        builder.append("</source>\n");
+    }
+}
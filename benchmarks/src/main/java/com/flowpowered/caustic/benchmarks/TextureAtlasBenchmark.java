@@ -0,0 +1,83 @@
+/*
+ * This file is part of Caustic Benchmarks, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flowpowered.caustic.api.util.TextureAtlas;
+
+/**
+ * Benchmarks for filling a {@link TextureAtlas} with textures of the same size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TextureAtlasBenchmark {
+    private static final int ATLAS_SIZE = 1024;
+    @Param({"16", "64"})
+    private int textureSize;
+    @Param({"16", "64"})
+    private int textureCount;
+    private BufferedImage[] textures;
+
+    @Setup
+    public void setup() {
+        textures = new BufferedImage[textureCount];
+        for (int i = 0; i < textureCount; i++) {
+            final BufferedImage texture = new BufferedImage(textureSize, textureSize, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < textureSize; y++) {
+                for (int x = 0; x < textureSize; x++) {
+                    texture.setRGB(x, y, i * 0x10101 ^ x << 8 ^ y);
+                }
+            }
+            textures[i] = texture;
+        }
+    }
+
+    @Benchmark
+    public TextureAtlas addTextures() throws Exception {
+        // The exception thrown when the atlas is full isn't visible
+        final TextureAtlas atlas = new TextureAtlas(ATLAS_SIZE, ATLAS_SIZE);
+        for (int i = 0; i < textures.length; i++) {
+            atlas.addTexture("texture" + i, textures[i]);
+        }
+        return atlas;
+    }
+}
@@ -34,6 +34,7 @@ import org.lwjgl.opengl.PixelFormat;
 
 import com.flowpowered.caustic.api.gl.Context;
 import com.flowpowered.caustic.api.gl.FrameBuffer;
+import com.flowpowered.caustic.api.gl.OcclusionQuery;
 import com.flowpowered.caustic.api.gl.Program;
 import com.flowpowered.caustic.api.gl.RenderBuffer;
 import com.flowpowered.caustic.api.gl.Shader;
@@ -99,6 +100,11 @@ public class GL20Context extends Context {
         return new GL20Program();
     }
 
+    @Override
+    public OcclusionQuery newOcclusionQuery() {
+        return new GL20OcclusionQuery();
+    }
+
     @Override
     public RenderBuffer newRenderBuffer() {
         return new GL20RenderBuffer();
@@ -199,6 +205,14 @@ public class GL20Context extends Context {
         LWJGLUtil.checkForGLError();
     }
 
+    @Override
+    public void setColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        checkCreated();
+        GL11.glColorMask(red, green, blue, alpha);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
     @Override
     public void setBlendingFunctions(int bufferIndex, BlendFunction source, BlendFunction destination) {
         checkCreated();
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Caustic LWJGL, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.lwjgl.gl20;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import com.flowpowered.caustic.api.gl.OcclusionQuery;
+import com.flowpowered.caustic.lwjgl.LWJGLUtil;
+
+/**
+ * An OpenGL 2.0 implementation of {@link OcclusionQuery}.
+ *
+ * @see OcclusionQuery
+ */
+public class GL20OcclusionQuery extends OcclusionQuery {
+    @Override
+    public void create() {
+        checkNotCreated();
+        // Generate the query
+        id = GL15.glGenQueries();
+        // Update the state
+        super.create();
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    @Override
+    public void destroy() {
+        checkCreated();
+        // Delete the query
+        GL15.glDeleteQueries(id);
+        // Update the state
+        super.destroy();
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    @Override
+    public void begin() {
+        checkCreated();
+        // Start counting the samples
+        GL15.glBeginQuery(GL15.GL_SAMPLES_PASSED, id);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    @Override
+    public void end() {
+        checkCreated();
+        // Stop counting the samples
+        GL15.glEndQuery(GL15.GL_SAMPLES_PASSED);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    @Override
+    public boolean isResultAvailable() {
+        checkCreated();
+        final boolean available = GL15.glGetQueryObjecti(id, GL15.GL_QUERY_RESULT_AVAILABLE) != GL11.GL_FALSE;
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+        return available;
+    }
+
+    @Override
+    public int getResult() {
+        checkCreated();
+        // This waits for the result if needed
+        final int result = GL15.glGetQueryObjecti(id, GL15.GL_QUERY_RESULT);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+        return result;
+    }
+
+    @Override
+    public GLVersion getGLVersion() {
+        return GLVersion.GL20;
+    }
+}
@@ -24,8 +24,11 @@
 package com.flowpowered.caustic.lwjgl.gl20;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.lwjgl.opengl.APPLEVertexArrayObject;
+import org.lwjgl.opengl.ARBDrawInstanced;
+import org.lwjgl.opengl.ARBInstancedArrays;
 import org.lwjgl.opengl.ARBVertexArrayObject;
 import org.lwjgl.opengl.ContextCapabilities;
 import org.lwjgl.opengl.GL11;
@@ -65,10 +68,14 @@ public class GL20VertexArray extends VertexArray {
     private PolygonMode polygonMode = PolygonMode.FILL;
     // The available vao extension
     private final VertexArrayExtension extension;
+    // Whether or not the instancing extensions are available
+    private final boolean instancedArrays;
+    private final boolean drawInstanced;
     // Attribute properties for when we don't have a vao extension
     private int[] attributeSizes;
     private int[] attributeTypes;
     private boolean[] attributeNormalizing;
+    private int[] attributeDivisors;
 
     public GL20VertexArray() {
         final ContextCapabilities capabilities = GLContext.getCapabilities();
@@ -79,6 +86,8 @@ public class GL20VertexArray extends VertexArray {
         } else {
             extension = VertexArrayExtension.NONE;
         }
+        instancedArrays = capabilities.GL_ARB_instanced_arrays;
+        drawInstanced = capabilities.GL_ARB_draw_instanced;
     }
 
     @Override
@@ -111,6 +120,7 @@ public class GL20VertexArray extends VertexArray {
             attributeSizes = null;
             attributeTypes = null;
             attributeNormalizing = null;
+            attributeDivisors = null;
         }
         // Reset the IDs and data
         indicesBufferID = 0;
@@ -125,6 +135,8 @@ public class GL20VertexArray extends VertexArray {
     @Override
     public void setData(VertexData vertexData) {
         checkCreated();
+        // Compute the bounds of the positions, for culling
+        updateBounds(vertexData);
         // Generate a new indices buffer if we don't have one yet
         if (indicesBufferID == 0) {
             indicesBufferID = GL15.glGenBuffers();
@@ -170,43 +182,19 @@ public class GL20VertexArray extends VertexArray {
         // Copy the old valid attribute buffer sizes
         final int[] newAttributeBufferSizes = new int[attributeCount];
         System.arraycopy(attributeBufferSizes, 0, newAttributeBufferSizes, 0, Math.min(attributeBufferSizes.length, newAttributeBufferSizes.length));
+        // Update the attribute buffer IDs and sizes to the new ones
+        attributeBufferIDs = newAttributeBufferIDs;
+        attributeBufferSizes = newAttributeBufferSizes;
         // If we don't have a vao, we have to save the properties manually
         if (!extension.has()) {
             attributeSizes = new int[attributeCount];
             attributeTypes = new int[attributeCount];
             attributeNormalizing = new boolean[attributeCount];
+            attributeDivisors = new int[attributeCount];
         }
         // Upload the new vertex data
         for (int i = 0; i < attributeCount; i++) {
-            final VertexAttribute attribute = vertexData.getAttribute(i);
-            final ByteBuffer attributeData = attribute.getData();
-            // Get the current buffer size
-            final int bufferSize = newAttributeBufferSizes[i];
-            // Get the new buffer size
-            final int newBufferSize = attributeData.remaining();
-            // Bind the target buffer
-            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, newAttributeBufferIDs[i]);
-            // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
-            if (newBufferSize > bufferSize || newBufferSize <= bufferSize * 0.5) {
-                GL15.glBufferData(GL15.GL_ARRAY_BUFFER, attributeData, GL15.GL_STATIC_DRAW);
-            } else {
-                // Else, we replace the data with the new one, but we don't resize, so some old data might be left trailing in the buffer
-                GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, attributeData);
-            }
-            // Update the buffer size to the new one
-            newAttributeBufferSizes[i] = newBufferSize;
-            // Next, we add the pointer to the data in the vao
-            if (extension.has()) {
-                // As a float, normalized or not
-                GL20.glVertexAttribPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), attribute.getUploadMode().normalize(), 0, 0);
-                // Enable the attribute
-                GL20.glEnableVertexAttribArray(i);
-            } else {
-                // Else we save the properties for rendering
-                attributeSizes[i] = attribute.getSize();
-                attributeTypes[i] = attribute.getType().getGLConstant();
-                attributeNormalizing[i] = attribute.getUploadMode().normalize();
-            }
+            uploadAttribute(i, vertexData.getAttribute(i));
         }
         // Unbind the last vbo
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
@@ -214,14 +202,91 @@ public class GL20VertexArray extends VertexArray {
         if (extension.has()) {
             extension.glBindVertexArray(0);
         }
-        // Update the attribute buffer IDs to the new ones
-        attributeBufferIDs = newAttributeBufferIDs;
-        // Update the attribute buffer sizes to the new ones
-        attributeBufferSizes = newAttributeBufferSizes;
         // Check for errors
         LWJGLUtil.checkForGLError();
     }
 
+    @Override
+    public void setAttribute(int index, VertexAttribute attribute) {
+        checkCreated();
+        if (attribute == null) {
+            throw new IllegalArgumentException("Attribute cannot be null");
+        }
+        if (index < 0 || index > attributeBufferIDs.length) {
+            throw new IllegalArgumentException("Index must be between 0 and the attribute count");
+        }
+        // Create a new buffer if the attribute is added
+        if (index == attributeBufferIDs.length) {
+            attributeBufferIDs = Arrays.copyOf(attributeBufferIDs, index + 1);
+            attributeBufferSizes = Arrays.copyOf(attributeBufferSizes, index + 1);
+            attributeBufferIDs[index] = GL15.glGenBuffers();
+            // Grow the saved properties too if we don't have a vao
+            if (!extension.has()) {
+                attributeSizes = Arrays.copyOf(attributeSizes, index + 1);
+                attributeTypes = Arrays.copyOf(attributeTypes, index + 1);
+                attributeNormalizing = Arrays.copyOf(attributeNormalizing, index + 1);
+                attributeDivisors = Arrays.copyOf(attributeDivisors, index + 1);
+            }
+        }
+        // Bind the vao
+        if (extension.has()) {
+            extension.glBindVertexArray(id);
+        }
+        // Upload the attribute data
+        uploadAttribute(index, attribute);
+        // Unbind the vbo
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        // Unbind the vao
+        if (extension.has()) {
+            extension.glBindVertexArray(0);
+        }
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    // Uploads the attribute to its buffer and adds its pointer to the bound vao (or saves its properties), leaves the buffer bound
+    private void uploadAttribute(int i, VertexAttribute attribute) {
+        final ByteBuffer attributeData = attribute.getData();
+        // Get the current buffer size
+        final int bufferSize = attributeBufferSizes[i];
+        // Get the new buffer size
+        final int newBufferSize = attributeData.remaining();
+        // Bind the target buffer
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, attributeBufferIDs[i]);
+        // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
+        if (newBufferSize > bufferSize || newBufferSize <= bufferSize * 0.5) {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, attributeData, GL15.GL_STATIC_DRAW);
+        } else {
+            // Else, we replace the data with the new one, but we don't resize, so some old data might be left trailing in the buffer
+            GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, attributeData);
+        }
+        // Update the buffer size to the new one
+        attributeBufferSizes[i] = newBufferSize;
+        // Next, we add the pointer to the data in the vao
+        if (extension.has()) {
+            // As a float, normalized or not
+            GL20.glVertexAttribPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), attribute.getUploadMode().normalize(), 0, 0);
+            // Set how often the attribute advances
+            setDivisor(i, attribute.getDivisor());
+            // Enable the attribute
+            GL20.glEnableVertexAttribArray(i);
+        } else {
+            // Else we save the properties for rendering
+            attributeSizes[i] = attribute.getSize();
+            attributeTypes[i] = attribute.getType().getGLConstant();
+            attributeNormalizing[i] = attribute.getUploadMode().normalize();
+            attributeDivisors[i] = attribute.getDivisor();
+        }
+    }
+
+    private void setDivisor(int index, int divisor) {
+        if (instancedArrays) {
+            ARBInstancedArrays.glVertexAttribDivisorARB(index, divisor);
+        } else if (divisor != 0) {
+            throw new UnsupportedOperationException("Instanced attributes are not supported by this hardware");
+        }
+    }
+
     @Override
     public void setDrawingMode(DrawingMode mode) {
         if (mode == null) {
@@ -253,6 +318,42 @@ public class GL20VertexArray extends VertexArray {
     @Override
     public void draw() {
         checkCreated();
+        bindAttributes();
+        // Bind the index buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBufferID);
+        // Set the polygon mode
+        GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, polygonMode.getGLConstant());
+        // Draw all indices with the provided mode
+        GL11.glDrawElements(drawingMode.getGLConstant(), indicesDrawCount, GL11.GL_UNSIGNED_INT, indicesOffset * DataType.INT.getByteSize());
+        // Unbind the indices buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    @Override
+    public void drawInstanced(int count) {
+        checkCreated();
+        if (count < 0) {
+            throw new IllegalArgumentException("Instance count must be greater or equal to zero");
+        }
+        if (!drawInstanced) {
+            throw new UnsupportedOperationException("Instanced drawing is not supported by this hardware");
+        }
+        bindAttributes();
+        // Bind the index buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBufferID);
+        // Set the polygon mode
+        GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, polygonMode.getGLConstant());
+        // Draw all indices with the provided mode, for each instance
+        ARBDrawInstanced.glDrawElementsInstancedARB(drawingMode.getGLConstant(), indicesDrawCount, GL11.GL_UNSIGNED_INT, indicesOffset * DataType.INT.getByteSize(), count);
+        // Unbind the indices buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    private void bindAttributes() {
         if (extension.has()) {
             // Bind the vao
             extension.glBindVertexArray(id);
@@ -263,22 +364,14 @@ public class GL20VertexArray extends VertexArray {
                 GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, attributeBufferIDs[i]);
                 // Define the attribute
                 GL20.glVertexAttribPointer(i, attributeSizes[i], attributeTypes[i], attributeNormalizing[i], 0, 0);
+                // Set how often it advances
+                setDivisor(i, attributeDivisors[i]);
                 // Enable it
                 GL20.glEnableVertexAttribArray(i);
             }
             // Unbind the last buffer
             GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
         }
-        // Bind the index buffer
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBufferID);
-        // Set the polygon mode
-        GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, polygonMode.getGLConstant());
-        // Draw all indices with the provided mode
-        GL11.glDrawElements(drawingMode.getGLConstant(), indicesDrawCount, GL11.GL_UNSIGNED_INT, indicesOffset * DataType.INT.getByteSize());
-        // Unbind the indices buffer
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
-        // Check for errors
-        LWJGLUtil.checkForGLError();
     }
 
     @Override
@@ -24,11 +24,18 @@
 package com.flowpowered.caustic.lwjgl.gl30;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import org.lwjgl.opengl.ARBDrawInstanced;
+import org.lwjgl.opengl.ARBInstancedArrays;
+import org.lwjgl.opengl.ContextCapabilities;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLContext;
 
 import com.flowpowered.caustic.api.data.VertexAttribute;
 import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
@@ -58,6 +65,17 @@ public class GL30VertexArray extends VertexArray {
     private DrawingMode drawingMode = DrawingMode.TRIANGLES;
     // Polygon mode
     private PolygonMode polygonMode = PolygonMode.FILL;
+    // Whether or not instancing is supported by the core version or the extensions
+    private final boolean coreDivisor, instancedArrays;
+    private final boolean coreDrawInstanced, drawInstanced;
+
+    public GL30VertexArray() {
+        final ContextCapabilities capabilities = GLContext.getCapabilities();
+        coreDivisor = capabilities.OpenGL33;
+        instancedArrays = capabilities.GL_ARB_instanced_arrays;
+        coreDrawInstanced = capabilities.OpenGL31;
+        drawInstanced = capabilities.GL_ARB_draw_instanced;
+    }
 
     @Override
     public void create() {
@@ -94,6 +112,8 @@ public class GL30VertexArray extends VertexArray {
     @Override
     public void setData(VertexData vertexData) {
         checkCreated();
+        // Compute the bounds of the positions, for culling
+        updateBounds(vertexData);
         // Generate a new indices buffer if we don't have one yet
         if (indicesBufferID == 0) {
             indicesBufferID = GL15.glGenBuffers();
@@ -137,49 +157,91 @@ public class GL30VertexArray extends VertexArray {
         // Copy the old valid attribute buffer sizes
         final int[] newAttributeBufferSizes = new int[attributeCount];
         System.arraycopy(attributeBufferSizes, 0, newAttributeBufferSizes, 0, Math.min(attributeBufferSizes.length, newAttributeBufferSizes.length));
+        // Update the attribute buffer IDs and sizes to the new ones
+        attributeBufferIDs = newAttributeBufferIDs;
+        attributeBufferSizes = newAttributeBufferSizes;
         // Upload the new vertex data
         for (int i = 0; i < attributeCount; i++) {
-            final VertexAttribute attribute = vertexData.getAttribute(i);
-            final ByteBuffer attributeData = attribute.getData();
-            // Get the current buffer size
-            final int bufferSize = newAttributeBufferSizes[i];
-            // Get the new buffer size
-            final int newBufferSize = attributeData.remaining();
-            // Bind the target buffer
-            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, newAttributeBufferIDs[i]);
-            // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
-            if (newBufferSize > bufferSize || newBufferSize <= bufferSize * 0.5) {
-                GL15.glBufferData(GL15.GL_ARRAY_BUFFER, attributeData, GL15.GL_STATIC_DRAW);
-            } else {
-                // Else, we replace the data with the new one, but we don't resize, so some old data might be left trailing in the buffer
-                GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, attributeData);
-            }
-            // Update the buffer size to the new one
-            newAttributeBufferSizes[i] = newBufferSize;
-            // Next, we add the pointer to the data in the vao
-            // We have three ways to interpret integer data
-            if (attribute.getType().isInteger() && attribute.getUploadMode() == UploadMode.KEEP_INT) {
-                // Directly as an int
-                GL30.glVertexAttribIPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), 0, 0);
-            } else {
-                // Or as a float, normalized or not
-                GL20.glVertexAttribPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), attribute.getUploadMode().normalize(), 0, 0);
-            }
-            // Finally enable the attribute
-            GL20.glEnableVertexAttribArray(i);
+            uploadAttribute(i, vertexData.getAttribute(i));
         }
         // Unbind the last vbo
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
         // Unbind the vao
         GL30.glBindVertexArray(0);
-        // Update the attribute buffer IDs to the new ones
-        attributeBufferIDs = newAttributeBufferIDs;
-        // Update the attribute buffer sizes to the new ones
-        attributeBufferSizes = newAttributeBufferSizes;
         // Check for errors
         LWJGLUtil.checkForGLError();
     }
 
+    @Override
+    public void setAttribute(int index, VertexAttribute attribute) {
+        checkCreated();
+        if (attribute == null) {
+            throw new IllegalArgumentException("Attribute cannot be null");
+        }
+        if (index < 0 || index > attributeBufferIDs.length) {
+            throw new IllegalArgumentException("Index must be between 0 and the attribute count");
+        }
+        // Create a new buffer if the attribute is added
+        if (index == attributeBufferIDs.length) {
+            attributeBufferIDs = Arrays.copyOf(attributeBufferIDs, index + 1);
+            attributeBufferSizes = Arrays.copyOf(attributeBufferSizes, index + 1);
+            attributeBufferIDs[index] = GL15.glGenBuffers();
+        }
+        // Bind the vao
+        GL30.glBindVertexArray(id);
+        // Upload the attribute data
+        uploadAttribute(index, attribute);
+        // Unbind the vbo
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        // Unbind the vao
+        GL30.glBindVertexArray(0);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
+    // Uploads the attribute to its buffer and adds its pointer to the bound vao, leaves the buffer bound
+    private void uploadAttribute(int i, VertexAttribute attribute) {
+        final ByteBuffer attributeData = attribute.getData();
+        // Get the current buffer size
+        final int bufferSize = attributeBufferSizes[i];
+        // Get the new buffer size
+        final int newBufferSize = attributeData.remaining();
+        // Bind the target buffer
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, attributeBufferIDs[i]);
+        // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
+        if (newBufferSize > bufferSize || newBufferSize <= bufferSize * 0.5) {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, attributeData, GL15.GL_STATIC_DRAW);
+        } else {
+            // Else, we replace the data with the new one, but we don't resize, so some old data might be left trailing in the buffer
+            GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, attributeData);
+        }
+        // Update the buffer size to the new one
+        attributeBufferSizes[i] = newBufferSize;
+        // Next, we add the pointer to the data in the vao
+        // We have three ways to interpret integer data
+        if (attribute.getType().isInteger() && attribute.getUploadMode() == UploadMode.KEEP_INT) {
+            // Directly as an int
+            GL30.glVertexAttribIPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), 0, 0);
+        } else {
+            // Or as a float, normalized or not
+            GL20.glVertexAttribPointer(i, attribute.getSize(), attribute.getType().getGLConstant(), attribute.getUploadMode().normalize(), 0, 0);
+        }
+        // Set how often the attribute advances
+        setDivisor(i, attribute.getDivisor());
+        // Finally enable the attribute
+        GL20.glEnableVertexAttribArray(i);
+    }
+
+    private void setDivisor(int index, int divisor) {
+        if (coreDivisor) {
+            GL33.glVertexAttribDivisor(index, divisor);
+        } else if (instancedArrays) {
+            ARBInstancedArrays.glVertexAttribDivisorARB(index, divisor);
+        } else if (divisor != 0) {
+            throw new UnsupportedOperationException("Instanced attributes are not supported by this hardware");
+        }
+    }
+
     @Override
     public void setDrawingMode(DrawingMode mode) {
         if (mode == null) {
@@ -227,6 +289,35 @@ public class GL30VertexArray extends VertexArray {
         LWJGLUtil.checkForGLError();
     }
 
+    @Override
+    public void drawInstanced(int count) {
+        checkCreated();
+        if (count < 0) {
+            throw new IllegalArgumentException("Instance count must be greater or equal to zero");
+        }
+        if (!coreDrawInstanced && !drawInstanced) {
+            throw new UnsupportedOperationException("Instanced drawing is not supported by this hardware");
+        }
+        // Bind the vao
+        GL30.glBindVertexArray(id);
+        // Bind the index buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indicesBufferID);
+        // Set the polygon mode
+        GL11.glPolygonMode(GL11.GL_FRONT_AND_BACK, polygonMode.getGLConstant());
+        // Draw all indices with the provided mode, for each instance
+        if (coreDrawInstanced) {
+            GL31.glDrawElementsInstanced(drawingMode.getGLConstant(), indicesDrawCount, GL11.GL_UNSIGNED_INT, indicesOffset * DataType.INT.getByteSize(), count);
+        } else {
+            ARBDrawInstanced.glDrawElementsInstancedARB(drawingMode.getGLConstant(), indicesDrawCount, GL11.GL_UNSIGNED_INT, indicesOffset * DataType.INT.getByteSize(), count);
+        }
+        // Unbind the index buffer
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+        // Unbind the vao
+        GL30.glBindVertexArray(0);
+        // Check for errors
+        LWJGLUtil.checkForGLError();
+    }
+
     @Override
     public GLVersion getGLVersion() {
         return GLVersion.GL30;
@@ -0,0 +1,41 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+/**
+ * Implemented by vertex {@link ShaderImplementation}s that can shade many vertices in one call, as a faster alternative to {@link ShaderImplementation#main(InBuffer, OutBuffer)}. The renderer uses it
+ * instead of the per vertex entry point when all the inputs and outputs are floats.
+ */
+public interface BatchShader {
+    /**
+     * Shades a range of vertices in one call. The data is given by component: the inputs in the order of the attributes, the outputs in the order of the output format. A vertex is at the same index in
+     * every array, and only the vertices in the range have to be shaded.
+     *
+     * @param in The input components, each with at least start + count values
+     * @param out The output components, to fill from the start for count values
+     * @param start The index of the first vertex to shade
+     * @param count The number of vertices to shade
+     */
+    void mainBatch(float[][] in, float[][] out, int start, int count);
+}
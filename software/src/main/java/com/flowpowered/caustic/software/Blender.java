@@ -0,0 +1,173 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
+
+/**
+ * Blends packed ARGB colors according to the source and destination functions. The common function pairs work directly on the packed colors, two 8 bit channels at a time in the 16 bit halves of an
+ * int, and the others convert the channels to floats.
+ */
+class Blender {
+    private static final int OPAQUE = 0;
+    private static final int ALPHA = 1;
+    private static final int ADDITIVE = 2;
+    private static final int ALPHA_ADDITIVE = 3;
+    private static final int GENERIC = 4;
+    // Mask of the red and blue channels, or the alpha and green ones when shifted right by 8
+    private static final int CHANNEL_PAIR_MASK = 0x00FF00FF;
+    private static final float INVERSE_BYTE_RANGE = 1 / 255f;
+    private BlendFunction source = BlendFunction.GL_ONE;
+    private BlendFunction destination = BlendFunction.GL_ZERO;
+    private int mode = OPAQUE;
+
+    void setFunctions(BlendFunction source, BlendFunction destination) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source function cannot be null");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("Destination function cannot be null");
+        }
+        this.source = source;
+        this.destination = destination;
+        if (source == BlendFunction.GL_ONE && destination == BlendFunction.GL_ZERO) {
+            mode = OPAQUE;
+        } else if (source == BlendFunction.GL_SRC_ALPHA && destination == BlendFunction.GL_ONE_MINUS_SRC_ALPHA) {
+            mode = ALPHA;
+        } else if (source == BlendFunction.GL_ONE && destination == BlendFunction.GL_ONE) {
+            mode = ADDITIVE;
+        } else if (source == BlendFunction.GL_SRC_ALPHA && destination == BlendFunction.GL_ONE) {
+            mode = ALPHA_ADDITIVE;
+        } else {
+            mode = GENERIC;
+        }
+    }
+
+    boolean isOpaque() {
+        return mode == OPAQUE;
+    }
+
+    int blend(int src, int dst) {
+        switch (mode) {
+            case OPAQUE:
+                return src;
+            case ALPHA: {
+                final int alpha = src >>> 24;
+                final int inverseAlpha = 255 - alpha;
+                final int rb = divideBy255((src & CHANNEL_PAIR_MASK) * alpha + (dst & CHANNEL_PAIR_MASK) * inverseAlpha);
+                final int ag = divideBy255((src >>> 8 & CHANNEL_PAIR_MASK) * alpha + (dst >>> 8 & CHANNEL_PAIR_MASK) * inverseAlpha);
+                return ag << 8 | rb;
+            }
+            case ADDITIVE:
+                return addSaturated(src, dst);
+            case ALPHA_ADDITIVE: {
+                final int alpha = src >>> 24;
+                final int rb = divideBy255((src & CHANNEL_PAIR_MASK) * alpha);
+                final int ag = divideBy255((src >>> 8 & CHANNEL_PAIR_MASK) * alpha);
+                return addSaturated(ag << 8 | rb, dst);
+            }
+            default:
+                return blendGeneric(src, dst);
+        }
+    }
+
+    // Divides both 16 bit halves by 255 with rounding, each must be at most 255 * 255
+    private static int divideBy255(int pair) {
+        pair += 0x00800080;
+        return (pair + (pair >>> 8 & CHANNEL_PAIR_MASK)) >>> 8 & CHANNEL_PAIR_MASK;
+    }
+
+    // Adds the channels, clamping them to 255
+    private static int addSaturated(int a, int b) {
+        int rb = (a & CHANNEL_PAIR_MASK) + (b & CHANNEL_PAIR_MASK);
+        int ag = (a >>> 8 & CHANNEL_PAIR_MASK) + (b >>> 8 & CHANNEL_PAIR_MASK);
+        // Overflowing channels carry into the bit above them, which is turned into a full channel mask
+        final int rbCarry = rb & 0x01000100;
+        final int agCarry = ag & 0x01000100;
+        rb = (rb | rbCarry - (rbCarry >>> 8)) & CHANNEL_PAIR_MASK;
+        ag = (ag | agCarry - (agCarry >>> 8)) & CHANNEL_PAIR_MASK;
+        return ag << 8 | rb;
+    }
+
+    // Blends any functions, using floats for the channels, without any shared state since tiles are blended concurrently, also the reference for the packed paths
+    int blendGeneric(int src, int dst) {
+        final float sr = (src >> 16 & 0xFF) * INVERSE_BYTE_RANGE;
+        final float sg = (src >> 8 & 0xFF) * INVERSE_BYTE_RANGE;
+        final float sb = (src & 0xFF) * INVERSE_BYTE_RANGE;
+        final float sa = (src >>> 24) * INVERSE_BYTE_RANGE;
+        final float dr = (dst >> 16 & 0xFF) * INVERSE_BYTE_RANGE;
+        final float dg = (dst >> 8 & 0xFF) * INVERSE_BYTE_RANGE;
+        final float db = (dst & 0xFF) * INVERSE_BYTE_RANGE;
+        final float da = (dst >>> 24) * INVERSE_BYTE_RANGE;
+        return SoftwareUtil.pack(
+                sr * factor(source, sr, sa, dr, da, false) + dr * factor(destination, sr, sa, dr, da, false),
+                sg * factor(source, sg, sa, dg, da, false) + dg * factor(destination, sg, sa, dg, da, false),
+                sb * factor(source, sb, sa, db, da, false) + db * factor(destination, sb, sa, db, da, false),
+                sa * factor(source, sa, sa, da, da, true) + da * factor(destination, sa, sa, da, da, true));
+    }
+
+    // Returns the factor for a channel, given the source and destination values of that channel and alpha
+    private static float factor(BlendFunction function, float s, float sa, float d, float da, boolean alpha) {
+        switch (function) {
+            case GL_ZERO:
+                return 0;
+            case GL_ONE:
+                return 1;
+            case GL_SRC_COLOR:
+                return s;
+            case GL_ONE_MINUS_SRC_COLOR:
+                return 1 - s;
+            case GL_DST_COLOR:
+                return d;
+            case GL_ONE_MINUS_DST_COLOR:
+                return 1 - d;
+            case GL_SRC_ALPHA:
+                return sa;
+            case GL_ONE_MINUS_SRC_ALPHA:
+                return 1 - sa;
+            case GL_DST_ALPHA:
+                return da;
+            case GL_ONE_MINUS_DST_ALPHA:
+                return 1 - da;
+            case GL_SRC_ALPHA_SATURATE:
+                return alpha ? 1 : Math.min(sa, 1 - da);
+            // The blend color can't be set, so it has the default value of zero
+            case GL_CONSTANT_COLOR:
+            case GL_CONSTANT_ALPHA:
+                return 0;
+            case GL_ONE_MINUS_CONSTANT_COLOR:
+            case GL_ONE_MINUS_CONSTANT_ALPHA:
+                return 1;
+            // Fragment shaders have a single color output, so the second source is zero
+            case GL_SRC1_COLOR:
+            case GL_SRC1_ALPHA:
+                return 0;
+            case GL_ONE_MINUS_SRC1_COLOR:
+            case GL_ONE_MINUS_SRC1_ALPHA:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported blend function: " + function);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.util.Arrays;
+
+/**
+ * Per thread state of the 2x2 pixel quad being shaded, used by the samplers to compute the screen space derivatives of the texture coordinates. The fragment shader is first run for the top left, top
+ * right and bottom left pixels of the quad to gather the coordinates of each sample call, then the derivatives are computed per call, and used when shading the pixels. A gathered pixel keeps its
+ * output when all its samples magnify the texture, since they don't depend on the derivatives then, so only minified pixels are shaded twice. Outside of quad shading, there are no derivatives.
+ */
+class FragmentQuad {
+    private static final ThreadLocal<FragmentQuad> CURRENT = new ThreadLocal<FragmentQuad>() {
+        @Override
+        protected FragmentQuad initialValue() {
+            return new FragmentQuad();
+        }
+    };
+    private static final int NONE = 0;
+    private static final int GATHERING = 1;
+    private static final int SHADING = 2;
+    private int state = NONE;
+    // Pixel being gathered, 0 and 1 on the first row, 2 and 3 on the second, and the sample call count of each
+    private int pixel;
+    private final int[] callCounts = new int[4];
+    // Index of the next sample call for the current pixel
+    private int call;
+    // Gathered coordinates, in call, pixel, component order, and the textures sampled in call, pixel order
+    private float[] coordinates = new float[64];
+    private SoftwareTexture[] textures = new SoftwareTexture[32];
+    // Derivatives, in call order, with the x and y changes per horizontal pixel then per vertical pixel
+    private float[] derivatives = new float[32];
+    private int derivativeCount;
+
+    private FragmentQuad() {
+    }
+
+    static FragmentQuad get() {
+        return CURRENT.get();
+    }
+
+    void gather(int pixel) {
+        state = GATHERING;
+        this.pixel = pixel;
+        callCounts[pixel] = 0;
+        call = 0;
+    }
+
+    void shade() {
+        if (state == GATHERING) {
+            computeDerivatives();
+        }
+        state = SHADING;
+        call = 0;
+    }
+
+    // Returns true if the output gathered for the pixel is the one it would have when shaded with the derivatives
+    boolean isGatheredExact(int pixel) {
+        final int calls = Math.min(callCounts[pixel], derivativeCount);
+        for (int i = 0; i < calls; i++) {
+            final int d = i * 4;
+            if (!textures[i * 4 + pixel].isMagnified(derivatives[d], derivatives[d + 1], derivatives[d + 2], derivatives[d + 3])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void end() {
+        state = NONE;
+    }
+
+    private void computeDerivatives() {
+        // Only the calls made by the first three pixels can have derivatives, the others get none
+        derivativeCount = Math.min(callCounts[0], Math.min(callCounts[1], callCounts[2]));
+        if (derivatives.length < derivativeCount * 4) {
+            derivatives = new float[derivativeCount * 8];
+        }
+        for (int i = 0; i < derivativeCount; i++) {
+            final int c = i * 8;
+            final int d = i * 4;
+            // Differences from the top left pixel to its right and bottom neighbours
+            derivatives[d] = coordinates[c + 2] - coordinates[c];
+            derivatives[d + 1] = coordinates[c + 3] - coordinates[c + 1];
+            derivatives[d + 2] = coordinates[c + 4] - coordinates[c];
+            derivatives[d + 3] = coordinates[c + 5] - coordinates[c + 1];
+        }
+    }
+
+    void sample(SoftwareTexture texture, float x, float y, float[] destination) {
+        switch (state) {
+            case GATHERING:
+                final int c = call * 8 + pixel * 2;
+                if (coordinates.length <= c + 1) {
+                    coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+                    textures = Arrays.copyOf(textures, textures.length * 2);
+                }
+                coordinates[c] = x;
+                coordinates[c + 1] = y;
+                textures[c >> 1] = texture;
+                callCounts[pixel] = ++call;
+                // The result is discarded, but it might still be used to compute other coordinates
+                texture.sample(x, y, destination);
+                return;
+            case SHADING:
+                final int d = call++ * 4;
+                if (call <= derivativeCount) {
+                    texture.sample(x, y, derivatives[d], derivatives[d + 1], derivatives[d + 2], derivatives[d + 3], destination);
+                    return;
+                }
+                texture.sample(x, y, destination);
+                return;
+            default:
+                texture.sample(x, y, destination);
+        }
+    }
+}
@@ -51,4 +51,34 @@ public interface InBuffer {
     Vector4f readVector4f();
 
     void skip();
+
+    /**
+     * Reads a component of the current attribute as an int, without moving to the next attribute. Components outside of the attribute are read as zero.
+     *
+     * @param component The index of the component in the attribute
+     * @return The component value
+     */
+    int readInt(int component);
+
+    /**
+     * Reads a component of the current attribute as a float, without moving to the next attribute. Components outside of the attribute are read as zero.
+     *
+     * @param component The index of the component in the attribute
+     * @return The component value
+     */
+    float readFloat(int component);
+
+    /**
+     * Reads the current attribute into the array as ints, then moves to the next attribute. Components outside of the attribute are read as zero.
+     *
+     * @param destination The array in which to store the components
+     */
+    void readInts(int[] destination);
+
+    /**
+     * Reads the current attribute into the array as floats, then moves to the next attribute. Components outside of the attribute are read as zero.
+     *
+     * @param destination The array in which to store the components
+     */
+    void readFloats(float[] destination);
 }
@@ -49,4 +49,30 @@ public interface OutBuffer {
     void writeVector3f(Vector3f v);
 
     void writeVector4f(Vector4f v);
+
+    void writeInt2(int x, int y);
+
+    void writeInt3(int x, int y, int z);
+
+    void writeInt4(int x, int y, int z, int w);
+
+    void writeFloat2(float x, float y);
+
+    void writeFloat3(float x, float y, float z);
+
+    void writeFloat4(float x, float y, float z, float w);
+
+    /**
+     * Writes the components in the array as the current attribute, then moves to the next attribute. Extra components are ignored.
+     *
+     * @param source The array of components
+     */
+    void writeInts(int[] source);
+
+    /**
+     * Writes the components in the array as the current attribute, then moves to the next attribute. Extra components are ignored.
+     *
+     * @param source The array of components
+     */
+    void writeFloats(float[] source);
 }
@@ -46,9 +46,27 @@ public class Sampler {
     }
 
     public Vector4f sample(float x, float y) {
+        final float[] color = new float[4];
+        sample(x, y, color);
+        return new Vector4f(color[0], color[1], color[2], color[3]);
+    }
+
+    /**
+     * Samples the texture at the coordinates, storing the red, green, blue and alpha components in the first four elements of the array. This doesn't allocate any memory, so it should be preferred
+     * over the methods returning a vector in fragment shaders.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param destination The array in which to store the color
+     */
+    public void sample(float x, float y, float[] destination) {
         if (texture == null) {
             throw new IllegalStateException("No texture bound to sampler");
         }
-        return texture.sample(x, y);
+        FragmentQuad.get().sample(texture, x, y, destination);
+    }
+
+    boolean needsDerivatives() {
+        return texture != null && texture.needsDerivatives();
     }
 }
@@ -41,16 +41,20 @@ import com.flowpowered.caustic.api.util.CausticUtil;
 class ShaderBuffer implements InBuffer, OutBuffer {
     private final IntBuffer buffer;
     private final DataFormat[] formats;
+    // The offset of each attribute in the buffer
+    private final int[] offsets;
     private int position = 0;
     private int count = 0;
 
     ShaderBuffer(DataFormat[] formats) {
         this.formats = new DataFormat[formats.length];
+        offsets = new int[formats.length];
         int capacity = 0;
         for (int i = 0; i < formats.length; i++) {
             final DataFormat format = formats[i];
             final int count = format.getCount();
             this.formats[i] = format.getType().isInteger() ? new DataFormat(DataType.INT, count) : format;
+            offsets[i] = capacity;
             capacity += count;
         }
         buffer = CausticUtil.createIntBuffer(capacity);
@@ -82,6 +86,10 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         buffer.position(position);
     }
 
+    int capacity() {
+        return buffer.capacity();
+    }
+
     int remaining() {
         return buffer.remaining();
     }
@@ -90,10 +98,18 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         return buffer.get();
     }
 
+    int readRaw(int index) {
+        return buffer.get(index);
+    }
+
     void writeRaw(int value) {
         buffer.put(value);
     }
 
+    void writeRaw(int[] values, int offset, int length) {
+        buffer.put(values, offset, length);
+    }
+
     void writeRaw(ShaderBuffer buffer) {
         while (buffer.remaining() > 0) {
             writeRaw(buffer.readRaw());
@@ -161,6 +177,40 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         advance();
     }
 
+    @Override
+    public int readInt(int component) {
+        final DataFormat format = formats[position];
+        if (component >= format.getCount()) {
+            return 0;
+        }
+        return toInt(format.getType(), buffer.get(offsets[position] + component));
+    }
+
+    @Override
+    public float readFloat(int component) {
+        final DataFormat format = formats[position];
+        if (component >= format.getCount()) {
+            return 0;
+        }
+        return toFloat(format.getType(), buffer.get(offsets[position] + component));
+    }
+
+    @Override
+    public void readInts(int[] destination) {
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = readInt0();
+        }
+        advance();
+    }
+
+    @Override
+    public void readFloats(float[] destination) {
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = readFloat0();
+        }
+        advance();
+    }
+
     @Override
     public void writeInt(int i) {
         writeInt0(i);
@@ -221,20 +271,76 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         advance();
     }
 
+    @Override
+    public void writeInt2(int x, int y) {
+        writeInt0(x);
+        writeInt0(y);
+        advance();
+    }
+
+    @Override
+    public void writeInt3(int x, int y, int z) {
+        writeInt0(x);
+        writeInt0(y);
+        writeInt0(z);
+        advance();
+    }
+
+    @Override
+    public void writeInt4(int x, int y, int z, int w) {
+        writeInt0(x);
+        writeInt0(y);
+        writeInt0(z);
+        writeInt0(w);
+        advance();
+    }
+
+    @Override
+    public void writeFloat2(float x, float y) {
+        writeFloat0(x);
+        writeFloat0(y);
+        advance();
+    }
+
+    @Override
+    public void writeFloat3(float x, float y, float z) {
+        writeFloat0(x);
+        writeFloat0(y);
+        writeFloat0(z);
+        advance();
+    }
+
+    @Override
+    public void writeFloat4(float x, float y, float z, float w) {
+        writeFloat0(x);
+        writeFloat0(y);
+        writeFloat0(z);
+        writeFloat0(w);
+        advance();
+    }
+
+    @Override
+    public void writeInts(int[] source) {
+        for (int i : source) {
+            writeInt0(i);
+        }
+        advance();
+    }
+
+    @Override
+    public void writeFloats(float[] source) {
+        for (float f : source) {
+            writeFloat0(f);
+        }
+        advance();
+    }
+
     private int readInt0() {
         final DataFormat format = formats[position];
         if (++count > format.getCount()) {
             return 0;
         }
-        final int i = buffer.get();
-        switch (format.getType()) {
-            case INT:
-                return i;
-            case FLOAT:
-                return (int) Float.intBitsToFloat(i);
-            default:
-                throw new IllegalStateException("Unsupported type in input buffer: " + format.getType());
-        }
+        return toInt(format.getType(), buffer.get());
     }
 
     private float readFloat0() {
@@ -242,15 +348,7 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         if (++count > format.getCount()) {
             return 0;
         }
-        final int i = buffer.get();
-        switch (format.getType()) {
-            case INT:
-                return (float) i;
-            case FLOAT:
-                return Float.intBitsToFloat(i);
-            default:
-                throw new IllegalStateException("Unsupported type in input buffer: " + format.getType());
-        }
+        return toFloat(format.getType(), buffer.get());
     }
 
     private void writeInt0(int i) {
@@ -287,6 +385,28 @@ class ShaderBuffer implements InBuffer, OutBuffer {
         }
     }
 
+    private static int toInt(DataType type, int i) {
+        switch (type) {
+            case INT:
+                return i;
+            case FLOAT:
+                return (int) Float.intBitsToFloat(i);
+            default:
+                throw new IllegalStateException("Unsupported type in input buffer: " + type);
+        }
+    }
+
+    private static float toFloat(DataType type, int i) {
+        switch (type) {
+            case INT:
+                return (float) i;
+            case FLOAT:
+                return Float.intBitsToFloat(i);
+            default:
+                throw new IllegalStateException("Unsupported type in input buffer: " + type);
+        }
+    }
+
     private void advance() {
         final DataFormat format = formats[position];
         int n = Math.max(format.getCount() - count, 0);
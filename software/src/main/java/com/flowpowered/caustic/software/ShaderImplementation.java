@@ -23,13 +23,20 @@
  */
 package com.flowpowered.caustic.software;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import gnu.trove.impl.Constants;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
 
 import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
 import com.flowpowered.caustic.api.gl.Shader.ShaderType;
@@ -39,7 +46,12 @@ import com.flowpowered.caustic.api.gl.Shader.ShaderType;
  */
 public abstract class ShaderImplementation {
     private final DataFormat[] outputFormat;
-    private final Map<String, Field> uniforms = new HashMap<>();
+    private final TObjectIntMap<String> uniforms = new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+    // Per uniform slot: the field, its type, a setter of that exact type and a setter taking an object
+    private Field[] uniformFields;
+    private Class<?>[] uniformTypes;
+    private MethodHandle[] uniformSetters;
+    private MethodHandle[] uniformObjectSetters;
     private final TIntObjectMap<Sampler> samplers = new TIntObjectHashMap<>();
 
     protected ShaderImplementation() {
@@ -65,12 +77,39 @@ public abstract class ShaderImplementation {
     }
 
     private void findUniforms() {
+        final List<Field> fields = new ArrayList<>();
         for (Field field : getClass().getDeclaredFields()) {
             if (field.isAnnotationPresent(Uniform.class)) {
+                if (Modifier.isFinal(field.getModifiers())) {
+                    throw new IllegalArgumentException("Uniform \"" + field.getName() + "\" can't be final");
+                }
                 field.setAccessible(true);
-                uniforms.put(field.getName(), field);
+                fields.add(field);
             }
         }
+        // Give each uniform a slot, with setters bound to this instance
+        final int count = fields.size();
+        uniformFields = new Field[count];
+        uniformTypes = new Class<?>[count];
+        uniformSetters = new MethodHandle[count];
+        uniformObjectSetters = new MethodHandle[count];
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodType objectSetterType = MethodType.methodType(void.class, Object.class);
+        for (int i = 0; i < count; i++) {
+            final Field field = fields.get(i);
+            final MethodHandle setter;
+            try {
+                setter = lookup.unreflectSetter(field).bindTo(this);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Can't access uniform \"" + field.getName() + "\" in shader implementation", ex);
+            }
+            uniforms.put(field.getName(), i);
+            uniformFields[i] = field;
+            uniformTypes[i] = field.getType();
+            uniformSetters[i] = setter;
+            // Casts or unboxes the value to the field type
+            uniformObjectSetters[i] = setter.asType(objectSetterType);
+        }
     }
 
     private void findSamplers() {
@@ -102,16 +141,63 @@ public abstract class ShaderImplementation {
         return outputFormat;
     }
 
-    void setUniform(String name, Object o) {
-        final Field field = uniforms.get(name);
-        if (field != null) {
-            try {
-                field.set(this, o);
-            } catch (IllegalAccessException ex) {
-                throw new IllegalStateException("Could not set uniform in shader", ex);
-            } catch (IllegalArgumentException ex) {
-                throw new IllegalStateException("Uniform \"" + name + "\" is not of type \"" + o.getClass().getCanonicalName() + "\"", ex);
-            }
+    int getUniformSlot(String name) {
+        return uniforms.get(name);
+    }
+
+    void setUniform(int slot, boolean b) {
+        if (uniformTypes[slot] != boolean.class) {
+            setUniform(slot, (Object) b);
+            return;
+        }
+        try {
+            uniformSetters[slot].invokeExact(b);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not set uniform in shader", throwable);
+        }
+    }
+
+    void setUniform(int slot, int i) {
+        if (uniformTypes[slot] != int.class) {
+            setUniform(slot, (Object) i);
+            return;
+        }
+        try {
+            uniformSetters[slot].invokeExact(i);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not set uniform in shader", throwable);
+        }
+    }
+
+    void setUniform(int slot, float f) {
+        if (uniformTypes[slot] != float.class) {
+            setUniform(slot, (Object) f);
+            return;
+        }
+        try {
+            uniformSetters[slot].invokeExact(f);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not set uniform in shader", throwable);
+        }
+    }
+
+    void setUniform(int slot, Object o) {
+        try {
+            uniformObjectSetters[slot].invokeExact(o);
+        } catch (ClassCastException | NullPointerException ex) {
+            // Wrong object type, or null for a primitive field
+            throw new IllegalStateException("Uniform \"" + uniformFields[slot].getName() + "\" is not of type \""
+                    + (o == null ? "null" : o.getClass().getCanonicalName()) + "\"", ex);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Could not set uniform in shader", throwable);
         }
     }
 
@@ -122,6 +208,15 @@ public abstract class ShaderImplementation {
         }
     }
 
+    boolean needsDerivatives() {
+        for (Sampler sampler : samplers.valueCollection()) {
+            if (sampler.needsDerivatives()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     Set<String> getUniformNames() {
         return uniforms.keySet();
     }
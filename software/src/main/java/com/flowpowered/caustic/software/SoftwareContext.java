@@ -24,12 +24,14 @@
 package com.flowpowered.caustic.software;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import com.flowpowered.math.vector.Vector2i;
 import com.flowpowered.math.vector.Vector4f;
 
 import com.flowpowered.caustic.api.gl.Context;
 import com.flowpowered.caustic.api.gl.FrameBuffer;
+import com.flowpowered.caustic.api.gl.OcclusionQuery;
 import com.flowpowered.caustic.api.gl.Program;
 import com.flowpowered.caustic.api.gl.RenderBuffer;
 import com.flowpowered.caustic.api.gl.Shader;
@@ -42,7 +44,25 @@ import com.flowpowered.caustic.api.util.Rectangle;
  *
  */
 public class SoftwareContext extends Context {
-    private final SoftwareRenderer renderer = new SoftwareRenderer();
+    private final SoftwareRenderer renderer;
+    // Reused between frame reads, to avoid allocating for each one
+    private ByteBuffer frameData;
+
+    /**
+     * Constructs a new software context that presents its frames in a window.
+     */
+    public SoftwareContext() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new software context, which is either windowed or headless. A headless context only renders to memory and doesn't require a display.
+     *
+     * @param headless Whether or not the context is headless
+     */
+    protected SoftwareContext(boolean headless) {
+        renderer = new SoftwareRenderer(headless);
+    }
 
     @Override
     public void create() {
@@ -58,7 +78,7 @@ public class SoftwareContext extends Context {
 
     @Override
     public FrameBuffer newFrameBuffer() {
-        return new SoftwareFrameBuffer();
+        return new SoftwareFrameBuffer(renderer);
     }
 
     @Override
@@ -66,9 +86,14 @@ public class SoftwareContext extends Context {
         return new SoftwareProgram(renderer);
     }
 
+    @Override
+    public OcclusionQuery newOcclusionQuery() {
+        return new SoftwareOcclusionQuery(renderer);
+    }
+
     @Override
     public RenderBuffer newRenderBuffer() {
-        return null;
+        return new SoftwareRenderBuffer(renderer);
     }
 
     @Override
@@ -147,8 +172,13 @@ public class SoftwareContext extends Context {
     }
 
     @Override
-    public void setBlendingFunctions(int bufferIndex, BlendFunction source, BlendFunction destination) {
+    public void setColorMask(boolean red, boolean green, boolean blue, boolean alpha) {
+        renderer.setColorMask((red ? 0xFF0000 : 0) | (green ? 0xFF00 : 0) | (blue ? 0xFF : 0) | (alpha ? 0xFF000000 : 0));
+    }
 
+    @Override
+    public void setBlendingFunctions(int bufferIndex, BlendFunction source, BlendFunction destination) {
+        renderer.setBlendingFunctions(source, destination);
     }
 
     @Override
@@ -156,9 +186,91 @@ public class SoftwareContext extends Context {
         renderer.setViewPort(viewPort);
     }
 
+    /**
+     * {@inheritDoc} The frame is read from the last displayed one, depths included, so drawing the next frame doesn't change it. The returned buffer is reused by the next read, so the data
+     * needs to be copied if it should be kept longer.
+     */
     @Override
     public ByteBuffer readFrame(Rectangle size, InternalFormat format) {
-        return null;
+        checkCreated();
+        if (size == null) {
+            throw new IllegalArgumentException("Size cannot be null");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Format cannot be null");
+        }
+        final int capacity = size.getArea() * format.getBytes();
+        // Only grow the buffer, since reads of different sizes might alternate
+        frameData = SoftwareUtil.create(frameData, capacity, 0);
+        renderer.readFrame(size, format, frameData);
+        frameData.limit(capacity);
+        return frameData;
+    }
+
+    /**
+     * Returns a read only view of the pixels of the last displayed frame, without any copy or conversion. The pixels are packed as ARGB ints, by rows from the top down like the window, and the view
+     * has the width and height of the window. It is only valid until the next call to {@link #updateDisplay()}, after which the pixels are reused for rendering.
+     *
+     * @return The pixels of the last frame
+     */
+    public IntBuffer readFrame() {
+        checkCreated();
+        return renderer.getFrontPixels();
+    }
+
+    /**
+     * Returns the number of threads used to rasterize triangles.
+     *
+     * @return The rasterizer thread count
+     */
+    public int getThreadCount() {
+        return renderer.getRasterizer().getThreadCount();
+    }
+
+    /**
+     * Sets the number of threads used to rasterize triangles. The default is the number of available processors. The output doesn't depend on the thread count, but fragment shader implementations
+     * must not keep state in their fields when more than one thread is used, as they will be called concurrently.
+     *
+     * @param threads The rasterizer thread count, greater than zero
+     */
+    public void setThreadCount(int threads) {
+        renderer.getRasterizer().setThreadCount(threads);
+    }
+
+    /**
+     * Returns true if the rendering statistics are collected.
+     *
+     * @return Whether or not the statistics are enabled
+     */
+    public boolean isStatisticsEnabled() {
+        return renderer.isStatisticsEnabled();
+    }
+
+    /**
+     * Enables or disables the collection of the rendering statistics. They are disabled by default, but the counters are cheap enough to be left enabled.
+     *
+     * @param enabled Whether or not to enable the statistics
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        renderer.setStatisticsEnabled(enabled);
+    }
+
+    /**
+     * Returns the statistics of the last draw call. The returned object is updated by the next draw.
+     *
+     * @return The statistics of the last draw, or null if they aren't enabled
+     */
+    public SoftwareStatistics getDrawStatistics() {
+        return renderer.getDrawStatistics();
+    }
+
+    /**
+     * Returns the statistics of all the draw calls of the last displayed frame. The returned object is updated by the next call to {@link #updateDisplay()}.
+     *
+     * @return The statistics of the last frame, or null if they aren't enabled
+     */
+    public SoftwareStatistics getFrameStatistics() {
+        return renderer.getFrameStatistics();
     }
 
     @Override
@@ -166,6 +278,15 @@ public class SoftwareContext extends Context {
         return renderer.isCloseRequested();
     }
 
+    /**
+     * Returns true if the context is headless, which means it doesn't have a window and only renders to memory.
+     *
+     * @return Whether or not the context is headless
+     */
+    public boolean isHeadless() {
+        return renderer.isHeadless();
+    }
+
     @Override
     public GLVersion getGLVersion() {
         return GLVersion.SOFTWARE;
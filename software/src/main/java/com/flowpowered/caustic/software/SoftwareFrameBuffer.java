@@ -23,42 +23,197 @@
  */
 package com.flowpowered.caustic.software;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import com.flowpowered.caustic.api.gl.FrameBuffer;
 import com.flowpowered.caustic.api.gl.RenderBuffer;
 import com.flowpowered.caustic.api.gl.Texture;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+import com.flowpowered.caustic.api.util.CausticUtil;
 
 /**
+ * A software implementation of {@link FrameBuffer}. The renderer draws directly to the storage of the attached textures and render buffers, without any copy. Software fragment shaders have a single
+ * colour output, which is written to the lowest colour attachment. There is no stencil buffer, so stencil attachments aren't supported.
  *
+ * @see FrameBuffer
  */
 public class SoftwareFrameBuffer extends FrameBuffer {
+    // The points with depth storage, in order of preference
+    private static final AttachmentPoint[] DEPTH_POINTS = {AttachmentPoint.DEPTH, AttachmentPoint.DEPTH_STENCIL};
+    private final SoftwareRenderer renderer;
+    private final Map<AttachmentPoint, SoftwareTexture> textures = new EnumMap<>(AttachmentPoint.class);
+    private final Map<AttachmentPoint, SoftwareRenderBuffer> buffers = new EnumMap<>(AttachmentPoint.class);
+
+    SoftwareFrameBuffer(SoftwareRenderer renderer) {
+        this.renderer = renderer;
+    }
+
     @Override
-    public void bind() {
+    public void destroy() {
+        checkCreated();
+        if (renderer.getFrameBuffer() == this) {
+            renderer.setFrameBuffer(null);
+        }
+        textures.clear();
+        buffers.clear();
+        super.destroy();
+    }
 
+    @Override
+    public void bind() {
+        checkCreated();
+        if (!isComplete()) {
+            throw new IllegalStateException("Frame buffer is incomplete");
+        }
+        renderer.setFrameBuffer(this);
     }
 
     @Override
     public void unbind() {
-
+        checkCreated();
+        if (renderer.getFrameBuffer() == this) {
+            renderer.setFrameBuffer(null);
+        }
     }
 
     @Override
     public void attach(AttachmentPoint point, Texture texture) {
-
+        checkCreated();
+        texture.checkCreated();
+        CausticUtil.checkVersion(this, texture);
+        buffers.remove(point);
+        textures.put(point, (SoftwareTexture) texture);
+        updateTarget();
     }
 
     @Override
     public void attach(AttachmentPoint point, RenderBuffer buffer) {
-
+        checkCreated();
+        CausticUtil.checkVersion(this, buffer);
+        buffer.checkCreated();
+        textures.remove(point);
+        buffers.put(point, (SoftwareRenderBuffer) buffer);
+        updateTarget();
     }
 
     @Override
     public void detach(AttachmentPoint point) {
+        checkCreated();
+        textures.remove(point);
+        buffers.remove(point);
+        updateTarget();
+    }
 
+    private void updateTarget() {
+        // The renderer needs the new storage if the attachments changed while bound
+        if (renderer.getFrameBuffer() == this) {
+            renderer.setFrameBuffer(this);
+        }
     }
 
     @Override
     public boolean isComplete() {
-        return false;
+        checkCreated();
+        int width = 0, height = 0;
+        for (AttachmentPoint point : AttachmentPoint.values()) {
+            final SoftwareTexture texture = textures.get(point);
+            final SoftwareRenderBuffer buffer = buffers.get(point);
+            final InternalFormat format;
+            final int attachmentWidth, attachmentHeight;
+            if (texture != null) {
+                format = texture.getInternalFormat();
+                attachmentWidth = texture.getWidth();
+                attachmentHeight = texture.getHeight();
+            } else if (buffer != null) {
+                format = buffer.getFormat();
+                attachmentWidth = buffer.getWidth();
+                attachmentHeight = buffer.getHeight();
+            } else {
+                continue;
+            }
+            // The storage needs to be set
+            if (format == null || attachmentWidth <= 0 || attachmentHeight <= 0) {
+                return false;
+            }
+            if (point.isColor()) {
+                // Colours are rendered with 8 bits per component
+                if (format.hasDepth() || format.getComponentType().getByteSize() != 1) {
+                    return false;
+                }
+            } else if (point == AttachmentPoint.STENCIL || !format.hasDepth()) {
+                return false;
+            }
+            // All the attachments need to be the same size
+            if (width == 0) {
+                width = attachmentWidth;
+                height = attachmentHeight;
+            } else if (width != attachmentWidth || height != attachmentHeight) {
+                return false;
+            }
+        }
+        return width > 0;
+    }
+
+    // Returns true if the texture or render buffer is attached to any point
+    boolean isAttached(Object attachment) {
+        return textures.containsValue(attachment) || buffers.containsValue(attachment);
+    }
+
+    // Returns the width of the attachments, which are all the same size when complete
+    int getWidth() {
+        if (!textures.isEmpty()) {
+            return textures.values().iterator().next().getWidth();
+        }
+        return buffers.isEmpty() ? 0 : buffers.values().iterator().next().getWidth();
+    }
+
+    // Returns the height of the attachments, which are all the same size when complete
+    int getHeight() {
+        if (!textures.isEmpty()) {
+            return textures.values().iterator().next().getHeight();
+        }
+        return buffers.isEmpty() ? 0 : buffers.values().iterator().next().getHeight();
+    }
+
+    // Returns the storage of the lowest colour attachment, or null if there are none
+    int[] getColorStorage() {
+        for (AttachmentPoint point : AttachmentPoint.values()) {
+            if (!point.isColor()) {
+                continue;
+            }
+            final SoftwareTexture texture = textures.get(point);
+            if (texture != null) {
+                return texture.getColorStorage();
+            }
+            final SoftwareRenderBuffer buffer = buffers.get(point);
+            if (buffer != null) {
+                return buffer.getColorStorage();
+            }
+        }
+        return null;
+    }
+
+    // Returns the storage of the depth attachment, or null if there is none
+    short[] getDepthStorage() {
+        for (AttachmentPoint point : DEPTH_POINTS) {
+            final SoftwareTexture texture = textures.get(point);
+            if (texture != null) {
+                return texture.getDepthStorage();
+            }
+            final SoftwareRenderBuffer buffer = buffers.get(point);
+            if (buffer != null) {
+                return buffer.getDepthStorage();
+            }
+        }
+        return null;
+    }
+
+    // Called when the renderer stops rendering to the frame buffer, so the attached textures can update their mipmaps and image data
+    void onRendered() {
+        for (SoftwareTexture texture : textures.values()) {
+            texture.onRendered();
+        }
     }
 
     @Override
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import com.flowpowered.caustic.api.gl.OcclusionQuery;
+
+/**
+ * A software implementation of {@link OcclusionQuery}. Draw calls are done once they return, so the result is available as soon as the query has ended.
+ *
+ * @see OcclusionQuery
+ */
+public class SoftwareOcclusionQuery extends OcclusionQuery {
+    private final SoftwareRenderer renderer;
+    private int samples = 0;
+
+    SoftwareOcclusionQuery(SoftwareRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void destroy() {
+        checkCreated();
+        if (renderer.getOcclusionQuery() == this) {
+            renderer.setOcclusionQuery(null);
+        }
+        super.destroy();
+    }
+
+    @Override
+    public void begin() {
+        checkCreated();
+        if (renderer.getOcclusionQuery() != null) {
+            throw new IllegalStateException("An occlusion query is already active");
+        }
+        samples = 0;
+        renderer.setOcclusionQuery(this);
+    }
+
+    @Override
+    public void end() {
+        checkCreated();
+        if (renderer.getOcclusionQuery() != this) {
+            throw new IllegalStateException("Occlusion query is not active");
+        }
+        renderer.setOcclusionQuery(null);
+    }
+
+    @Override
+    public boolean isResultAvailable() {
+        checkCreated();
+        return renderer.getOcclusionQuery() != this;
+    }
+
+    @Override
+    public int getResult() {
+        checkCreated();
+        if (renderer.getOcclusionQuery() == this) {
+            throw new IllegalStateException("Occlusion query has not ended");
+        }
+        return samples;
+    }
+
+    void addSamples(int samples) {
+        this.samples += samples;
+    }
+
+    @Override
+    public GLVersion getGLVersion() {
+        return GLVersion.SOFTWARE;
+    }
+}
@@ -30,6 +30,10 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import gnu.trove.impl.Constants;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
 import com.flowpowered.math.matrix.Matrix2f;
 import com.flowpowered.math.matrix.Matrix3f;
 import com.flowpowered.math.matrix.Matrix4f;
@@ -48,6 +52,15 @@ import com.flowpowered.caustic.api.util.CausticUtil;
 public class SoftwareProgram extends Program {
     private final SoftwareRenderer renderer;
     private final Map<ShaderType, SoftwareShader> shaders = new EnumMap<>(ShaderType.class);
+    // Uniform names to program slots, resolved once on linking
+    private final TObjectIntMap<String> uniforms = new TObjectIntHashMap<>(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, -1);
+    // Linked shaders and their implementation at link time, to detect a recompilation
+    private SoftwareShader[] linkedShaders = new SoftwareShader[0];
+    private ShaderImplementation[] linkedImplementations = new ShaderImplementation[0];
+    // For each program slot, the uniform slot in each linked shader implementation, or -1 if it doesn't declare it
+    private int[][] uniformSlots = new int[0][];
+    // Whether or not the slots are valid for the attached shaders, false once they change, and checked again on use for the recompiled shaders
+    private boolean linked = false;
 
     SoftwareProgram(SoftwareRenderer renderer) {
         this.renderer = renderer;
@@ -56,7 +69,9 @@ public class SoftwareProgram extends Program {
     @Override
     public void attachShader(Shader shader) {
         CausticUtil.checkVersion(this, shader);
-        shaders.put(shader.getType(), (SoftwareShader) shader);
+        if (shaders.put(shader.getType(), (SoftwareShader) shader) != shader) {
+            linked = false;
+        }
     }
 
     SoftwareShader getShader(ShaderType type) {
@@ -68,16 +83,62 @@ public class SoftwareProgram extends Program {
         final Shader found = shaders.get(shader.getType());
         if (shader.equals(found)) {
             shaders.remove(shader.getType());
+            linked = false;
         }
     }
 
     @Override
     public void link() {
-        // Nothing to do
+        final int shaderCount = shaders.size();
+        linkedShaders = shaders.values().toArray(new SoftwareShader[shaderCount]);
+        linkedImplementations = new ShaderImplementation[shaderCount];
+        for (int i = 0; i < shaderCount; i++) {
+            linkedImplementations[i] = linkedShaders[i].getImplementation();
+        }
+        // Give a program slot to each uniform, and resolve it in the shaders
+        uniforms.clear();
+        final Set<String> names = getUniformNames();
+        uniformSlots = new int[names.size()][];
+        int slot = 0;
+        for (String name : names) {
+            final int[] shaderSlots = new int[shaderCount];
+            for (int i = 0; i < shaderCount; i++) {
+                shaderSlots[i] = linkedImplementations[i].getUniformSlot(name);
+            }
+            uniforms.put(name, slot);
+            uniformSlots[slot++] = shaderSlots;
+        }
+        linked = true;
+    }
+
+    private boolean isLinked() {
+        if (!linked || linkedShaders.length != shaders.size()) {
+            return false;
+        }
+        for (int i = 0; i < linkedShaders.length; i++) {
+            final SoftwareShader shader = linkedShaders[i];
+            if (shader.getImplementation() != linkedImplementations[i] || shaders.get(shader.getType()) != shader) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] getUniformSlots(String name) {
+        // Relink if shaders were attached or detached since, the recompilations are only checked on use
+        if (!linked) {
+            link();
+        }
+        final int slot = uniforms.get(name);
+        return slot < 0 ? null : uniformSlots[slot];
     }
 
     @Override
     public void use() {
+        // Relink if the shaders changed since, since the slots are only valid for the linked implementations
+        if (!isLinked()) {
+            link();
+        }
         renderer.setProgram(this);
     }
 
@@ -94,17 +155,41 @@ public class SoftwareProgram extends Program {
 
     @Override
     public void setUniform(String name, boolean b) {
-        setUniform(name, (Object) b);
+        final int[] slots = getUniformSlots(name);
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0) {
+                linkedImplementations[i].setUniform(slots[i], b);
+            }
+        }
     }
 
     @Override
     public void setUniform(String name, int i) {
-        setUniform(name, (Object) i);
+        final int[] slots = getUniformSlots(name);
+        if (slots == null) {
+            return;
+        }
+        for (int ii = 0; ii < slots.length; ii++) {
+            if (slots[ii] >= 0) {
+                linkedImplementations[ii].setUniform(slots[ii], i);
+            }
+        }
     }
 
     @Override
     public void setUniform(String name, float f) {
-        setUniform(name, (Object) f);
+        final int[] slots = getUniformSlots(name);
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0) {
+                linkedImplementations[i].setUniform(slots[i], f);
+            }
+        }
     }
 
     @Override
@@ -153,8 +238,14 @@ public class SoftwareProgram extends Program {
     }
 
     private void setUniform(String name, Object o) {
-        for (SoftwareShader shader : shaders.values()) {
-            shader.getImplementation().setUniform(name, o);
+        final int[] slots = getUniformSlots(name);
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0) {
+                linkedImplementations[i].setUniform(slots[i], o);
+            }
         }
     }
 
@@ -0,0 +1,652 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+/**
+ * Rasterizes triangles in two steps: the window space triangles are first binned into screen tiles, then the tiles are shaded, in parallel if more than one thread is available. Each tile owns its
+ * region of the color and depth buffers and processes its triangles in submission order, so the output is the same regardless of the number of threads.
+ */
+class SoftwareRasterizer {
+    // Tiles are 64x64, which is a multiple of the 8x8 rasterization blocks so that blocks never straddle tiles
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    // Block size, standard 8x8 (must be power of two), here 2^3
+    private static final int BLOCK_SIZE = 1 << 3;
+    // The maximum number of triangles stored before the bins are flushed, to bound the memory used by large draws
+    private static final int MAX_BINNED_TRIANGLES = 1 << 14;
+    // The largest absolute window coordinate of the vertices, in pixels, for which the 28.4 fixed point coordinates fit in an int and the edge functions in a long
+    static final float MAX_COORDINATE = 1 << 24;
+    private final SoftwareRenderer renderer;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+    // The tile grid, sized for the current buffers
+    private Tile[] tiles = new Tile[0];
+    private int tilesX, tilesY;
+    private int width = -1, height = -1;
+    // The tiles with at least one binned triangle, in the order they were first touched
+    private Tile[] activeTiles = new Tile[0];
+    private int activeTileCount = 0;
+    // The binned triangle data, per vertex the window coordinates as float bits followed by the raw vertex shader outputs
+    private int[] triangles = new int[0];
+    private int triangleCount = 0;
+    private int vertexSize;
+    private DataFormat[] vertexFormat;
+    private ShaderImplementation fragmentShader;
+    // Whether or not to shade by 2x2 pixel quads, for the samplers to compute the derivatives
+    private boolean quadShading;
+    // The view port, as triangles within the guard band aren't clipped to it
+    private int scissorMinX, scissorMinY, scissorMaxX, scissorMaxY;
+
+    SoftwareRasterizer(SoftwareRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    int getThreadCount() {
+        return threads;
+    }
+
+    void setThreadCount(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be greater than zero");
+        }
+        if (this.threads != threads) {
+            this.threads = threads;
+            shutdownPool();
+        }
+    }
+
+    void begin(ShaderImplementation fragmentShader, DataFormat[] vertexFormat) {
+        this.fragmentShader = fragmentShader;
+        this.vertexFormat = vertexFormat;
+        // Without color writes the fragment shader isn't run, so nothing is sampled
+        quadShading = fragmentShader.needsDerivatives() && renderer.isColorWriting();
+        // Compute the size of a vertex in the triangle data
+        vertexSize = 0;
+        for (DataFormat format : vertexFormat) {
+            vertexSize += format.getCount();
+        }
+        triangleCount = 0;
+        updateTiles();
+        final Rectangle viewPort = renderer.getViewPort();
+        scissorMinX = Math.max(viewPort.getX(), 0);
+        scissorMinY = Math.max(viewPort.getY(), 0);
+        scissorMaxX = Math.min(viewPort.getX() + viewPort.getWidth(), width);
+        scissorMaxY = Math.min(viewPort.getY() + viewPort.getHeight(), height);
+    }
+
+    void addTriangle(ShaderBuffer out1, float x1, float y1, float z1, float w1,
+                     ShaderBuffer out2, float x2, float y2, float z2, float w2,
+                     ShaderBuffer out3, float x3, float y3, float z3, float w3) {
+        // Compute the bounds of the blocks touched by the triangle, the same way as when rasterizing
+        final int fx1 = Math.round(x1 * 16);
+        final int fx2 = Math.round(x2 * 16);
+        final int fx3 = Math.round(x3 * 16);
+        final int fy1 = Math.round(y1 * 16);
+        final int fy2 = Math.round(y2 * 16);
+        final int fy3 = Math.round(y3 * 16);
+        final int minX = Math.min(fx1, Math.min(fx2, fx3)) + 0xf >> 4 & ~(BLOCK_SIZE - 1);
+        final int maxX = Math.max(fx1, Math.max(fx2, fx3)) + 0xf >> 4;
+        final int minY = Math.min(fy1, Math.min(fy2, fy3)) + 0xf >> 4 & ~(BLOCK_SIZE - 1);
+        final int maxY = Math.max(fy1, Math.max(fy2, fy3)) + 0xf >> 4;
+        // Convert them to the range of touched tiles, clamped to the scissor
+        final int minTileX = Math.max(minX, scissorMinX) >> TILE_SHIFT;
+        final int maxTileX = Math.min(maxX, scissorMaxX) - 1 >> TILE_SHIFT;
+        final int minTileY = Math.max(minY, scissorMinY) >> TILE_SHIFT;
+        final int maxTileY = Math.min(maxY, scissorMaxY) - 1 >> TILE_SHIFT;
+        // Discard the triangle if it doesn't touch any tile
+        if (minX >= maxX || minY >= maxY || minTileX > maxTileX || minTileY > maxTileY) {
+            return;
+        }
+        // Store the triangle data, growing the storage if needed
+        final int triangleSize = vertexSize * 3;
+        final int start = triangleCount * triangleSize;
+        if (start + triangleSize > triangles.length) {
+            final int[] newTriangles = new int[Math.max(triangles.length * 2, start + triangleSize)];
+            System.arraycopy(triangles, 0, newTriangles, 0, start);
+            triangles = newTriangles;
+        }
+        storeVertex(out1, x1, y1, z1, w1, start);
+        storeVertex(out2, x2, y2, z2, w2, start + vertexSize);
+        storeVertex(out3, x3, y3, z3, w3, start + vertexSize * 2);
+        // Add it to the bins of the tiles it touches
+        final int triangle = triangleCount++;
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                final Tile tile = tiles[tx + ty * tilesX];
+                if (tile.bin.isEmpty()) {
+                    activeTiles[activeTileCount++] = tile;
+                }
+                tile.bin.add(triangle);
+            }
+        }
+        // Flush the bins if we hit the maximum amount of stored triangles
+        if (triangleCount >= MAX_BINNED_TRIANGLES) {
+            flush();
+        }
+    }
+
+    void end() {
+        flush();
+        fragmentShader = null;
+    }
+
+    void dispose() {
+        shutdownPool();
+        tiles = new Tile[0];
+        activeTiles = new Tile[0];
+        triangles = new int[0];
+        width = -1;
+        height = -1;
+    }
+
+    private void storeVertex(ShaderBuffer out, float x, float y, float z, float w, int start) {
+        final int[] data = triangles;
+        data[start] = Float.floatToIntBits(x);
+        data[start + 1] = Float.floatToIntBits(y);
+        data[start + 2] = Float.floatToIntBits(z);
+        data[start + 3] = Float.floatToIntBits(w);
+        // Copy the vertex shader outputs after the position
+        for (int i = 4; i < vertexSize; i++) {
+            data[start + i] = out.readRaw(i);
+        }
+    }
+
+    private void flush() {
+        if (activeTileCount <= 0) {
+            triangleCount = 0;
+            return;
+        }
+        if (threads > 1 && activeTileCount > 1) {
+            // Shade the tiles in parallel, they don't share any pixels
+            getPool().invoke(new TileTask(0, activeTileCount));
+        } else {
+            for (int i = 0; i < activeTileCount; i++) {
+                activeTiles[i].rasterize();
+            }
+        }
+        // Empty the bins for the next batch, and collect the statistics of the tiles
+        final SoftwareStatistics statistics = renderer.getDrawStatistics();
+        final SoftwareOcclusionQuery occlusionQuery = renderer.getOcclusionQuery();
+        for (int i = 0; i < activeTileCount; i++) {
+            // Every written fragment passed the depth test
+            if (occlusionQuery != null) {
+                occlusionQuery.addSamples(activeTiles[i].fragmentsWritten);
+            }
+            activeTiles[i].collectStatistics(statistics);
+            activeTiles[i].bin.resetQuick();
+            activeTiles[i] = null;
+        }
+        activeTileCount = 0;
+        triangleCount = 0;
+    }
+
+    private void updateTiles() {
+        final int width = renderer.getTargetWidth();
+        final int height = renderer.getTargetHeight();
+        if (this.width == width && this.height == height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        tilesX = width + TILE_SIZE - 1 >> TILE_SHIFT;
+        tilesY = height + TILE_SIZE - 1 >> TILE_SHIFT;
+        tiles = new Tile[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                final int x = tx << TILE_SHIFT;
+                final int y = ty << TILE_SHIFT;
+                tiles[tx + ty * tilesX] = new Tile(x, y, Math.min(x + TILE_SIZE, width), Math.min(y + TILE_SIZE, height));
+            }
+        }
+        activeTiles = new Tile[tiles.length];
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private void shutdownPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private class Tile {
+        // Pixel bounds of the tile, min inclusive, max exclusive
+        private final int minX, minY, maxX, maxY;
+        // Indices of the binned triangles, in submission order
+        private final TIntArrayList bin = new TIntArrayList();
+        // Fragment buffers owned by the tile, since tiles can be shaded concurrently
+        private DataFormat[] format;
+        private ShaderBuffer fragmentIn;
+        private ShaderBuffer fragmentOut;
+        // Per pixel values for a pair of rows of a block, each computed for all the pixels at once
+        private final long[] rowEdges1 = new long[BLOCK_SIZE * 2];
+        private final long[] rowEdges2 = new long[BLOCK_SIZE * 2];
+        private final float[] rowR = new float[BLOCK_SIZE * 2];
+        private final float[] rowT = new float[BLOCK_SIZE * 2];
+        private final float[] rowZ = new float[BLOCK_SIZE * 2];
+        // Depths of the pixels of a quad being shaded
+        private final short[] quadDepths = new short[4];
+        private final int[] quadColors = new int[3];
+        // Interpolation setup for the w of the current triangle, the same as the vertex outputs
+        private float wBase, wDelta1, wDelta3;
+        // Interpolation setup for the vertex shader outputs of the current triangle: the value at the second vertex,
+        // and the differences from it to the first and third ones, which are weighted by the barycentric coordinates
+        private boolean[] integerOutputs;
+        private float[] outputBases;
+        private float[] outputDeltas1;
+        private float[] outputDeltas3;
+        private int[] interpolatedOutputs;
+        // Statistics counters, owned by the tile so they don't need synchronization
+        private int blocksTouched, blocksRejected;
+        private int fragmentsShaded, fragmentsDepthFailed, fragmentsWritten;
+
+        private Tile(int minX, int minY, int maxX, int maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        private void rasterize() {
+            // Create the fragment buffers and interpolation arrays if the vertex format changed
+            if (format != vertexFormat) {
+                format = vertexFormat;
+                fragmentIn = new ShaderBuffer(vertexFormat);
+                fragmentOut = new ShaderBuffer(SoftwareVertexArray.FRAGMENT_OUTPUT);
+                final int outputCount = vertexSize - 4;
+                integerOutputs = new boolean[outputCount];
+                outputBases = new float[outputCount];
+                outputDeltas1 = new float[outputCount];
+                outputDeltas3 = new float[outputCount];
+                interpolatedOutputs = new int[outputCount];
+                // The outputs start after the position
+                final DataFormat[] formats = fragmentIn.getFormat();
+                int output = 0;
+                for (int i = 1; i < formats.length; i++) {
+                    final boolean integer = formats[i].getType() == DataType.INT;
+                    for (int ii = 0; ii < formats[i].getCount(); ii++) {
+                        integerOutputs[output++] = integer;
+                    }
+                }
+            }
+            final int size = bin.size();
+            for (int i = 0; i < size; i++) {
+                drawTriangle(bin.getQuick(i));
+            }
+        }
+
+        // Adds the counters to the statistics if they're enabled, then resets them
+        private void collectStatistics(SoftwareStatistics statistics) {
+            if (statistics != null) {
+                statistics.addBlocks(blocksTouched, blocksRejected);
+                statistics.addFragments(fragmentsShaded, fragmentsDepthFailed, fragmentsWritten);
+            }
+            blocksTouched = 0;
+            blocksRejected = 0;
+            fragmentsShaded = 0;
+            fragmentsDepthFailed = 0;
+            fragmentsWritten = 0;
+        }
+
+        // Based on http://devmaster.net/posts/6145/advanced-rasterization
+        private void drawTriangle(int triangle) {
+            final int[] data = triangles;
+            final int v1 = triangle * vertexSize * 3;
+            final int v2 = v1 + vertexSize;
+            final int v3 = v2 + vertexSize;
+            // Window coordinates of the vertices
+            final float x1 = Float.intBitsToFloat(data[v1]);
+            final float y1 = Float.intBitsToFloat(data[v1 + 1]);
+            final float z1 = Float.intBitsToFloat(data[v1 + 2]);
+            final float w1 = Float.intBitsToFloat(data[v1 + 3]);
+            final float x2 = Float.intBitsToFloat(data[v2]);
+            final float y2 = Float.intBitsToFloat(data[v2 + 1]);
+            final float z2 = Float.intBitsToFloat(data[v2 + 2]);
+            final float w2 = Float.intBitsToFloat(data[v2 + 3]);
+            final float x3 = Float.intBitsToFloat(data[v3]);
+            final float y3 = Float.intBitsToFloat(data[v3 + 1]);
+            final float z3 = Float.intBitsToFloat(data[v3 + 2]);
+            final float w3 = Float.intBitsToFloat(data[v3 + 3]);
+            // (28).(4) (in bits) fixed-point coordinates
+            final int fy1 = Math.round(y1 * 16);
+            final int fy2 = Math.round(y2 * 16);
+            final int fy3 = Math.round(y3 * 16);
+            final int fx1 = Math.round(x1 * 16);
+            final int fx2 = Math.round(x2 * 16);
+            final int fx3 = Math.round(x3 * 16);
+            // Deltas, the edge functions are products of deltas and coordinates, which need 64 bits for the triangles in the guard band
+            final long dx12 = fx1 - fx2;
+            final long dx23 = fx2 - fx3;
+            final long dx31 = fx3 - fx1;
+            final long dy12 = fy1 - fy2;
+            final long dy23 = fy2 - fy3;
+            final long dy31 = fy3 - fy1;
+            // Fixed-point deltas
+            final long fdx12 = dx12 << 4;
+            final long fdx23 = dx23 << 4;
+            final long fdx31 = dx31 << 4;
+            final long fdy12 = dy12 << 4;
+            final long fdy23 = dy23 << 4;
+            final long fdy31 = dy31 << 4;
+            final int block = BLOCK_SIZE;
+            // The part of the tile in the scissor
+            final int clipMinX = Math.max(minX, scissorMinX);
+            final int clipMaxX = Math.min(maxX, scissorMaxX);
+            final int clipMinY = Math.max(minY, scissorMinY);
+            final int clipMaxY = Math.min(maxY, scissorMaxY);
+            // Bounding rectangle, start in the corner of the 8x8 block, and clamp to the clipped tile
+            final int startX = Math.max(Math.min(fx1, Math.min(fx2, fx3)) + 0xf >> 4, clipMinX) & ~(block - 1);
+            final int endX = Math.min(Math.max(fx1, Math.max(fx2, fx3)) + 0xf >> 4, clipMaxX);
+            final int startY = Math.max(Math.min(fy1, Math.min(fy2, fy3)) + 0xf >> 4, clipMinY) & ~(block - 1);
+            final int endY = Math.min(Math.max(fy1, Math.max(fy2, fy3)) + 0xf >> 4, clipMaxY);
+            // Inverse of the determinant of deltas to compute the normalized barycentric coordinates for interpolation
+            final float inverseDet = 1f / (dx23 * dy12 - dy23 * dx12);
+            // Barycentric coordinates
+            long c1 = dy12 * fx1 - dx12 * fy1;
+            long c2 = dy23 * fx2 - dx23 * fy2;
+            long c3 = dy31 * fx3 - dx31 * fy3;
+            // Correct for fill convention
+            if (dy12 < 0 || dy12 == 0 && dx12 > 0) {
+                c1++;
+            }
+            if (dy23 < 0 || dy23 == 0 && dx23 > 0) {
+                c2++;
+            }
+            if (dy31 < 0 || dy31 == 0 && dx31 > 0) {
+                c3++;
+            }
+            // Setup the interpolation of the depth, w and vertex outputs
+            final float dz1 = z1 - z2, dz3 = z3 - z2;
+            wBase = w2;
+            wDelta1 = w1 - w2;
+            wDelta3 = w3 - w2;
+            final int outputCount = vertexSize - 4;
+            for (int i = 0; i < outputCount; i++) {
+                final float a1, a2, a3;
+                if (integerOutputs[i]) {
+                    a1 = data[v1 + 4 + i];
+                    a2 = data[v2 + 4 + i];
+                    a3 = data[v3 + 4 + i];
+                } else {
+                    a1 = Float.intBitsToFloat(data[v1 + 4 + i]);
+                    a2 = Float.intBitsToFloat(data[v2 + 4 + i]);
+                    a3 = Float.intBitsToFloat(data[v3 + 4 + i]);
+                }
+                outputBases[i] = a2;
+                outputDeltas1[i] = a1 - a2;
+                outputDeltas3[i] = a3 - a2;
+            }
+            // Depth range of the triangle, widened by one to cover rounding in the interpolation
+            final boolean depthTest = renderer.isDepthTesting();
+            final boolean depthWrite = depthTest && renderer.isDepthWriting();
+            final int minDepth = SoftwareUtil.denormalizeToShort(Math.min(z1, Math.min(z2, z3))) - 1;
+            final int maxDepth = SoftwareUtil.denormalizeToShort(Math.max(z1, Math.max(z2, z3))) + 1;
+            // Loop through blocks
+            for (int by = startY; by < endY; by += block) {
+                // Don't go past the clipped tile on the last row, which can be smaller than a block
+                final int blockEndY = Math.min(by + block, clipMaxY);
+                for (int bx = startX; bx < endX; bx += block) {
+                    // Mask of the pixels of a row in the clipped tile, which can be cut on either side
+                    final int rowMask = (1 << Math.min(block, clipMaxX - bx)) - 1 & -(1 << Math.max(clipMinX - bx, 0));
+                    // Corners of block
+                    final long bx0 = bx << 4;
+                    final long bx1 = bx + block - 1 << 4;
+                    final long by0 = by << 4;
+                    final long by1 = by + block - 1 << 4;
+                    // Evaluate half-space functions
+                    final boolean a00 = c1 + dx12 * by0 - dy12 * bx0 <= 0;
+                    final boolean a10 = c1 + dx12 * by0 - dy12 * bx1 <= 0;
+                    final boolean a01 = c1 + dx12 * by1 - dy12 * bx0 <= 0;
+                    final boolean a11 = c1 + dx12 * by1 - dy12 * bx1 <= 0;
+                    final boolean b00 = c2 + dx23 * by0 - dy23 * bx0 <= 0;
+                    final boolean b10 = c2 + dx23 * by0 - dy23 * bx1 <= 0;
+                    final boolean b01 = c2 + dx23 * by1 - dy23 * bx0 <= 0;
+                    final boolean b11 = c2 + dx23 * by1 - dy23 * bx1 <= 0;
+                    final boolean c00 = c3 + dx31 * by0 - dy31 * bx0 <= 0;
+                    final boolean c10 = c3 + dx31 * by0 - dy31 * bx1 <= 0;
+                    final boolean c01 = c3 + dx31 * by1 - dy31 * bx0 <= 0;
+                    final boolean c11 = c3 + dx31 * by1 - dy31 * bx1 <= 0;
+                    // Skip the block when outside an edge
+                    if (a00 && a10 && a01 && a11 || b00 && b10 && b01 && b11 || c00 && c10 && c01 && c11) {
+                        continue;
+                    }
+                    blocksTouched++;
+                    // Test the depth range of the triangle against the coarse depth of the block
+                    boolean testDepth = depthTest;
+                    if (depthTest) {
+                        // Skip the block when the triangle is behind everything in it
+                        if (minDepth > renderer.getBlockMaxDepth(bx, by)) {
+                            blocksRejected++;
+                            continue;
+                        }
+                        // No need to test each fragment when the triangle is in front of everything in it
+                        testDepth = maxDepth > renderer.getBlockMinDepth(bx, by);
+                    }
+                    boolean depthWritten = false;
+                    // Compute the barycentric coordinates
+                    long cy1 = c1 + dx12 * by0 - dy12 * bx0;
+                    long cy2 = c2 + dx23 * by0 - dy23 * bx0;
+                    long cy3 = c3 + dx31 * by0 - dy31 * bx0;
+                    // Iterate the block by pairs of rows, for the pixel quads
+                    for (int y = by; y < blockEndY; y += 2) {
+                        // Evaluate the half-space functions for the whole rows, building a mask of the pixels inside the triangle, with the second row in the upper bits
+                        int coverage = 0;
+                        for (int lane = 0; lane < block * 2; lane += block) {
+                            long cx1 = cy1;
+                            long cx2 = cy2;
+                            long cx3 = cy3;
+                            for (int i = 0; i < block; i++) {
+                                rowEdges1[lane + i] = cx1;
+                                rowEdges2[lane + i] = cx2;
+                                // The sign bit of the or is only clear if all the values are greater than zero
+                                coverage |= ((int) ((cx1 - 1 | cx2 - 1 | cx3 - 1) >>> 63) ^ 1) << lane + i;
+                                cx1 -= fdy12;
+                                cx2 -= fdy23;
+                                cx3 -= fdy31;
+                            }
+                            cy1 += fdx12;
+                            cy2 += fdx23;
+                            cy3 += fdx31;
+                        }
+                        // Only keep the pixels in the clipped tile
+                        coverage &= (y >= clipMinY ? rowMask : 0) | (y + 1 < blockEndY && y + 1 >= clipMinY ? rowMask << block : 0);
+                        // Skip the rows if no pixel is inside
+                        if (coverage == 0) {
+                            continue;
+                        }
+                        // Compute the normalized barycentric coordinates and depth for the whole rows, outside pixels included as they can be used for the quads
+                        for (int i = 0; i < block * 2; i++) {
+                            final float t = rowEdges1[i] * inverseDet;
+                            final float r = rowEdges2[i] * inverseDet;
+                            rowT[i] = t;
+                            rowR[i] = r;
+                            rowZ[i] = z2 + r * dz1 + t * dz3;
+                        }
+                        if (quadShading) {
+                            depthWritten |= shadeQuads(bx, y, coverage, testDepth) && depthWrite;
+                        } else {
+                            depthWritten |= shadePixels(bx, y, coverage, testDepth) && depthWrite;
+                        }
+                    }
+                    // Refresh the coarse depth of the block if it changed
+                    if (depthWritten) {
+                        renderer.updateBlockDepths(bx, by);
+                    }
+                }
+            }
+        }
+
+        // Shades the covered pixels of the rows that pass the depth test, returns true if any were written
+        private boolean shadePixels(int bx, int y, int coverage, boolean testDepth) {
+            boolean written = false;
+            for (int lane = 0; lane < BLOCK_SIZE * 2; lane++) {
+                if ((coverage & 1 << lane) == 0) {
+                    continue;
+                }
+                final int x = bx + (lane & BLOCK_SIZE - 1);
+                final int py = y + lane / BLOCK_SIZE;
+                // Test the depth before interpolating the rest and shading
+                final short dnZ = SoftwareUtil.denormalizeToShort(rowZ[lane]);
+                if (testDepth && !renderer.testDepth(x, py, dnZ)) {
+                    fragmentsDepthFailed++;
+                    continue;
+                }
+                interpolate(lane, x, py);
+                writeFragment(x, py, dnZ);
+                written = true;
+            }
+            return written;
+        }
+
+        // Shades the rows by 2x2 pixel quads, returns true if any pixels were written
+        private boolean shadeQuads(int bx, int y, int coverage, boolean testDepth) {
+            final FragmentQuad quad = FragmentQuad.get();
+            boolean written = false;
+            for (int qx = 0; qx < BLOCK_SIZE; qx += 2) {
+                // Find the pixels of the quad to write, the first row then the second
+                int quadCoverage = 0;
+                for (int pixel = 0; pixel < 4; pixel++) {
+                    final int lane = qx + (pixel & 1) + (pixel >> 1) * BLOCK_SIZE;
+                    if ((coverage & 1 << lane) == 0) {
+                        continue;
+                    }
+                    final short dnZ = SoftwareUtil.denormalizeToShort(rowZ[lane]);
+                    if (testDepth && !renderer.testDepth(bx + qx + (pixel & 1), y + (pixel >> 1), dnZ)) {
+                        fragmentsDepthFailed++;
+                        continue;
+                    }
+                    quadDepths[pixel] = dnZ;
+                    quadCoverage |= 1 << pixel;
+                }
+                if (quadCoverage == 0) {
+                    continue;
+                }
+                // Run the shader for the first three pixels, even those that won't be written, to gather the sampler coordinates for the derivatives
+                for (int pixel = 0; pixel < 3; pixel++) {
+                    quad.gather(pixel);
+                    interpolate(qx + (pixel & 1) + (pixel >> 1) * BLOCK_SIZE, bx + qx + (pixel & 1), y + (pixel >> 1));
+                    quadColors[pixel] = shadeFragment();
+                }
+                quad.shade();
+                // Then write the pixels, keeping the gathered colors when the derivatives don't change the samples, else shading again with them
+                for (int pixel = 0; pixel < 4; pixel++) {
+                    if ((quadCoverage & 1 << pixel) == 0) {
+                        continue;
+                    }
+                    final int x = bx + qx + (pixel & 1);
+                    final int py = y + (pixel >> 1);
+                    if (pixel < 3 && quad.isGatheredExact(pixel)) {
+                        writeFragment(x, py, quadDepths[pixel], quadColors[pixel]);
+                        continue;
+                    }
+                    quad.shade();
+                    interpolate(qx + (pixel & 1) + (pixel >> 1) * BLOCK_SIZE, x, py);
+                    writeFragment(x, py, quadDepths[pixel]);
+                }
+                quad.end();
+                written = true;
+            }
+            return written;
+        }
+
+        // Writes the fragment position and interpolated vertex outputs of the lane to the fragment input
+        private void interpolate(int lane, int x, int y) {
+            final float r = rowR[lane];
+            final float t = rowT[lane];
+            final int outputCount = vertexSize - 4;
+            for (int i = 0; i < outputCount; i++) {
+                final float value = outputBases[i] + r * outputDeltas1[i] + t * outputDeltas3[i];
+                interpolatedOutputs[i] = integerOutputs[i] ? (int) value : Float.floatToIntBits(value);
+            }
+            fragmentIn.clear();
+            fragmentIn.writeRaw(Float.floatToIntBits(x));
+            fragmentIn.writeRaw(Float.floatToIntBits(y));
+            fragmentIn.writeRaw(Float.floatToIntBits(rowZ[lane]));
+            fragmentIn.writeRaw(Float.floatToIntBits(wBase + r * wDelta1 + t * wDelta3));
+            fragmentIn.writeRaw(interpolatedOutputs, 0, outputCount);
+            fragmentIn.flip();
+        }
+
+        private void writeFragment(int x, int y, short dnZ) {
+            // Without color writes, the fragment shader output isn't used
+            writeFragment(x, y, dnZ, renderer.isColorWriting() ? shadeFragment() : 0);
+        }
+
+        private void writeFragment(int x, int y, short dnZ, int color) {
+            fragmentsWritten++;
+            // Write at the fragment coordinates and depth (converted from [0, 1] to the full short range)
+            renderer.writePixel(x, y, dnZ, color);
+        }
+
+        // Runs the fragment shader on the fragment input, returns the output color packed into an int
+        private int shadeFragment() {
+            fragmentsShaded++;
+            // Clear the out buffer, run the fragment shader, and flip the out
+            fragmentOut.clear();
+            fragmentShader.main(fragmentIn, fragmentOut);
+            fragmentOut.flip();
+            // Retrieve the fragment color vector
+            final float r = Float.intBitsToFloat(fragmentOut.readRaw());
+            final float g = Float.intBitsToFloat(fragmentOut.readRaw());
+            final float b = Float.intBitsToFloat(fragmentOut.readRaw());
+            final float a = Float.intBitsToFloat(fragmentOut.readRaw());
+            return SoftwareUtil.pack(r, g, b, a);
+        }
+    }
+
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1;
+        private final int start, end;
+
+        private TileTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= 1) {
+                activeTiles[start].rasterize();
+                return;
+            }
+            // Split the range of tiles in two halves
+            final int middle = start + end >>> 1;
+            invokeAll(new TileTask(start, middle), new TileTask(middle, end));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import com.flowpowered.caustic.api.gl.RenderBuffer;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+
+/**
+ * A software implementation of {@link RenderBuffer}. The storage is in the same format as the renderer's buffers, so it can be rendered to directly.
+ *
+ * @see RenderBuffer
+ */
+public class SoftwareRenderBuffer extends RenderBuffer {
+    private final SoftwareRenderer renderer;
+    private InternalFormat format;
+    private int width = 1;
+    private int height = 1;
+    // Only one of the storage arrays is used, depending on if the format is a depth one
+    private int[] colors;
+    private short[] depths;
+
+    SoftwareRenderBuffer(SoftwareRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void setStorage(InternalFormat format, int width, int height) {
+        checkCreated();
+        if (format == null) {
+            throw new IllegalArgumentException("Format cannot be null");
+        }
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width must be greater than zero");
+        }
+        if (height <= 0) {
+            throw new IllegalArgumentException("Height must be greater than zero");
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        if (format.hasDepth()) {
+            colors = null;
+            depths = new short[width * height];
+        } else {
+            colors = new int[width * height];
+            depths = null;
+        }
+        renderer.onStorageChanged(this);
+    }
+
+    @Override
+    public InternalFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void bind() {
+        checkCreated();
+    }
+
+    @Override
+    public void unbind() {
+        checkCreated();
+    }
+
+    @Override
+    public void destroy() {
+        checkCreated();
+        colors = null;
+        depths = null;
+        super.destroy();
+    }
+
+    // Returns the storage to render colours to, or null if the format isn't a colour one
+    int[] getColorStorage() {
+        return colors;
+    }
+
+    // Returns the storage to render depths to, or null if the format isn't a depth one
+    short[] getDepthStorage() {
+        return depths;
+    }
+
+    @Override
+    public GLVersion getGLVersion() {
+        return GLVersion.SOFTWARE;
+    }
+}
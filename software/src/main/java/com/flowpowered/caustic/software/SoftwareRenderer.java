@@ -23,21 +23,15 @@
  */
 package com.flowpowered.caustic.software;
 
-import javax.swing.JFrame;
-import javax.swing.JPanel;
-import javax.swing.WindowConstants;
-import java.awt.BorderLayout;
-import java.awt.Canvas;
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.event.WindowAdapter;
-import java.awt.event.WindowEvent;
-import java.awt.image.BufferStrategy;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
 import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
 import com.flowpowered.caustic.api.util.CausticUtil;
 import com.flowpowered.caustic.api.util.Rectangle;
 
@@ -47,30 +41,59 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 /**
  *
  */
-class SoftwareRenderer extends Canvas {
-    private final JFrame frame;
+class SoftwareRenderer {
+    // Depth blocks are 8x8, here 2^3, matching the rasterization blocks
+    private static final int DEPTH_BLOCK_SHIFT = 3;
+    private static final float INVERSE_BYTE_RANGE = 1 / 255f;
+    private static final float INVERSE_SHORT_RANGE = 1f / (Short.MAX_VALUE - Short.MIN_VALUE);
+    // The window used to present the frames, null when headless
+    private final SoftwareWindow window;
+    private String title = "Caustic";
     private int width, height;
-    private int scale = 1;
     private boolean initialized = false;
-    private volatile boolean closeRequested = false;
     private int capabilities = 0;
     private final Rectangle viewPort = new Rectangle(width, height);
     private int clearColor;
-    private BufferedImage image;
+    // The back buffer is rendered to, the front one holds the last published frame, with a copy of its depths for reading
     private int[] pixels;
+    private int[] frontPixels;
     private short[] depths;
+    private short[] frontDepths;
+    // The frame buffer rendered to, null for the window
+    private SoftwareFrameBuffer frameBuffer;
+    // The buffers rendered to, either the frame buffer attachments or the window back buffers, null when missing
+    private int targetWidth, targetHeight;
+    // Window rows are stored from the top down, but frame buffer attachments from the bottom up like in OpenGL,
+    // so the index of a pixel is the origin plus x, plus y times the signed row stride
+    private int targetOrigin, targetStride;
+    private int[] targetPixels;
+    private short[] targetDepths;
+    // Coarse depth bounds of each 8x8 block of the target depth buffer, used to reject or accept whole blocks
+    private int depthBlocksX;
+    private short[] blockMinDepths;
+    private short[] blockMaxDepths;
+    private boolean depthTesting = false;
     private boolean depthWriting = true;
+    // The components of the color written to the target, as a mask of the packed color
+    private int colorMask = 0xFFFFFFFF;
+    private final Blender blender = new Blender();
+    private boolean blending = false;
     private SoftwareProgram program;
     private final TIntObjectMap<SoftwareTexture> textures = new TIntObjectHashMap<>();
+    private final SoftwareRasterizer rasterizer = new SoftwareRasterizer(this);
+    // The statistics of the last draw, of the frame being rendered and of the last displayed one, null when disabled
+    private SoftwareStatistics drawStatistics;
+    private SoftwareStatistics frameStatistics;
+    private SoftwareStatistics lastFrameStatistics;
+    // The occlusion query counting the written fragments, null if none is active
+    private SoftwareOcclusionQuery occlusionQuery;
+
+    SoftwareRenderer(boolean headless) {
+        window = headless ? null : new SoftwareWindow();
+    }
 
-    SoftwareRenderer() {
-        frame = new JFrame("Caustic");
-        final JPanel panel = new JPanel(new BorderLayout());
-        panel.add(this, BorderLayout.CENTER);
-        frame.setContentPane(panel);
-        frame.setResizable(false);
-        frame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
-        frame.addWindowListener(new WindowCloseListener());
+    boolean isHeadless() {
+        return window == null;
     }
 
     int getWindowHeight() {
@@ -82,7 +105,9 @@ class SoftwareRenderer extends Canvas {
     }
 
     void setWindowResizable(boolean resizable) {
-        frame.setResizable(resizable);
+        if (window != null) {
+            window.setWindowResizable(resizable);
+        }
     }
 
     void setWindowSize(int width, int height) {
@@ -90,23 +115,24 @@ class SoftwareRenderer extends Canvas {
             this.width = width;
             this.height = height;
             if (initialized) {
-                updateImage();
+                updateBuffers();
             }
         }
     }
 
     void setWindowTitle(String title) {
-        frame.setTitle(title);
+        this.title = title;
+        if (window != null) {
+            window.setWindowTitle(title);
+        }
     }
 
     String getWindowTitle() {
-        return frame.getTitle();
+        return title;
     }
 
     boolean isCloseRequested() {
-        final boolean oldCloseRequested = closeRequested;
-        closeRequested = false;
-        return oldCloseRequested;
+        return window != null && window.isCloseRequested();
     }
 
     Rectangle getViewPort() {
@@ -123,6 +149,23 @@ class SoftwareRenderer extends Canvas {
         } else {
             capabilities &= ~(1 << capability.ordinal());
         }
+        updateBlending();
+        updateDepthTesting();
+    }
+
+    void setBlendingFunctions(BlendFunction source, BlendFunction destination) {
+        blender.setFunctions(source, destination);
+        updateBlending();
+    }
+
+    private void updateBlending() {
+        // No need to read the destination when blending doesn't use it
+        blending = isEnabled(Capability.BLEND) && !blender.isOpaque();
+    }
+
+    private void updateDepthTesting() {
+        // Without a depth buffer, the depth test always passes
+        depthTesting = isEnabled(Capability.DEPTH_TEST) && targetDepths != null;
     }
 
     boolean isEnabled(Capability capability) {
@@ -137,6 +180,92 @@ class SoftwareRenderer extends Canvas {
         depthWriting = enabled;
     }
 
+    boolean isDepthWriting() {
+        return depthWriting;
+    }
+
+    void setColorMask(int colorMask) {
+        this.colorMask = colorMask;
+    }
+
+    boolean isColorWriting() {
+        return colorMask != 0;
+    }
+
+    boolean isDepthTesting() {
+        return depthTesting;
+    }
+
+    SoftwareFrameBuffer getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    void setFrameBuffer(SoftwareFrameBuffer frameBuffer) {
+        // Draws are complete when they return, so the previous attachments are done being rendered to
+        if (this.frameBuffer != null) {
+            this.frameBuffer.onRendered();
+        }
+        this.frameBuffer = frameBuffer;
+        updateTarget();
+    }
+
+    // Called when the storage of a texture or render buffer was replaced, to render to the new one if it is attached to the bound frame buffer
+    void onStorageChanged(Object attachment) {
+        if (frameBuffer != null && frameBuffer.isAttached(attachment)) {
+            updateTarget();
+        }
+    }
+
+    int getTargetWidth() {
+        return targetWidth;
+    }
+
+    int getTargetHeight() {
+        return targetHeight;
+    }
+
+    private void updateTarget() {
+        if (frameBuffer == null) {
+            targetWidth = width;
+            targetHeight = height;
+            targetOrigin = 0;
+            targetStride = width;
+            targetPixels = pixels;
+            targetDepths = depths;
+        } else if (frameBuffer.isComplete()) {
+            targetWidth = frameBuffer.getWidth();
+            targetHeight = frameBuffer.getHeight();
+            targetOrigin = (targetHeight - 1) * targetWidth;
+            targetStride = -targetWidth;
+            targetPixels = frameBuffer.getColorStorage();
+            targetDepths = frameBuffer.getDepthStorage();
+        } else {
+            // Nothing can be rendered to an incomplete frame buffer
+            targetWidth = 0;
+            targetHeight = 0;
+            targetOrigin = 0;
+            targetStride = 0;
+            targetPixels = null;
+            targetDepths = null;
+        }
+        updateDepthTesting();
+        // Compute the depth bounds of the blocks for the new depth buffer
+        depthBlocksX = targetWidth + (1 << DEPTH_BLOCK_SHIFT) - 1 >> DEPTH_BLOCK_SHIFT;
+        final int depthBlocksY = targetHeight + (1 << DEPTH_BLOCK_SHIFT) - 1 >> DEPTH_BLOCK_SHIFT;
+        final int depthBlockCount = depthBlocksX * depthBlocksY;
+        if (blockMinDepths == null || blockMinDepths.length != depthBlockCount) {
+            blockMinDepths = new short[depthBlockCount];
+            blockMaxDepths = new short[depthBlockCount];
+        }
+        if (targetDepths != null) {
+            for (int y = 0; y < targetHeight; y += 1 << DEPTH_BLOCK_SHIFT) {
+                for (int x = 0; x < targetWidth; x += 1 << DEPTH_BLOCK_SHIFT) {
+                    updateBlockDepths(x, y);
+                }
+            }
+        }
+    }
+
     SoftwareProgram getProgram() {
         return program;
     }
@@ -157,90 +286,255 @@ class SoftwareRenderer extends Canvas {
         return textures.get(unit);
     }
 
+    SoftwareRasterizer getRasterizer() {
+        return rasterizer;
+    }
+
+    SoftwareOcclusionQuery getOcclusionQuery() {
+        return occlusionQuery;
+    }
+
+    void setOcclusionQuery(SoftwareOcclusionQuery occlusionQuery) {
+        this.occlusionQuery = occlusionQuery;
+    }
+
+    boolean isStatisticsEnabled() {
+        return drawStatistics != null;
+    }
+
+    void setStatisticsEnabled(boolean enabled) {
+        if (enabled == isStatisticsEnabled()) {
+            return;
+        }
+        if (enabled) {
+            drawStatistics = new SoftwareStatistics();
+            frameStatistics = new SoftwareStatistics();
+            lastFrameStatistics = new SoftwareStatistics();
+            frameStatistics.reset(width * height);
+        } else {
+            drawStatistics = null;
+            frameStatistics = null;
+            lastFrameStatistics = null;
+        }
+    }
+
+    SoftwareStatistics getDrawStatistics() {
+        return drawStatistics;
+    }
+
+    SoftwareStatistics getFrameStatistics() {
+        return lastFrameStatistics;
+    }
+
+    void beginDraw() {
+        if (drawStatistics != null) {
+            drawStatistics.reset(targetWidth * targetHeight);
+        }
+    }
+
+    void endDraw() {
+        if (drawStatistics != null) {
+            frameStatistics.add(drawStatistics);
+        }
+    }
+
     void init() {
-        updateImage();
-        frame.setVisible(true);
-        createBufferStrategy(3);
+        updateBuffers();
+        if (window != null) {
+            window.init(width, height);
+        }
         viewPort.setSize(width, height);
         initialized = true;
     }
 
-    private void updateImage() {
-        final Dimension size = new Dimension(width * scale, height * scale);
-        setSize(size);
-        setPreferredSize(size);
-        setMinimumSize(size);
-        setMaximumSize(size);
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private void updateBuffers() {
+        pixels = new int[width * height];
+        frontPixels = new int[width * height];
         depths = new short[width * height];
-        frame.pack();
-        if (!frame.isResizable()) {
-            frame.setLocationRelativeTo(null);
+        frontDepths = new short[width * height];
+        if (frameBuffer == null) {
+            updateTarget();
+        }
+        if (window != null && initialized) {
+            window.updateSize(width, height);
         }
     }
 
     void dispose() {
-        frame.dispose();
-        image = null;
+        if (window != null) {
+            window.dispose();
+        }
+        rasterizer.dispose();
         pixels = null;
+        frontPixels = null;
         depths = null;
+        frontDepths = null;
+        frameBuffer = null;
+        targetPixels = null;
+        targetDepths = null;
+        blockMinDepths = null;
+        blockMaxDepths = null;
         program = null;
         initialized = false;
     }
 
     void render() {
-        final BufferStrategy bufferStrategy = getBufferStrategy();
-        final Graphics graphics = bufferStrategy.getDrawGraphics();
-        graphics.drawImage(image, 0, 0, width * scale, height * scale, null);
-        graphics.dispose();
-        bufferStrategy.show();
-        if (frame.isResizable() && getWidth() != width && getHeight() != height) {
-            width = getWidth();
-            height = getHeight();
-            updateImage();
+        // Publish the back buffer by swapping it with the front one
+        final int[] published = pixels;
+        pixels = frontPixels;
+        frontPixels = published;
+        if (frameBuffer == null) {
+            targetPixels = pixels;
+        }
+        // The depth buffer isn't swapped, as the next frame might not clear it, so it is copied to stay in sync with the published pixels
+        System.arraycopy(depths, 0, frontDepths, 0, depths.length);
+        // Publish the statistics of the frame, and start those of the next one
+        if (frameStatistics != null) {
+            final SoftwareStatistics statistics = frameStatistics;
+            frameStatistics = lastFrameStatistics;
+            lastFrameStatistics = statistics;
+            frameStatistics.reset(width * height);
+        }
+        if (window == null) {
+            return;
+        }
+        // The back buffer now holds the previous frame, which is used to find the changes, and is safe to render to once this returns
+        window.present(frontPixels, pixels, width, height);
+        if (window.isWindowResizable() && window.getWidth() != width && window.getHeight() != height) {
+            setWindowSize(window.getWidth(), window.getHeight());
         }
     }
 
     void clearPixels() {
-        Arrays.fill(pixels, clearColor);
-        Arrays.fill(depths, Short.MAX_VALUE);
+        if (targetPixels != null) {
+            Arrays.fill(targetPixels, clearColor);
+        }
+        if (targetDepths != null) {
+            Arrays.fill(targetDepths, Short.MAX_VALUE);
+            Arrays.fill(blockMinDepths, Short.MAX_VALUE);
+            Arrays.fill(blockMaxDepths, Short.MAX_VALUE);
+        }
+    }
+
+    IntBuffer getFrontPixels() {
+        return IntBuffer.wrap(frontPixels).asReadOnlyBuffer();
+    }
+
+    void readFrame(Rectangle area, InternalFormat format, ByteBuffer destination) {
+        final int areaX = area.getX(), areaY = area.getY();
+        final int areaWidth = area.getWidth(), areaHeight = area.getHeight();
+        if (areaX < 0 || areaY < 0 || areaWidth < 0 || areaHeight < 0 || areaX + areaWidth > width || areaY + areaHeight > height) {
+            throw new IllegalArgumentException("Area must be within (0, 0) to (" + width + ", " + height + ")");
+        }
+        // Rows are read from the bottom up like OpenGL, but the window ones are stored from the top down
+        final int startRow = height - 1 - areaY;
+        final int endRow = startRow - areaHeight;
+        if (format == InternalFormat.RGBA8) {
+            // Fast path for the common format, which only needs the components reordered
+            final boolean bigEndian = destination.order() == ByteOrder.BIG_ENDIAN;
+            int i = 0;
+            for (int y = startRow; y > endRow; y--) {
+                for (int x = areaX; x < areaX + areaWidth; x++) {
+                    final int pixel = frontPixels[x + y * width];
+                    final int rgba = pixel << 8 | pixel >>> 24;
+                    destination.putInt(i, bigEndian ? rgba : Integer.reverseBytes(rgba));
+                    i += 4;
+                }
+            }
+            return;
+        }
+        final DataType type = format.getComponentType();
+        final boolean red = format.hasRed(), green = format.hasGreen(), blue = format.hasBlue(), alpha = format.hasAlpha(), depth = format.hasDepth();
+        int component = 0;
+        for (int y = startRow; y > endRow; y--) {
+            for (int x = areaX; x < areaX + areaWidth; x++) {
+                final int i = x + y * width;
+                final int pixel = frontPixels[i];
+                if (red) {
+                    SoftwareUtil.writeFromFloat(destination, type, (pixel >> 16 & 0xFF) * INVERSE_BYTE_RANGE, component++);
+                }
+                if (green) {
+                    SoftwareUtil.writeFromFloat(destination, type, (pixel >> 8 & 0xFF) * INVERSE_BYTE_RANGE, component++);
+                }
+                if (blue) {
+                    SoftwareUtil.writeFromFloat(destination, type, (pixel & 0xFF) * INVERSE_BYTE_RANGE, component++);
+                }
+                if (alpha) {
+                    SoftwareUtil.writeFromFloat(destination, type, (pixel >>> 24) * INVERSE_BYTE_RANGE, component++);
+                }
+                if (depth) {
+                    SoftwareUtil.writeFromFloat(destination, type, (frontDepths[i] - Short.MIN_VALUE) * INVERSE_SHORT_RANGE, component++);
+                }
+            }
+        }
     }
 
     int readPixelColor(int x, int y) {
         checkBounds(x, y);
-        return pixels[x + y * width];
+        return targetPixels[targetOrigin + x + y * targetStride];
     }
 
     int readPixelDepth(int x, int y) {
         checkBounds(x, y);
-        return depths[x + y * width];
+        return targetDepths[targetOrigin + x + y * targetStride];
     }
 
     boolean testDepth(int x, int y, short z) {
-        final int i = x + y * width;
-        return !isEnabled(Capability.DEPTH_TEST) || z <= depths[i];
+        return !depthTesting || z <= targetDepths[targetOrigin + x + y * targetStride];
     }
 
     void writePixel(int x, int y, short z, int color) {
         checkBounds(x, y);
-        final int i = x + y * width;
-        pixels[i] = color;
-        if (isEnabled(Capability.DEPTH_TEST) && depthWriting) {
-            depths[i] = z;
+        final int i = targetOrigin + x + y * targetStride;
+        if (targetPixels != null && colorMask != 0) {
+            final int written = blending ? blender.blend(color, targetPixels[i]) : color;
+            targetPixels[i] = colorMask == 0xFFFFFFFF ? written : written & colorMask | targetPixels[i] & ~colorMask;
+        }
+        if (depthTesting && depthWriting) {
+            targetDepths[i] = z;
+            // Depth only decreases when written, so the block max stays a valid upper bound, but the min needs updating
+            final int block = (x >> DEPTH_BLOCK_SHIFT) + (y >> DEPTH_BLOCK_SHIFT) * depthBlocksX;
+            if (z < blockMinDepths[block]) {
+                blockMinDepths[block] = z;
+            }
         }
     }
 
-    private void checkBounds(int x, int y) {
-        if (CausticUtil.isDebugEnabled() && (x < 0 || x >= width || y < 0 || y >= width)) {
-            throw new IllegalArgumentException("(" + x + ", " + y + ") not within (0, 0) to (" + (width - 1) + ", " + (height - 1) + ")");
+    short getBlockMinDepth(int x, int y) {
+        return blockMinDepths[(x >> DEPTH_BLOCK_SHIFT) + (y >> DEPTH_BLOCK_SHIFT) * depthBlocksX];
+    }
+
+    short getBlockMaxDepth(int x, int y) {
+        return blockMaxDepths[(x >> DEPTH_BLOCK_SHIFT) + (y >> DEPTH_BLOCK_SHIFT) * depthBlocksX];
+    }
+
+    void updateBlockDepths(int x, int y) {
+        // Recompute the exact bounds of the block containing the pixel
+        final int startX = x & ~((1 << DEPTH_BLOCK_SHIFT) - 1);
+        final int startY = y & ~((1 << DEPTH_BLOCK_SHIFT) - 1);
+        final int endX = Math.min(startX + (1 << DEPTH_BLOCK_SHIFT), targetWidth);
+        final int endY = Math.min(startY + (1 << DEPTH_BLOCK_SHIFT), targetHeight);
+        short min = Short.MAX_VALUE;
+        short max = Short.MIN_VALUE;
+        for (int yy = startY; yy < endY; yy++) {
+            for (int xx = startX; xx < endX; xx++) {
+                final short depth = targetDepths[targetOrigin + xx + yy * targetStride];
+                if (depth < min) {
+                    min = depth;
+                }
+                if (depth > max) {
+                    max = depth;
+                }
+            }
         }
+        final int block = (x >> DEPTH_BLOCK_SHIFT) + (y >> DEPTH_BLOCK_SHIFT) * depthBlocksX;
+        blockMinDepths[block] = min;
+        blockMaxDepths[block] = max;
     }
 
-    private class WindowCloseListener extends WindowAdapter {
-        @Override
-        public void windowClosing(WindowEvent event) {
-            closeRequested = true;
+    private void checkBounds(int x, int y) {
+        if (CausticUtil.isDebugEnabled() && (x < 0 || x >= targetWidth || y < 0 || y >= targetHeight)) {
+            throw new IllegalArgumentException("(" + x + ", " + y + ") not within (0, 0) to (" + (targetWidth - 1) + ", " + (targetHeight - 1) + ")");
         }
     }
 }
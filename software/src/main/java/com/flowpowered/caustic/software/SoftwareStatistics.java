@@ -0,0 +1,197 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+/**
+ * Counters of the work done by the software renderer, either for a single draw call or for a whole frame. They can be used to find why rendering is slow: for example a high overdraw means that
+ * many fragments are shaded only to be covered later, and many depth failed fragments that the draw order could be improved.
+ */
+public class SoftwareStatistics {
+    private long verticesShaded;
+    private long trianglesSubmitted;
+    private long trianglesCulled;
+    private long trianglesClipped;
+    private long blocksTouched;
+    private long blocksRejected;
+    private long fragmentsShaded;
+    private long fragmentsDepthFailed;
+    private long fragmentsWritten;
+    // The number of pixels of the buffer rendered to, for the overdraw
+    private long pixelCount;
+
+    SoftwareStatistics() {
+    }
+
+    /**
+     * Returns the number of times the vertex shader was run, which excludes the vertices reused from the post-transform cache.
+     *
+     * @return The number of shaded vertices
+     */
+    public long getVerticesShaded() {
+        return verticesShaded;
+    }
+
+    /**
+     * Returns the number of triangles assembled from the indices, before culling and clipping.
+     *
+     * @return The number of submitted triangles
+     */
+    public long getTrianglesSubmitted() {
+        return trianglesSubmitted;
+    }
+
+    /**
+     * Returns the number of triangles discarded before rasterization, because they were entirely outside of the view or back facing.
+     *
+     * @return The number of culled triangles
+     */
+    public long getTrianglesCulled() {
+        return trianglesCulled;
+    }
+
+    /**
+     * Returns the number of triangles that crossed the guard band and had to be clipped.
+     *
+     * @return The number of clipped triangles
+     */
+    public long getTrianglesClipped() {
+        return trianglesClipped;
+    }
+
+    /**
+     * Returns the number of 8x8 pixel blocks overlapped by the rasterized triangles.
+     *
+     * @return The number of touched blocks
+     */
+    public long getBlocksTouched() {
+        return blocksTouched;
+    }
+
+    /**
+     * Returns the number of touched blocks that were skipped entirely, because the triangle was behind all of their depths.
+     *
+     * @return The number of rejected blocks
+     */
+    public long getBlocksRejected() {
+        return blocksRejected;
+    }
+
+    /**
+     * Returns the number of times the fragment shader was run. This includes the helper fragments of the quads used for the sampler derivatives, which aren't written.
+     *
+     * @return The number of shaded fragments
+     */
+    public long getFragmentsShaded() {
+        return fragmentsShaded;
+    }
+
+    /**
+     * Returns the number of fragments that failed the depth test, and weren't shaded.
+     *
+     * @return The number of depth failed fragments
+     */
+    public long getFragmentsDepthFailed() {
+        return fragmentsDepthFailed;
+    }
+
+    /**
+     * Returns the number of fragments written to the color or depth buffers.
+     *
+     * @return The number of written fragments
+     */
+    public long getFragmentsWritten() {
+        return fragmentsWritten;
+    }
+
+    /**
+     * Returns the number of pixels of the buffer rendered to, which is the one bound for the draw, or the window for a frame.
+     *
+     * @return The number of pixels
+     */
+    public long getPixelCount() {
+        return pixelCount;
+    }
+
+    /**
+     * Returns the overdraw ratio, which is the number of written fragments divided by the number of pixels. A ratio of one means that each pixel was written once on average.
+     *
+     * @return The overdraw ratio
+     */
+    public float getOverdraw() {
+        return pixelCount <= 0 ? 0 : (float) fragmentsWritten / pixelCount;
+    }
+
+    void reset(long pixelCount) {
+        verticesShaded = 0;
+        trianglesSubmitted = 0;
+        trianglesCulled = 0;
+        trianglesClipped = 0;
+        blocksTouched = 0;
+        blocksRejected = 0;
+        fragmentsShaded = 0;
+        fragmentsDepthFailed = 0;
+        fragmentsWritten = 0;
+        this.pixelCount = pixelCount;
+    }
+
+    void add(SoftwareStatistics statistics) {
+        verticesShaded += statistics.verticesShaded;
+        trianglesSubmitted += statistics.trianglesSubmitted;
+        trianglesCulled += statistics.trianglesCulled;
+        trianglesClipped += statistics.trianglesClipped;
+        blocksTouched += statistics.blocksTouched;
+        blocksRejected += statistics.blocksRejected;
+        fragmentsShaded += statistics.fragmentsShaded;
+        fragmentsDepthFailed += statistics.fragmentsDepthFailed;
+        fragmentsWritten += statistics.fragmentsWritten;
+    }
+
+    void addVertices(long shaded) {
+        verticesShaded += shaded;
+    }
+
+    void addTriangles(long submitted, long culled, long clipped) {
+        trianglesSubmitted += submitted;
+        trianglesCulled += culled;
+        trianglesClipped += clipped;
+    }
+
+    void addBlocks(long touched, long rejected) {
+        blocksTouched += touched;
+        blocksRejected += rejected;
+    }
+
+    void addFragments(long shaded, long depthFailed, long written) {
+        fragmentsShaded += shaded;
+        fragmentsDepthFailed += depthFailed;
+        fragmentsWritten += written;
+    }
+
+    @Override
+    public String toString() {
+        return "SoftwareStatistics{verticesShaded=" + verticesShaded + ", trianglesSubmitted=" + trianglesSubmitted + ", trianglesCulled=" + trianglesCulled + ", trianglesClipped=" + trianglesClipped
+                + ", blocksTouched=" + blocksTouched + ", blocksRejected=" + blocksRejected + ", fragmentsShaded=" + fragmentsShaded + ", fragmentsDepthFailed=" + fragmentsDepthFailed
+                + ", fragmentsWritten=" + fragmentsWritten + ", overdraw=" + getOverdraw() + '}';
+    }
+}
@@ -35,11 +35,24 @@ import com.flowpowered.caustic.api.util.CausticUtil;
  *
  */
 public class SoftwareTexture extends Texture {
+    private static final double LOG_2 = Math.log(2);
     private final SoftwareRenderer renderer;
     private int unit = -1;
     private ByteBuffer data;
     private int width, height;
     private InternalFormat format;
+    // Sampling state, with the same defaults as OpenGL except for the filters, which are nearest so the mipmaps and the quad shading are only used once asked for
+    private FilterMode minFilter = FilterMode.NEAREST;
+    private FilterMode magFilter = FilterMode.NEAREST;
+    private WrapMode horizontalWrap = WrapMode.REPEAT;
+    private WrapMode verticalWrap = WrapMode.REPEAT;
+    private float maxAnisotropy = 1;
+    private final float[] borderColor = new float[4];
+    // Levels of detail converted from the image data, only the base one if mipmaps aren't needed
+    private StorageLayout layout = StorageLayout.TILED;
+    private TextureLevel[] levels;
+    // Whether or not the base level was rendered to since the image data was last updated
+    private boolean dataModified = false;
 
     SoftwareTexture(SoftwareRenderer renderer) {
         this.renderer = renderer;
@@ -99,17 +112,42 @@ public class SoftwareTexture extends Texture {
 
     @Override
     public void setAnisotropicFiltering(float value) {
-
+        if (value <= 0) {
+            throw new IllegalArgumentException("Anisotropic filtering value must be greater than zero");
+        }
+        maxAnisotropy = Math.max(value, 1);
     }
 
     @Override
     public void setWraps(WrapMode horizontalWrap, WrapMode verticalWrap) {
-
+        if (horizontalWrap == null) {
+            throw new IllegalArgumentException("Horizontal wrap cannot be null");
+        }
+        if (verticalWrap == null) {
+            throw new IllegalArgumentException("Vertical wrap cannot be null");
+        }
+        this.horizontalWrap = horizontalWrap;
+        this.verticalWrap = verticalWrap;
     }
 
     @Override
     public void setFilters(FilterMode minFilter, FilterMode magFilter) {
-
+        if (minFilter == null) {
+            throw new IllegalArgumentException("Min filter cannot be null");
+        }
+        if (magFilter == null) {
+            throw new IllegalArgumentException("Mag filter cannot be null");
+        }
+        if (magFilter.needsMipMaps()) {
+            throw new IllegalArgumentException("Mag filter cannot require mipmaps");
+        }
+        this.minFilter = minFilter;
+        this.magFilter = magFilter;
+        // Build the missing mipmaps if they are now needed
+        if (minFilter.needsMipMaps() && levels != null && levels.length == 1) {
+            buildLevels(levels[0].toFloats());
+            renderer.onStorageChanged(this);
+        }
     }
 
     @Override
@@ -119,7 +157,13 @@ public class SoftwareTexture extends Texture {
 
     @Override
     public void setBorderColor(Vector4f borderColor) {
-
+        if (borderColor == null) {
+            throw new IllegalArgumentException("Border color cannot be null");
+        }
+        this.borderColor[0] = borderColor.getX();
+        this.borderColor[1] = borderColor.getY();
+        this.borderColor[2] = borderColor.getZ();
+        this.borderColor[3] = borderColor.getW();
     }
 
     @Override
@@ -127,7 +171,159 @@ public class SoftwareTexture extends Texture {
         checkCreated();
         this.width = width;
         this.height = height;
-        data = SoftwareUtil.set(data, imageData, 0.5f);
+        if (imageData != null) {
+            data = SoftwareUtil.set(data, imageData, 0.5f);
+        } else {
+            // No image data, start with zeroed texels, as for a texture to render to
+            final int size = width * height * format.getBytes();
+            data = SoftwareUtil.create(data, size, 0.5f);
+            while (data.position() < size) {
+                data.put((byte) 0);
+            }
+            data.flip();
+        }
+        dataModified = false;
+        buildLevels();
+        renderer.onStorageChanged(this);
+    }
+
+    /**
+     * Sets the layout of the texels in memory. Tiled is faster to sample, linear is faster to access by rows. The default is tiled. Textures attached to a frame buffer are rendered to by rows, and
+     * are switched to linear.
+     *
+     * @param layout The storage layout
+     */
+    public void setStorageLayout(StorageLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("Storage layout cannot be null");
+        }
+        if (this.layout != layout) {
+            this.layout = layout;
+            if (levels != null) {
+                buildLevels(levels[0].toFloats());
+                renderer.onStorageChanged(this);
+            }
+        }
+    }
+
+    /**
+     * Returns the layout of the texels in memory.
+     *
+     * @return The storage layout
+     */
+    public StorageLayout getStorageLayout() {
+        return layout;
+    }
+
+    private void buildLevels() {
+        // Decode the base level to RGBA floats, with the depth in red
+        final DataType type = format.getComponentType();
+        final int componentCount = format.getComponentCount();
+        final boolean red = format.hasRed() || format.hasDepth(), green = format.hasGreen(), blue = format.hasBlue(), alpha = format.hasAlpha();
+        final float[] texels = new float[width * height * 4];
+        for (int i = 0, ii = 0; i < texels.length; i += 4, ii += componentCount) {
+            int component = ii;
+            texels[i] = red ? SoftwareUtil.readAsFloat(data, type, component++) : 0;
+            texels[i + 1] = green ? SoftwareUtil.readAsFloat(data, type, component++) : 0;
+            texels[i + 2] = blue ? SoftwareUtil.readAsFloat(data, type, component++) : 0;
+            texels[i + 3] = alpha ? SoftwareUtil.readAsFloat(data, type, component) : 1;
+        }
+        buildLevels(texels);
+    }
+
+    private void buildLevels(float[] texels) {
+        // Only build the other levels if they can be sampled, each is half the size of the previous one
+        final int levelCount = minFilter.needsMipMaps() ? 32 - Integer.numberOfLeadingZeros(Math.max(width, height)) : 1;
+        levels = new TextureLevel[levelCount];
+        levels[0] = TextureLevel.create(texels, width, height, format, layout == StorageLayout.TILED);
+        buildMipMaps(texels);
+    }
+
+    private void buildMipMaps(float[] texels) {
+        final boolean tiled = layout == StorageLayout.TILED;
+        int previousWidth = width;
+        int previousHeight = height;
+        for (int level = 1; level < levels.length; level++) {
+            final float[] previous = texels;
+            final int levelWidth = Math.max(previousWidth >> 1, 1);
+            final int levelHeight = Math.max(previousHeight >> 1, 1);
+            texels = new float[levelWidth * levelHeight * 4];
+            // Average 2x2 texels of the previous level, which might only be one wide or high
+            for (int y = 0; y < levelHeight; y++) {
+                final int y0 = y << 1;
+                final int y1 = Math.min(y0 + 1, previousHeight - 1);
+                for (int x = 0; x < levelWidth; x++) {
+                    final int x0 = x << 1;
+                    final int x1 = Math.min(x0 + 1, previousWidth - 1);
+                    final int i00 = (x0 + y0 * previousWidth) * 4;
+                    final int i10 = (x1 + y0 * previousWidth) * 4;
+                    final int i01 = (x0 + y1 * previousWidth) * 4;
+                    final int i11 = (x1 + y1 * previousWidth) * 4;
+                    final int i = (x + y * levelWidth) * 4;
+                    for (int c = 0; c < 4; c++) {
+                        texels[i + c] = (previous[i00 + c] + previous[i10 + c] + previous[i01 + c] + previous[i11 + c]) * 0.25f;
+                    }
+                }
+            }
+            levels[level] = TextureLevel.create(texels, levelWidth, levelHeight, format, tiled);
+            previousWidth = levelWidth;
+            previousHeight = levelHeight;
+        }
+    }
+
+    // Returns the base level texels to render colours to directly, or null if the format can't be rendered to
+    int[] getColorStorage() {
+        useLinearLayout();
+        return levels[0].getPackedTexels();
+    }
+
+    // Returns the base level texels to render depths to directly, or null if the format isn't a depth one
+    short[] getDepthStorage() {
+        useLinearLayout();
+        return levels[0].getDepthTexels();
+    }
+
+    private void useLinearLayout() {
+        // Render targets are written by rows, which the tiles would only slow down
+        if (layout != StorageLayout.LINEAR) {
+            layout = StorageLayout.LINEAR;
+            buildLevels(levels[0].toFloats());
+        }
+    }
+
+    // Called when done rendering to the base level, to update the ones derived from it
+    void onRendered() {
+        dataModified = true;
+        if (levels.length > 1) {
+            buildMipMaps(levels[0].toFloats());
+        }
+    }
+
+    private void updateData() {
+        if (!dataModified) {
+            return;
+        }
+        // Encode the base level back to the image data, with the depth in red
+        final DataType type = format.getComponentType();
+        final int componentCount = format.getComponentCount();
+        final boolean red = format.hasRed() || format.hasDepth(), green = format.hasGreen(), blue = format.hasBlue(), alpha = format.hasAlpha();
+        final float[] texels = levels[0].toFloats();
+        for (int i = 0, ii = 0; i < texels.length; i += 4, ii += componentCount) {
+            int component = ii;
+            if (red) {
+                SoftwareUtil.writeFromFloat(data, type, texels[i], component++);
+            }
+            if (green) {
+                SoftwareUtil.writeFromFloat(data, type, texels[i + 1], component++);
+            }
+            if (blue) {
+                SoftwareUtil.writeFromFloat(data, type, texels[i + 2], component++);
+            }
+            if (alpha) {
+                SoftwareUtil.writeFromFloat(data, type, texels[i + 3], component);
+            }
+        }
+        dataModified = false;
     }
 
     @Override
@@ -136,19 +332,23 @@ public class SoftwareTexture extends Texture {
         if (format == null) {
             format = this.format;
         }
+        updateData();
         final ByteBuffer imageData = CausticUtil.createByteBuffer(width * height * format.getBytes());
         final DataType sourceType = this.format.getComponentType();
         final DataType destinationType = format.getComponentType();
         data.rewind();
+        // The depth is copied as red, like it is sampled
+        final boolean sourceRed = this.format.hasRed() || this.format.hasDepth();
+        final boolean destinationRed = format.hasRed() || format.hasDepth();
         while (data.remaining() > 0) {
-            if (this.format.hasRed()) {
-                if (format.hasRed()) {
+            if (sourceRed) {
+                if (destinationRed) {
                     SoftwareUtil.copy(data, sourceType, imageData, destinationType);
                 } else {
                     SoftwareUtil.advance(data, sourceType);
                 }
             } else {
-                if (format.hasRed()) {
+                if (destinationRed) {
                     SoftwareUtil.write(imageData, destinationType, 0);
                 }
             }
@@ -186,6 +386,8 @@ public class SoftwareTexture extends Texture {
                 }
             }
         }
+        // Start at the first texel, like the buffer read by OpenGL
+        imageData.flip();
         return imageData;
     }
 
@@ -199,37 +401,167 @@ public class SoftwareTexture extends Texture {
         return height;
     }
 
-    Vector4f sample(float x, float y) {
-        x *= width - 1;
-        y *= height - 1;
-        final DataType type = format.getComponentType();
-        final int i = ((int) x + (int) y * width) * format.getComponentCount();
-        final float r, g, b, a;
-        if (format.hasRed()) {
-            r = SoftwareUtil.readAsFloat(data, type, i);
-        } else {
-            r = 0;
+    boolean needsDerivatives() {
+        // The level of detail decides between the min and mag filters, the mipmap levels and the anisotropic probes
+        return minFilter != magFilter || minFilter.needsMipMaps() || maxAnisotropy > 1;
+    }
+
+    void sample(float x, float y, float[] destination) {
+        sampleLevel(magFilter, 0, x, y, destination, false, 1);
+    }
+
+    // Returns true if sampling with the derivatives magnifies the texture, in which case they don't change the sample
+    boolean isMagnified(float horizontalDx, float horizontalDy, float verticalDx, float verticalDy) {
+        final float horizontalLength = getSquaredTexelLength(horizontalDx, horizontalDy);
+        final float verticalLength = getSquaredTexelLength(verticalDx, verticalDy);
+        final float major = (float) Math.sqrt(Math.max(horizontalLength, verticalLength));
+        final float minor = (float) Math.sqrt(Math.min(horizontalLength, verticalLength));
+        return !(getLevelOfDetail(major, getProbes(major, minor)) > 0);
+    }
+
+    void sample(float x, float y, float horizontalDx, float horizontalDy, float verticalDx, float verticalDy, float[] destination) {
+        // Change in texels for a step of one pixel horizontally and vertically on the screen, giving the major and minor axes
+        final float horizontalLength = getSquaredTexelLength(horizontalDx, horizontalDy);
+        final float verticalLength = getSquaredTexelLength(verticalDx, verticalDy);
+        final float major = (float) Math.sqrt(Math.max(horizontalLength, verticalLength));
+        final float minor = (float) Math.sqrt(Math.min(horizontalLength, verticalLength));
+        final int probes = getProbes(major, minor);
+        final float lod = getLevelOfDetail(major, probes);
+        // Magnification when the footprint is a texel or less
+        if (!(lod > 0)) {
+            sampleLevel(magFilter, 0, x, y, destination, false, 1);
+            return;
         }
-        if (format.hasGreen()) {
-            g = SoftwareUtil.readAsFloat(data, type, i + 1);
-        } else {
-            g = 0;
+        if (probes <= 1) {
+            sampleMinified(lod, x, y, destination, false, 1);
+            return;
         }
-        if (format.hasBlue()) {
-            b = SoftwareUtil.readAsFloat(data, type, i + 2);
+        // Average probes spread along the major axis
+        final float stepX, stepY;
+        if (horizontalLength >= verticalLength) {
+            stepX = horizontalDx / probes;
+            stepY = horizontalDy / probes;
         } else {
-            b = 0;
+            stepX = verticalDx / probes;
+            stepY = verticalDy / probes;
+        }
+        final float weight = 1f / probes;
+        for (int i = 0; i < probes; i++) {
+            final float offset = i + 0.5f - probes * 0.5f;
+            sampleMinified(lod, x + stepX * offset, y + stepY * offset, destination, i > 0, weight);
         }
-        if (format.hasAlpha()) {
-            a = SoftwareUtil.readAsFloat(data, type, i + 3);
+    }
+
+    // Returns the squared length in texels of a change in texture coordinates
+    private float getSquaredTexelLength(float dx, float dy) {
+        final float texelsX = dx * width, texelsY = dy * height;
+        return texelsX * texelsX + texelsY * texelsY;
+    }
+
+    // Takes more probes along the major axis as the footprint gets more anisotropic, which reduces the level of detail
+    private int getProbes(float major, float minor) {
+        return minor > 0 ? (int) Math.min(Math.ceil(major / minor), maxAnisotropy) : (int) maxAnisotropy;
+    }
+
+    private static float getLevelOfDetail(float major, int probes) {
+        return (float) (Math.log(major / probes) / LOG_2);
+    }
+
+    private void sampleMinified(float lod, float x, float y, float[] destination, boolean accumulate, float weight) {
+        if (!minFilter.needsMipMaps()) {
+            sampleLevel(minFilter, 0, x, y, destination, accumulate, weight);
+            return;
+        }
+        final int lastLevel = levels.length - 1;
+        final FilterMode levelFilter = minFilter == FilterMode.NEAREST_MIPMAP_NEAREST || minFilter == FilterMode.NEAREST_MIPMAP_LINEAR ? FilterMode.NEAREST : FilterMode.LINEAR;
+        if (minFilter == FilterMode.NEAREST_MIPMAP_NEAREST || minFilter == FilterMode.LINEAR_MIPMAP_NEAREST) {
+            // Closest level
+            sampleLevel(levelFilter, Math.min((int) Math.ceil(lod + 0.5f) - 1, lastLevel), x, y, destination, accumulate, weight);
         } else {
-            a = 1;
+            // Blend between the two closest levels
+            final int level = Math.min((int) lod, lastLevel);
+            final float blend = level < lastLevel ? lod - level : 0;
+            sampleLevel(levelFilter, level, x, y, destination, accumulate, weight * (1 - blend));
+            if (blend > 0) {
+                sampleLevel(levelFilter, level + 1, x, y, destination, true, weight * blend);
+            }
+        }
+    }
+
+    // Stores the sample multiplied by the weight in the destination, or adds it when accumulating
+    private void sampleLevel(FilterMode filter, int level, float x, float y, float[] destination, boolean accumulate, float weight) {
+        final TextureLevel texels = levels[level];
+        final int levelWidth = texels.getWidth();
+        final int levelHeight = texels.getHeight();
+        if (!accumulate) {
+            destination[0] = destination[1] = destination[2] = destination[3] = 0;
+        }
+        x *= levelWidth;
+        y *= levelHeight;
+        if (filter == FilterMode.NEAREST) {
+            addTexel(texels, wrap(horizontalWrap, (int) Math.floor(x), levelWidth), wrap(verticalWrap, (int) Math.floor(y), levelHeight), weight, destination);
+            return;
+        }
+        // Bilinear, between the centers of the four closest texels
+        x -= 0.5f;
+        y -= 0.5f;
+        final float floorX = (float) Math.floor(x);
+        final float floorY = (float) Math.floor(y);
+        final float fractionX = x - floorX;
+        final float fractionY = y - floorY;
+        final int x0 = wrap(horizontalWrap, (int) floorX, levelWidth);
+        final int x1 = wrap(horizontalWrap, (int) floorX + 1, levelWidth);
+        final int y0 = wrap(verticalWrap, (int) floorY, levelHeight);
+        final int y1 = wrap(verticalWrap, (int) floorY + 1, levelHeight);
+        addTexel(texels, x0, y0, (1 - fractionX) * (1 - fractionY) * weight, destination);
+        addTexel(texels, x1, y0, fractionX * (1 - fractionY) * weight, destination);
+        addTexel(texels, x0, y1, (1 - fractionX) * fractionY * weight, destination);
+        addTexel(texels, x1, y1, fractionX * fractionY * weight, destination);
+    }
+
+    // Adds the texel multiplied by the weight to the destination, using the border color for negative coordinates
+    private void addTexel(TextureLevel texels, int x, int y, float weight, float[] destination) {
+        if (x < 0 || y < 0) {
+            for (int c = 0; c < 4; c++) {
+                destination[c] += borderColor[c] * weight;
+            }
+            return;
+        }
+        texels.add(texels.index(x, y), weight, destination);
+    }
+
+    // Returns the wrapped texel coordinate, or -1 for the border
+    private static int wrap(WrapMode mode, int i, int size) {
+        switch (mode) {
+            case REPEAT:
+                i %= size;
+                return i < 0 ? i + size : i;
+            case MIRRORED_REPEAT:
+                final int period = size << 1;
+                i %= period;
+                if (i < 0) {
+                    i += period;
+                }
+                return i < size ? i : period - 1 - i;
+            case CLAMP_TO_EDGE:
+                return i < 0 ? 0 : i >= size ? size - 1 : i;
+            case CLAMP_TO_BORDER:
+                return i < 0 || i >= size ? -1 : i;
+            default:
+                throw new IllegalArgumentException("Unsupported wrap mode: " + mode);
         }
-        return new Vector4f(r, g, b, a);
     }
 
     @Override
     public GLVersion getGLVersion() {
         return GLVersion.SOFTWARE;
     }
+
+    /**
+     * The layouts of the texels in memory.
+     */
+    public static enum StorageLayout {
+        LINEAR,
+        TILED
+    }
 }
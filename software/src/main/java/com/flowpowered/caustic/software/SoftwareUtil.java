@@ -44,6 +44,7 @@ public final class SoftwareUtil {
     private static final int SHORT_MASK = 0xFFFF;
     private static final long INT_MASK = 0xFFFFFFFFl;
     public static final GLImplementation SOFT_IMPL = new GLImplementation(GLVersion.SOFTWARE, SoftwareContext.class.getName());
+    public static final GLImplementation SOFT_HEADLESS_IMPL = new GLImplementation(GLVersion.SOFTWARE, HeadlessSoftwareContext.class.getName());
 
     private SoftwareUtil() {
     }
@@ -66,17 +67,6 @@ public final class SoftwareUtil {
         return buffer;
     }
 
-    static ByteBuffer setAsFloat(ByteBuffer buffer, ByteBuffer newData, DataType type, float threshold, boolean normalize) {
-        final int elementCount = newData.remaining() / type.getByteSize();
-        final int newCapacity = elementCount << DataType.FLOAT.getMultiplyShift();
-        buffer = create(buffer, newCapacity, threshold);
-        for (int i = 0; i < elementCount; i++) {
-            buffer.putFloat(toFloat(type, read(newData, type), normalize));
-        }
-        buffer.flip();
-        return buffer;
-    }
-
     static int read(ByteBuffer data, DataType type) {
         switch (type) {
             case BYTE:
@@ -175,6 +165,35 @@ public final class SoftwareUtil {
         }
     }
 
+    static void writeFromFloat(ByteBuffer data, DataType type, float value, int i) {
+        i <<= type.getMultiplyShift();
+        switch (type) {
+            case BYTE:
+                data.put(i, (byte) (Math.round(clamp(value, 0, 1) * BYTE_RANGE) + Byte.MIN_VALUE));
+                break;
+            case UNSIGNED_BYTE:
+                data.put(i, (byte) Math.round(clamp(value, 0, 1) * BYTE_RANGE));
+                break;
+            case SHORT:
+                data.putShort(i, (short) (Math.round(clamp(value, 0, 1) * SHORT_RANGE) + Short.MIN_VALUE));
+                break;
+            case UNSIGNED_SHORT:
+                data.putShort(i, (short) Math.round(clamp(value, 0, 1) * SHORT_RANGE));
+                break;
+            case INT:
+                data.putInt(i, (int) (Math.round(clamp(value, 0, 1) * (double) INT_RANGE) + Integer.MIN_VALUE));
+                break;
+            case UNSIGNED_INT:
+                data.putInt(i, (int) Math.round(clamp(value, 0, 1) * (double) INT_RANGE));
+                break;
+            case FLOAT:
+                data.putFloat(i, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+    }
+
     static void advance(ByteBuffer data, DataType type) {
         advance(data, type, 1);
     }
@@ -267,23 +286,4 @@ public final class SoftwareUtil {
     static float baryLerp(float a, float b, float c, float r, float s, float t) {
         return r * a + s * b + t * c;
     }
-
-    static void baryLerp(ShaderBuffer inA, ShaderBuffer inB, ShaderBuffer inC, float r, float s, float t, int start, ShaderBuffer out) {
-        final DataFormat[] formats = inA.getFormat();
-        for (int i = start; i < formats.length; i++) {
-            final DataFormat format = formats[i];
-            final DataType type = format.getType();
-            final int count = format.getCount();
-            for (int ii = 0; ii < count; ii++) {
-                switch (type) {
-                    case INT:
-                        out.writeRaw((int) (r * inA.readRaw() + s * inB.readRaw() + t * inC.readRaw()));
-                        break;
-                    case FLOAT:
-                        out.writeRaw(Float.floatToIntBits(r * Float.intBitsToFloat(inA.readRaw()) + s * Float.intBitsToFloat(inB.readRaw()) + t * Float.intBitsToFloat(inC.readRaw())));
-                        break;
-                }
-            }
-        }
-    }
 }
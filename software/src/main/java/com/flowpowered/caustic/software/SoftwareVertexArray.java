@@ -24,6 +24,7 @@
 package com.flowpowered.caustic.software;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import com.flowpowered.math.GenericMath;
 
@@ -41,14 +42,36 @@ import com.flowpowered.caustic.api.util.Rectangle;
  */
 public class SoftwareVertexArray extends VertexArray {
     private static final DataType INDICES_TYPE = DataType.INT;
-    private static final DataFormat[] FRAGMENT_OUTPUT = {new DataFormat(DataType.FLOAT, 4)};
+    static final DataFormat[] FRAGMENT_OUTPUT = {new DataFormat(DataType.FLOAT, 4)};
     private final SoftwareRenderer renderer;
-    private ByteBuffer[] attributeBuffers;
+    private static final VertexAttribute[] EMPTY_ATTRIBUTES = {};
+    // The attributes, with their data and how often they advance, kept to convert them again when a single one is set
+    private VertexAttribute[] attributes = EMPTY_ATTRIBUTES;
+    private ByteBuffer[] attributeData = {};
+    private int[] attributeDivisors = {};
+    // The attributes converted to the raw ints of the vertex shader input, interleaved by vertex
+    // The per instance attributes are written in every vertex before drawing each instance
+    private int[] vertices = new int[0];
+    private int vertexStride;
+    private int attributeVertexCount = 0;
+    private int[] attributeOffsets;
+    // The per instance attributes converted to raw ints, null for the per vertex ones
+    private int[][] instanceAttributes;
+    private boolean instanced = false;
+    // The attributes by component, for vertex shaders that shade in batches, only built when first needed
+    private float[][] attributeStreams;
+    // The vertex shader outputs by component, when the current draw is shaded in a batch, and the number of vertices shaded in it
+    private float[][] batchOutputs = new float[0][];
+    private boolean batched = false;
+    private int batchCount = 0;
     private DataFormat[] attributeFormats;
     private ByteBuffer indicesBuffer;
     private DrawingMode mode = DrawingMode.TRIANGLES;
     private PolygonMode polygonMode = PolygonMode.FILL;
     private int offset = 0, count = -1, totalCount = 0;
+    // The number of vertices referenced by the indices
+    private int vertexCount = 0;
+    private final VertexCache vertexCache = new VertexCache();
 
     SoftwareVertexArray(SoftwareRenderer renderer) {
         this.renderer = renderer;
@@ -57,6 +80,8 @@ public class SoftwareVertexArray extends VertexArray {
     @Override
     public void setData(VertexData vertexData) {
         checkCreated();
+        // Compute the bounds of the positions, for culling
+        updateBounds(vertexData);
         // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
         // In the first case because we need more space, in the other to save space
         indicesBuffer = SoftwareUtil.set(indicesBuffer, vertexData.getIndicesBuffer(), 0.5f);
@@ -67,33 +92,157 @@ public class SoftwareVertexArray extends VertexArray {
         // Ensure that the indices offset and count fits inside the valid part of the buffer
         offset = Math.min(offset, count - 1);
         count -= offset;
-        // Create a new array of attribute buffers of the correct size
+        // Find the number of vertices, which is the largest index plus one
+        vertexCount = 0;
+        for (int i = 0; i < totalCount; i++) {
+            vertexCount = Math.max(vertexCount, SoftwareUtil.read(indicesBuffer, INDICES_TYPE, i) + 1);
+        }
+        // Save the attributes, their data and how often they advance
         final int attributeCount = vertexData.getAttributeCount();
-        final ByteBuffer[] newAttributeBuffers = new ByteBuffer[attributeCount];
-        // Copy all the old buffer that will fit in the new array so we can reuse them
-        if (attributeBuffers != null) {
-            System.arraycopy(attributeBuffers, 0, newAttributeBuffers, 0, Math.min(attributeBuffers.length, newAttributeBuffers.length));
+        attributes = new VertexAttribute[attributeCount];
+        attributeData = new ByteBuffer[attributeCount];
+        attributeDivisors = new int[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            final VertexAttribute attribute = vertexData.getAttribute(i);
+            attributes[i] = attribute;
+            attributeData[i] = attribute.getData();
+            attributeDivisors[i] = attribute.getDivisor();
         }
-        // Update the arrays
-        attributeBuffers = newAttributeBuffers;
+        convertAttributes();
+    }
+
+    @Override
+    public void setAttribute(int index, VertexAttribute attribute) {
+        checkCreated();
+        if (attribute == null) {
+            throw new IllegalArgumentException("Attribute cannot be null");
+        }
+        if (index < 0 || index > attributes.length) {
+            throw new IllegalArgumentException("Index must be between 0 and the attribute count");
+        }
+        final ByteBuffer data = attribute.getData();
+        final int divisor = attribute.getDivisor();
+        // A per instance attribute replacing one of the same format isn't interleaved in the vertices, so it can be converted on its own
+        if (index < attributes.length && divisor > 0 && attributeDivisors[index] > 0 && hasSameFormat(attributes[index], attribute)) {
+            attributes[index] = attribute;
+            attributeData[index] = data;
+            attributeDivisors[index] = divisor;
+            instanceAttributes[index] = convert(attribute, data, instanceAttributes[index]);
+            return;
+        }
+        // Else add or replace the attribute, and convert all of them again
+        if (index == attributes.length) {
+            attributes = Arrays.copyOf(attributes, index + 1);
+            attributeData = Arrays.copyOf(attributeData, index + 1);
+            attributeDivisors = Arrays.copyOf(attributeDivisors, index + 1);
+        }
+        attributes[index] = attribute;
+        attributeData[index] = data;
+        attributeDivisors[index] = divisor;
+        convertAttributes();
+    }
+
+    private void convertAttributes() {
+        // Save the attribute formats, and find the size of an interleaved vertex and the number of vertices in the per vertex attributes
+        final int attributeCount = attributes.length;
         attributeFormats = new DataFormat[attributeCount];
-        // Set the new vertex data
+        attributeOffsets = new int[attributeCount];
+        instanceAttributes = new int[attributeCount][];
+        vertexStride = 0;
+        attributeVertexCount = 0;
+        instanced = false;
         for (int i = 0; i < attributeCount; i++) {
-            final VertexAttribute attribute = vertexData.getAttribute(i);
-            final ByteBuffer attributeData = attribute.getData();
-            // If the new count is greater than or 50% smaller than the old one, we'll reallocate the memory
-            // Set the data, converting it to float if necessary
+            final VertexAttribute attribute = attributes[i];
+            final DataType type = attribute.getType();
+            final int size = attribute.getSize();
+            attributeFormats[i] = new DataFormat(attribute.getUploadMode().toFloat() ? DataType.FLOAT : type, size);
+            attributeOffsets[i] = vertexStride;
+            vertexStride += size;
+            if (attributeDivisors[i] > 0) {
+                // Per instance attributes are converted separately
+                instanceAttributes[i] = convert(attribute, attributeData[i], null);
+                instanced = true;
+            } else {
+                attributeVertexCount = Math.max(attributeVertexCount, attributeData[i].remaining() / (type.getByteSize() * size));
+            }
+        }
+        // Without any per vertex attribute, there still needs to be a vertex for each index to hold the per instance ones
+        if (instanced) {
+            attributeVertexCount = Math.max(attributeVertexCount, vertexCount);
+        }
+        // If the new size is greater than or 50% smaller than the old one, we'll reallocate the memory
+        final int verticesSize = attributeVertexCount * vertexStride;
+        if (verticesSize > vertices.length || verticesSize <= vertices.length * 0.5f) {
+            vertices = new int[verticesSize];
+        }
+        attributeStreams = null;
+        // Convert the attributes once, so fetching a vertex for the shader is a single copy
+        for (int i = 0; i < attributeCount; i++) {
+            final VertexAttribute attribute = attributes[i];
+            if (attributeDivisors[i] > 0) {
+                continue;
+            }
+            final ByteBuffer data = attributeData[i];
             final DataType type = attribute.getType();
             final UploadMode uploadMode = attribute.getUploadMode();
-            switch (uploadMode) {
-                case KEEP_INT:
-                    attributeBuffers[i] = SoftwareUtil.set(attributeBuffers[i], attributeData, 0.5f);
-                    break;
-                default:
-                    attributeBuffers[i] = SoftwareUtil.setAsFloat(attributeBuffers[i], attributeData, type, 0.5f, uploadMode.normalize());
+            final boolean toFloat = uploadMode.toFloat() && type != DataType.FLOAT;
+            final boolean normalize = uploadMode.normalize();
+            final int size = attribute.getSize();
+            final int attributeOffset = attributeOffsets[i];
+            final int componentCount = data.remaining() / type.getByteSize();
+            for (int c = 0; c < componentCount; c++) {
+                // Here conversion from byte or short to int is implicit
+                final int x = SoftwareUtil.read(data, type, c);
+                vertices[c / size * vertexStride + attributeOffset + c % size] = toFloat ? Float.floatToIntBits(SoftwareUtil.toFloat(type, x, normalize)) : x;
+            }
+        }
+    }
+
+    // Converts all the components of the attribute to raw ints, reusing the destination if it has the right size
+    private static int[] convert(VertexAttribute attribute, ByteBuffer data, int[] destination) {
+        final DataType type = attribute.getType();
+        final UploadMode uploadMode = attribute.getUploadMode();
+        final boolean toFloat = uploadMode.toFloat() && type != DataType.FLOAT;
+        final boolean normalize = uploadMode.normalize();
+        final int componentCount = data.remaining() / type.getByteSize();
+        if (destination == null || destination.length != componentCount) {
+            destination = new int[componentCount];
+        }
+        for (int c = 0; c < componentCount; c++) {
+            final int x = SoftwareUtil.read(data, type, c);
+            destination[c] = toFloat ? Float.floatToIntBits(SoftwareUtil.toFloat(type, x, normalize)) : x;
+        }
+        return destination;
+    }
+
+    private static boolean hasSameFormat(VertexAttribute a, VertexAttribute b) {
+        return a.getType() == b.getType() && a.getSize() == b.getSize() && a.getUploadMode() == b.getUploadMode();
+    }
+
+    // Writes the per instance attributes of the instance in every vertex, and in the batch streams if they were already split
+    private void setInstance(int instance) {
+        for (int i = 0; i < instanceAttributes.length; i++) {
+            final int[] source = instanceAttributes[i];
+            if (source == null) {
+                continue;
+            }
+            final int size = attributeFormats[i].getCount();
+            final int attributeOffset = attributeOffsets[i];
+            // Instances past the end of the data read zeros
+            final int start = instance / attributeDivisors[i] * size;
+            final boolean inside = start + size <= source.length;
+            for (int v = 0, j = attributeOffset; v < attributeVertexCount; v++, j += vertexStride) {
+                if (inside) {
+                    System.arraycopy(source, start, vertices, j, size);
+                } else {
+                    Arrays.fill(vertices, j, j + size, 0);
+                }
+            }
+            if (attributeStreams != null) {
+                for (int c = 0; c < size; c++) {
+                    Arrays.fill(attributeStreams[attributeOffset + c], inside ? Float.intBitsToFloat(source[start + c]) : 0);
+                }
             }
-            // Save the attribute format
-            attributeFormats[i] = new DataFormat(uploadMode.toFloat() ? DataType.FLOAT : type, attribute.getSize());
         }
     }
 
@@ -115,18 +264,48 @@ public class SoftwareVertexArray extends VertexArray {
 
     @Override
     public void setIndicesOffset(int offset) {
-        offset = Math.min(offset, totalCount - 1);
-        count = Math.min(count, totalCount - offset);
+        this.offset = Math.min(offset, totalCount - 1);
+        count = Math.min(count, totalCount - this.offset);
     }
 
     @Override
     public void setIndicesCount(int count) {
         this.count = count <= 0 ? totalCount : count;
-        this.count = Math.min(count, totalCount - offset);
+        this.count = Math.min(this.count, totalCount - offset);
     }
 
     @Override
     public void draw() {
+        renderer.beginDraw();
+        // Without instancing, the per instance attributes are those of the first instance
+        if (instanced) {
+            setInstance(0);
+        }
+        addVerticesShaded(drawPrimitives());
+        renderer.endDraw();
+    }
+
+    @Override
+    public void drawInstanced(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Instance count must be greater or equal to zero");
+        }
+        // The instances make a single draw, for the statistics
+        renderer.beginDraw();
+        // The primitives are drawn once for each instance, with its attributes written into the vertices
+        long verticesShaded = 0;
+        for (int i = 0; i < count; i++) {
+            if (instanced) {
+                setInstance(i);
+            }
+            verticesShaded += drawPrimitives();
+        }
+        addVerticesShaded(verticesShaded);
+        renderer.endDraw();
+    }
+
+    // Draws the primitives, returns the number of vertices shaded
+    private int drawPrimitives() {
         switch (mode) {
             case POINTS:
                 drawPoints();
@@ -138,6 +317,15 @@ public class SoftwareVertexArray extends VertexArray {
                 drawTriangles();
                 break;
         }
+        // Batches shade the range of vertices used by the draw, otherwise only the cache misses are shaded
+        return batched ? batchCount : vertexCache.getMisses();
+    }
+
+    private void addVerticesShaded(long verticesShaded) {
+        final SoftwareStatistics statistics = renderer.getDrawStatistics();
+        if (statistics != null) {
+            statistics.addVertices(verticesShaded);
+        }
     }
 
     private void drawPoints() {
@@ -151,6 +339,8 @@ public class SoftwareVertexArray extends VertexArray {
         final DataFormat[] vertexOutputFormat = vertexShader.getOutputFormat();
         final ShaderBuffer vertexIn = new ShaderBuffer(attributeFormats);
         final ShaderBuffer vertexOut = new ShaderBuffer(vertexOutputFormat);
+        vertexCache.begin(vertexCount, vertexOut.capacity());
+        shadeBatch(vertexShader);
         // Get the fragment shader implementation, and create appropriate in and out buffers
         final ShaderImplementation fragmentShader = program.getShader(ShaderType.FRAGMENT).getImplementation();
         final ShaderBuffer fragmentIn = new ShaderBuffer(vertexOutputFormat);
@@ -205,6 +395,8 @@ public class SoftwareVertexArray extends VertexArray {
         final ShaderBuffer vertexIn = new ShaderBuffer(attributeFormats);
         final ShaderBuffer vertexOut1 = new ShaderBuffer(vertexOutputFormat);
         final ShaderBuffer vertexOut2 = new ShaderBuffer(vertexOutputFormat);
+        vertexCache.begin(vertexCount, vertexOut1.capacity());
+        shadeBatch(vertexShader);
         // Get the fragment shader implementation, and create appropriate in and out buffers
         final ShaderImplementation fragmentShader = program.getShader(ShaderType.FRAGMENT).getImplementation();
         final ShaderBuffer fragmentIn = new ShaderBuffer(vertexOutputFormat);
@@ -524,10 +716,15 @@ public class SoftwareVertexArray extends VertexArray {
         final ShaderBuffer vertexOut1 = new ShaderBuffer(vertexOutputFormat);
         final ShaderBuffer vertexOut2 = new ShaderBuffer(vertexOutputFormat);
         final ShaderBuffer vertexOut3 = new ShaderBuffer(vertexOutputFormat);
-        // Get the fragment shader implementation, and create appropriate in and out buffers
+        vertexCache.begin(vertexCount, vertexOut1.capacity());
+        shadeBatch(vertexShader);
+        // Get the fragment shader implementation, and prepare the rasterizer for binning the triangles
         final ShaderImplementation fragmentShader = program.getShader(ShaderType.FRAGMENT).getImplementation();
-        final ShaderBuffer fragmentIn = new ShaderBuffer(vertexOutputFormat);
-        final ShaderBuffer fragmentOut = new ShaderBuffer(FRAGMENT_OUTPUT);
+        final SoftwareRasterizer rasterizer = renderer.getRasterizer();
+        rasterizer.begin(fragmentShader, vertexOutputFormat);
+        // Size of the guard band in clip space, within which triangles are rasterized without clipping
+        final float guardBandX = getGuardBand(viewPort.getX(), viewPort.getWidth());
+        final float guardBandY = getGuardBand(viewPort.getY(), viewPort.getHeight());
         // Arrays for storing the vertices for clipping
         final float[] inVertices = new float[7 * 4];
         final float[] outVertices = new float[7 * 4];
@@ -541,6 +738,8 @@ public class SoftwareVertexArray extends VertexArray {
                 new ShaderBuffer(vertexOutputFormat), new ShaderBuffer(vertexOutputFormat),
                 new ShaderBuffer(vertexOutputFormat), new ShaderBuffer(vertexOutputFormat)
         };
+        // Counters for the statistics
+        int culled = 0, clipped = 0;
         // For all indices that need to be drawn
         for (int i = 0; i < count; i += 3) {
             // Compute the first point
@@ -564,6 +763,11 @@ public class SoftwareVertexArray extends VertexArray {
             float y3 = Float.intBitsToFloat(vertexOut3.readRaw());
             float z3 = Float.intBitsToFloat(vertexOut3.readRaw());
             float w3 = Float.intBitsToFloat(vertexOut3.readRaw());
+            // Discard the triangle if all the vertices are outside the same clipping plane
+            if ((getOutCode(x1, y1, z1, w1, clampDepth) & getOutCode(x2, y2, z2, w2, clampDepth) & getOutCode(x3, y3, z3, w3, clampDepth)) != 0) {
+                culled++;
+                continue;
+            }
             // Cull back facing triangles if needed
             if (cullFace) {
                 // Get the edge vectors
@@ -574,6 +778,7 @@ public class SoftwareVertexArray extends VertexArray {
                 // Compute the z component of the cross product
                 if (dy31 * dx21 - dx31 * dy21 <= GenericMath.FLT_EPSILON) {
                     // A zero or negative value is back facing
+                    culled++;
                     continue;
                 }
             }
@@ -594,10 +799,16 @@ public class SoftwareVertexArray extends VertexArray {
             outVertices[11] = w3;
             outBuffers[2] = vertexOut3;
             int outSize = 3;
-            // Perform clipping using the Sutherland–Hodgman algorithm
+            // Perform clipping using the Sutherland–Hodgman algorithm, unless the triangle is in the guard band, in which case the rasterizer only draws the part in the view port
+            final boolean inGuardBand = isInGuardBand(x1, y1, z1, w1, guardBandX, guardBandY, clampDepth)
+                    && isInGuardBand(x2, y2, z2, w2, guardBandX, guardBandY, clampDepth)
+                    && isInGuardBand(x3, y3, z3, w3, guardBandX, guardBandY, clampDepth);
             int remainingBuffers = extraBuffers.length;
             // Skip the z and -z planes if we are clamping depth
-            final int planes = clampDepth ? 4 : 6;
+            final int planes = inGuardBand ? 0 : clampDepth ? 4 : 6;
+            if (!inGuardBand) {
+                clipped++;
+            }
             for (int p = 0; p < planes; p++) {
                 System.arraycopy(outVertices, 0, inVertices, 0, outSize * 4);
                 System.arraycopy(outBuffers, 0, inBuffers, 0, outSize);
@@ -700,14 +911,56 @@ public class SoftwareVertexArray extends VertexArray {
                 z3 = outVertices[vi + 6];
                 w3 = outVertices[vi + 7];
                 final ShaderBuffer out3 = outBuffers[n + 2];
-                // Draw the triangle
-                drawTriangle(
+                // Bin the triangle for drawing
+                rasterizer.addTriangle(
                         out1, x1, y1, z1, w1,
                         out2, x2, y2, z2, w2,
-                        out3, x3, y3, z3, w3,
-                        fragmentShader, fragmentIn, fragmentOut);
+                        out3, x3, y3, z3, w3);
+            }
+        }
+        // Draw the binned triangles
+        rasterizer.end();
+        final SoftwareStatistics statistics = renderer.getDrawStatistics();
+        if (statistics != null) {
+            statistics.addTriangles(count / 3, culled, clipped);
+        }
+    }
+
+    // Returns the clipping planes the vertex is outside of, one bit per plane
+    private static int getOutCode(float x, float y, float z, float w, boolean clampDepth) {
+        int code = 0;
+        if (x < -w) {
+            code |= 1;
+        }
+        if (x > w) {
+            code |= 1 << 1;
+        }
+        if (y < -w) {
+            code |= 1 << 2;
+        }
+        if (y > w) {
+            code |= 1 << 3;
+        }
+        // The z and -z planes don't clip when clamping depth
+        if (!clampDepth) {
+            if (z < -w) {
+                code |= 1 << 4;
+            }
+            if (z > w) {
+                code |= 1 << 5;
             }
         }
+        return code;
+    }
+
+    // Returns the largest clip space coordinate, relative to w, that the view port maps within the coordinate limit of the rasterizer, beyond which its edge functions could overflow
+    private static float getGuardBand(int start, int size) {
+        return 2 * (SoftwareRasterizer.MAX_COORDINATE - Math.abs(start)) / Math.max(size - 1, 1) - 1;
+    }
+
+    private static boolean isInGuardBand(float x, float y, float z, float w, float guardBandX, float guardBandY, boolean clampDepth) {
+        // The near and far planes still need clipping, for the depth and the division by w
+        return w > 0 && Math.abs(x) <= guardBandX * w && Math.abs(y) <= guardBandY * w && (clampDepth || z >= -w && z <= w);
     }
 
     private boolean isInside(float x, float y, float z, float w, int plane) {
@@ -771,154 +1024,103 @@ public class SoftwareVertexArray extends VertexArray {
         vertexOut.flip();
     }
 
-    // Based on http://devmaster.net/posts/6145/advanced-rasterization
-    private void drawTriangle(ShaderBuffer out1, float x1, float y1, float z1, float w1,
-                              ShaderBuffer out2, float x2, float y2, float z2, float w2,
-                              ShaderBuffer out3, float x3, float y3, float z3, float w3,
-                              ShaderImplementation fragmentShader, ShaderBuffer fragmentIn, ShaderBuffer fragmentOut) {
-        // (28).(4) (in bits) fixed-point coordinates
-        final int fy1 = Math.round(y1 * 16);
-        final int fy2 = Math.round(y2 * 16);
-        final int fy3 = Math.round(y3 * 16);
-        final int fx1 = Math.round(x1 * 16);
-        final int fx2 = Math.round(x2 * 16);
-        final int fx3 = Math.round(x3 * 16);
-        // Deltas
-        final int dx12 = fx1 - fx2;
-        final int dx23 = fx2 - fx3;
-        final int dx31 = fx3 - fx1;
-        final int dy12 = fy1 - fy2;
-        final int dy23 = fy2 - fy3;
-        final int dy31 = fy3 - fy1;
-        // Fixed-point deltas
-        final int fdx12 = dx12 << 4;
-        final int fdx23 = dx23 << 4;
-        final int fdx31 = dx31 << 4;
-        final int fdy12 = dy12 << 4;
-        final int fdy23 = dy23 << 4;
-        final int fdy31 = dy31 << 4;
-        // Block size, standard 8x8 (must be power of two), here 2^3
-        final int block = 1 << 3;
-        // Bounding rectangle, start in the corner of the 8x8 block
-        final int minX = Math.min(fx1, Math.min(fx2, fx3)) + 0xf >> 4 & ~(block - 1);
-        final int maxX = Math.max(fx1, Math.max(fx2, fx3)) + 0xf >> 4;
-        final int minY = Math.min(fy1, Math.min(fy2, fy3)) + 0xf >> 4 & ~(block - 1);
-        final int maxY = Math.max(fy1, Math.max(fy2, fy3)) + 0xf >> 4;
-        // Determinant of deltas to compute the normalized barycentric coordinates for interpolation
-        final float det = dx23 * dy12 - dy23 * dx12;
-        // Barycentric coordinates
-        int c1 = dy12 * fx1 - dx12 * fy1;
-        int c2 = dy23 * fx2 - dx23 * fy2;
-        int c3 = dy31 * fx3 - dx31 * fy3;
-        // Correct for fill convention
-        if (dy12 < 0 || dy12 == 0 && dx12 > 0) {
-            c1++;
-        }
-        if (dy23 < 0 || dy23 == 0 && dx23 > 0) {
-            c2++;
-        }
-        if (dy31 < 0 || dy31 == 0 && dx31 > 0) {
-            c3++;
-        }
-        // Loop through blocks
-        for (int by = minY; by < maxY; by += block) {
-            for (int bx = minX; bx < maxX; bx += block) {
-                // Corners of block
-                final int bx0 = bx << 4;
-                final int bx1 = bx + block - 1 << 4;
-                final int by0 = by << 4;
-                final int by1 = by + block - 1 << 4;
-                // Evaluate half-space functions
-                final boolean a00 = c1 + dx12 * by0 - dy12 * bx0 <= 0;
-                final boolean a10 = c1 + dx12 * by0 - dy12 * bx1 <= 0;
-                final boolean a01 = c1 + dx12 * by1 - dy12 * bx0 <= 0;
-                final boolean a11 = c1 + dx12 * by1 - dy12 * bx1 <= 0;
-                final boolean b00 = c2 + dx23 * by0 - dy23 * bx0 <= 0;
-                final boolean b10 = c2 + dx23 * by0 - dy23 * bx1 <= 0;
-                final boolean b01 = c2 + dx23 * by1 - dy23 * bx0 <= 0;
-                final boolean b11 = c2 + dx23 * by1 - dy23 * bx1 <= 0;
-                final boolean c00 = c3 + dx31 * by0 - dy31 * bx0 <= 0;
-                final boolean c10 = c3 + dx31 * by0 - dy31 * bx1 <= 0;
-                final boolean c01 = c3 + dx31 * by1 - dy31 * bx0 <= 0;
-                final boolean c11 = c3 + dx31 * by1 - dy31 * bx1 <= 0;
-                // Skip the block when outside an edge
-                if (a00 && a10 && a01 && a11 || b00 && b10 && b01 && b11 || c00 && c10 && c01 && c11) {
-                    continue;
-                }
-                // Compute the barycentric coordinates
-                int cy1 = c1 + dx12 * by0 - dy12 * bx0;
-                int cy2 = c2 + dx23 * by0 - dy23 * bx0;
-                int cy3 = c3 + dx31 * by0 - dy31 * bx0;
-                // Iterate the block
-                for (int y = by; y < by + block; y++) {
-                    int cx1 = cy1;
-                    int cx2 = cy2;
-                    int cx3 = cy3;
-                    for (int x = bx; x < bx + block; x++) {
-                        // Only draw pixels inside the triangle
-                        if (cx1 > 0 && cx2 > 0 && cx3 > 0) {
-                            // Compute the normalized barycentric coordinates
-                            final float t = cx1 / det;
-                            final float r = cx2 / det;
-                            final float s = 1 - t - r;
-                            // Lerp the rest of the data using the barycentric coordinates
-                            final float z = SoftwareUtil.baryLerp(z1, z2, z3, r, s, t);
-                            final float w = SoftwareUtil.baryLerp(w1, w2, w3, r, s, t);
-                            fragmentIn.clear();
-                            fragmentIn.writeRaw(Float.floatToIntBits(x));
-                            fragmentIn.writeRaw(Float.floatToIntBits(y));
-                            fragmentIn.writeRaw(Float.floatToIntBits(z));
-                            fragmentIn.writeRaw(Float.floatToIntBits(w));
-                            out1.position(4);
-                            out2.position(4);
-                            out3.position(4);
-                            SoftwareUtil.baryLerp(out1, out2, out3, r, s, t, 1, fragmentIn);
-                            fragmentIn.flip();
-                            // Shade and write the fragment
-                            writeFragment(fragmentShader, fragmentIn, fragmentOut, x, y, z);
-                        }
-                        cx1 -= fdy12;
-                        cx2 -= fdy23;
-                        cx3 -= fdy31;
-                    }
-                    cy1 += fdx12;
-                    cy2 += fdx23;
-                    cy3 += fdx31;
+    private boolean isInside(float x, float y, float z, float w, boolean clampDepth) {
+        return w != 0 && x >= -w && x <= w && y >= -w && y <= w && (clampDepth || z >= -w && z <= w);
+    }
+
+    private void shadeBatch(ShaderImplementation shader) {
+        // Batches only take floats
+        final DataFormat[] outputFormat = shader.getOutputFormat();
+        batched = shader instanceof BatchShader && isFloat(attributeFormats) && isFloat(outputFormat);
+        if (!batched) {
+            return;
+        }
+        // Find the range of the vertices used by the drawn indices, which are the only ones to shade
+        int first = vertexCount, last = -1;
+        for (int i = offset; i < offset + count; i++) {
+            final int vertex = SoftwareUtil.read(indicesBuffer, INDICES_TYPE, i);
+            first = Math.min(first, vertex);
+            last = Math.max(last, vertex);
+        }
+        batchCount = last - first + 1;
+        if (batchCount <= 0) {
+            batchCount = 0;
+            return;
+        }
+        // Split the attributes by component, sized for all the indexed vertices
+        if (attributeStreams == null) {
+            attributeStreams = new float[vertexStride][Math.max(vertexCount, attributeVertexCount)];
+            for (int c = 0; c < vertexStride; c++) {
+                final float[] stream = attributeStreams[c];
+                for (int v = 0, i = c; v < attributeVertexCount; v++, i += vertexStride) {
+                    stream[v] = Float.intBitsToFloat(vertices[i]);
                 }
             }
         }
+        // Grow the outputs if needed
+        int outputSize = 0;
+        for (DataFormat format : outputFormat) {
+            outputSize += format.getCount();
+        }
+        if (batchOutputs.length != outputSize || outputSize > 0 && batchOutputs[0].length < vertexCount) {
+            batchOutputs = new float[outputSize][vertexCount];
+        }
+        // Shade the used vertices at once
+        ((BatchShader) shader).mainBatch(attributeStreams, batchOutputs, first, batchCount);
     }
 
-    private boolean isInside(float x, float y, float z, float w, boolean clampDepth) {
-        return w != 0 && x >= -w && x <= w && y >= -w && y <= w && (clampDepth || z >= -w && z <= w);
+    private static boolean isFloat(DataFormat[] formats) {
+        for (DataFormat format : formats) {
+            if (format.getType() != DataType.FLOAT) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void readVertex(ShaderImplementation shader, ShaderBuffer in, ShaderBuffer out, int index) {
-        // Clear the vertex in buffer and write the data from the vertex array, then flip it
-        in.clear();
-        for (int i = 0; i < attributeBuffers.length; i++) {
-            final ByteBuffer buffer = attributeBuffers[i];
-            final DataFormat format = attributeFormats[i];
-            final DataType type = format.getType();
-            final int size = format.getCount();
-            for (int ii = 0; ii < size; ii++) {
-                // Here conversion from byte or short to int is implicit
-                final int x = readComponent(buffer, type, size, index, ii);
-                in.writeRaw(x);
+        final int vertex = SoftwareUtil.read(indicesBuffer, INDICES_TYPE, index + offset);
+        // Copy the output of the batch if the vertices were shaded in one
+        if (batched) {
+            out.clear();
+            for (float[] output : batchOutputs) {
+                out.writeRaw(Float.floatToIntBits(output[vertex]));
             }
+            out.flip();
+            return;
         }
+        // Reuse the shader output if the vertex was already shaded
+        if (vertexCache.read(vertex, out)) {
+            return;
+        }
+        // Clear the vertex in buffer and copy the vertex from the converted attributes, then flip it
+        in.clear();
+        in.writeRaw(vertices, vertex * vertexStride, vertexStride);
         in.flip();
         // Clear the out buffer, run the vertex shader, and flip the out
         out.clear();
         shader.main(in, out);
         out.flip();
+        // Cache the output for the next primitives using the vertex
+        vertexCache.write(vertex, out);
     }
 
     private void writeFragment(ShaderImplementation shader, ShaderBuffer in, ShaderBuffer out, int x, int y, float z) {
         final short dnZ = SoftwareUtil.denormalizeToShort(z);
+        final SoftwareStatistics statistics = renderer.getDrawStatistics();
         if (!renderer.testDepth(x, y, dnZ)) {
+            if (statistics != null) {
+                statistics.addFragments(0, 1, 0);
+            }
             return;
         }
+        if (statistics != null) {
+            statistics.addFragments(1, 0, 1);
+        }
+        final SoftwareOcclusionQuery occlusionQuery = renderer.getOcclusionQuery();
+        if (occlusionQuery != null) {
+            occlusionQuery.addSamples(1);
+        }
         // Clear the out buffer, run the fragment shader, and flip the out
         out.clear();
         shader.main(in, out);
@@ -933,8 +1135,14 @@ public class SoftwareVertexArray extends VertexArray {
         renderer.writePixel(x, y, dnZ, SoftwareUtil.pack(r, g, b, a));
     }
 
-    private int readComponent(ByteBuffer buffer, DataType type, int attributeSize, int index, int offset) {
-        return SoftwareUtil.read(buffer, type, SoftwareUtil.read(indicesBuffer, INDICES_TYPE, index + this.offset) * attributeSize + offset);
+    /**
+     * Returns the hit rate of the post-transform vertex cache for the last draw call, which is the fraction of the indices for which the vertex shader output was reused instead of computed.
+     *
+     * @return The vertex cache hit rate, between 0 and 1
+     */
+    public float getVertexCacheHitRate() {
+        final int total = vertexCache.getHits() + vertexCache.getMisses();
+        return total <= 0 ? 0 : (float) vertexCache.getHits() / total;
     }
 
     @Override
@@ -0,0 +1,317 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.WindowConstants;
+import java.awt.BorderLayout;
+import java.awt.BufferCapabilities;
+import java.awt.BufferCapabilities.FlipContents;
+import java.awt.Canvas;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Presents the color buffers of the software renderer in a window. Frames are presented on a separate thread, so the next one can be rendered in the meantime, and only the tiles that changed since
+ * the last frame are drawn.
+ */
+class SoftwareWindow extends Canvas {
+    private static final long serialVersionUID = 1;
+    private static final DirectColorModel COLOR_MODEL = new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+    // Changes are tracked in tiles of 64x64 pixels, here 2^6
+    static final int TILE_SHIFT = 6;
+    private final JFrame frame;
+    private int scale = 1;
+    private volatile boolean closeRequested = false;
+    // The images wrapping the color buffers, cached by buffer
+    private final BufferedImage[] images = new BufferedImage[2];
+    private final int[][] imagePixels = new int[2][];
+    // The thread presenting the frames, and the last submitted presentation
+    private ExecutorService presenter;
+    private Future<?> presentation;
+    // The tile grid, the tiles changed since the last frame, and the ones of the frame being presented
+    private int tilesX, tilesY;
+    private boolean[] changedTiles = new boolean[0];
+    private boolean[] presentedTiles = new boolean[0];
+    // Only used by the presenter: the tiles of the frame before and the ones to draw
+    private boolean[] previousTiles = new boolean[0];
+    private boolean[] drawnTiles = new boolean[0];
+    // Whether or not the next frame needs to be drawn entirely, as the previous content is lost
+    private boolean redrawAll = true;
+
+    SoftwareWindow() {
+        frame = new JFrame("Caustic");
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.add(this, BorderLayout.CENTER);
+        frame.setContentPane(panel);
+        frame.setResizable(false);
+        frame.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        frame.addWindowListener(new WindowCloseListener());
+    }
+
+    void setWindowResizable(boolean resizable) {
+        frame.setResizable(resizable);
+    }
+
+    boolean isWindowResizable() {
+        return frame.isResizable();
+    }
+
+    void setWindowTitle(String title) {
+        frame.setTitle(title);
+    }
+
+    String getWindowTitle() {
+        return frame.getTitle();
+    }
+
+    boolean isCloseRequested() {
+        final boolean oldCloseRequested = closeRequested;
+        closeRequested = false;
+        return oldCloseRequested;
+    }
+
+    void init(int width, int height) {
+        updateSize(width, height);
+        frame.setVisible(true);
+        createBufferStrategy(3);
+    }
+
+    void updateSize(int width, int height) {
+        // The images and tiles are about to change, so they can't be in use
+        awaitPresentation();
+        final Dimension size = new Dimension(width * scale, height * scale);
+        setSize(size);
+        setPreferredSize(size);
+        setMinimumSize(size);
+        setMaximumSize(size);
+        // The buffers will be reallocated, so drop the old images
+        images[0] = images[1] = null;
+        imagePixels[0] = imagePixels[1] = null;
+        tilesX = width + (1 << TILE_SHIFT) - 1 >> TILE_SHIFT;
+        tilesY = height + (1 << TILE_SHIFT) - 1 >> TILE_SHIFT;
+        final int tileCount = tilesX * tilesY;
+        changedTiles = new boolean[tileCount];
+        presentedTiles = new boolean[tileCount];
+        previousTiles = new boolean[tileCount];
+        drawnTiles = new boolean[tileCount];
+        redrawAll = true;
+        frame.pack();
+        if (!frame.isResizable()) {
+            frame.setLocationRelativeTo(null);
+        }
+    }
+
+    /**
+     * Presents the pixels asynchronously. The last pixels are those of the previous frame, which are used to find the changed tiles. When this returns, the previous frame has been presented, so
+     * the last pixels can be rendered to again, but the new pixels must not be modified until the next call.
+     *
+     * @param pixels The pixels to present
+     * @param lastPixels The pixels of the previous frame
+     * @param width The width of the frame
+     * @param height The height of the frame
+     */
+    void present(int[] pixels, int[] lastPixels, int width, int height) {
+        // This only reads the pixels, so it can be done while the previous frame is still being presented
+        findChangedTiles(pixels, lastPixels, width, height, tilesX, changedTiles);
+        awaitPresentation();
+        // The presenter is idle, so the tiles can be handed over
+        System.arraycopy(changedTiles, 0, presentedTiles, 0, changedTiles.length);
+        presentation = getPresenter().submit(new Presentation(pixels, width, height));
+    }
+
+    void dispose() {
+        awaitPresentation();
+        if (presenter != null) {
+            presenter.shutdown();
+            presenter = null;
+        }
+        frame.dispose();
+        images[0] = images[1] = null;
+        imagePixels[0] = imagePixels[1] = null;
+    }
+
+    // Flags the tiles of the grid, which is tiles wide, where the pixels differ from the last ones
+    static void findChangedTiles(int[] pixels, int[] lastPixels, int width, int height, int tilesX, boolean[] changedTiles) {
+        Arrays.fill(changedTiles, false);
+        for (int y = 0; y < height; y++) {
+            final int tileRow = (y >> TILE_SHIFT) * tilesX;
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                // Skip the tiles already known to have changed
+                if (changedTiles[tileRow + tileX]) {
+                    continue;
+                }
+                final int start = (tileX << TILE_SHIFT) + y * width;
+                final int end = Math.min(tileX + 1 << TILE_SHIFT, width) + y * width;
+                for (int i = start; i < end; i++) {
+                    if (pixels[i] != lastPixels[i]) {
+                        changedTiles[tileRow + tileX] = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void awaitPresentation() {
+        if (presentation == null) {
+            return;
+        }
+        try {
+            presentation.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Failed to present the frame", exception.getCause());
+        } finally {
+            presentation = null;
+        }
+    }
+
+    private ExecutorService getPresenter() {
+        if (presenter == null) {
+            presenter = Executors.newSingleThreadExecutor(new PresenterThreadFactory());
+        }
+        return presenter;
+    }
+
+    private void draw(int[] pixels, int width, int height) {
+        final BufferStrategy bufferStrategy = getBufferStrategy();
+        final BufferCapabilities capabilities = bufferStrategy.getCapabilities();
+        final FlipContents flipContents = capabilities.getFlipContents();
+        // After a flip the back buffer might not contain any previous frame, in which case all of it must be drawn
+        boolean drawAll = redrawAll || capabilities.isPageFlipping() && flipContents != FlipContents.COPIED && flipContents != FlipContents.PRIOR;
+        findDrawnTiles(presentedTiles, previousTiles, drawnTiles);
+        final BufferedImage image = getImage(pixels, width, height);
+        do {
+            do {
+                final Graphics graphics = bufferStrategy.getDrawGraphics();
+                if (drawAll) {
+                    graphics.drawImage(image, 0, 0, width * scale, height * scale, null);
+                } else {
+                    drawTiles(graphics, image, width, height);
+                }
+                graphics.dispose();
+                // Drawing again means the contents were lost, so all of it needs to be drawn
+                drawAll = true;
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+        redrawAll = false;
+    }
+
+    // Flags the tiles to draw, which are the ones presented and the ones of the frame before, then makes the presented ones the previous ones
+    static void findDrawnTiles(boolean[] presentedTiles, boolean[] previousTiles, boolean[] drawnTiles) {
+        // The back buffer can hold the frame before the last one, so the tiles changed in the last frame are drawn too
+        for (int i = 0; i < drawnTiles.length; i++) {
+            drawnTiles[i] = presentedTiles[i] || previousTiles[i];
+        }
+        System.arraycopy(presentedTiles, 0, previousTiles, 0, presentedTiles.length);
+    }
+
+    private void drawTiles(Graphics graphics, BufferedImage image, int width, int height) {
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            final int tileRow = tileY * tilesX;
+            int tileX = 0;
+            while (tileX < tilesX) {
+                if (!drawnTiles[tileRow + tileX]) {
+                    tileX++;
+                    continue;
+                }
+                // Draw the consecutive tiles of the row at once
+                final int startX = tileX << TILE_SHIFT;
+                while (tileX < tilesX && drawnTiles[tileRow + tileX]) {
+                    tileX++;
+                }
+                final int endX = Math.min(tileX << TILE_SHIFT, width);
+                final int startY = tileY << TILE_SHIFT;
+                final int endY = Math.min(tileY + 1 << TILE_SHIFT, height);
+                graphics.drawImage(image, startX * scale, startY * scale, endX * scale, endY * scale, startX, startY, endX, endY, null);
+            }
+        }
+    }
+
+    private BufferedImage getImage(int[] pixels, int width, int height) {
+        for (int i = 0; i < images.length; i++) {
+            if (imagePixels[i] == pixels) {
+                return images[i];
+            }
+        }
+        // Wrap the buffer in an image without copying it
+        final int i = imagePixels[0] == null ? 0 : 1;
+        final WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length), width, height, width, COLOR_MODEL.getMasks(), new Point());
+        images[i] = new BufferedImage(COLOR_MODEL, raster, false, null);
+        imagePixels[i] = pixels;
+        return images[i];
+    }
+
+    private class Presentation implements Runnable {
+        private final int[] pixels;
+        private final int width, height;
+
+        private Presentation(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            draw(pixels, width, height);
+        }
+    }
+
+    private static class PresenterThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "Caustic presenter");
+            // Don't keep the application alive if the context isn't destroyed
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private class WindowCloseListener extends WindowAdapter {
+        @Override
+        public void windowClosing(WindowEvent event) {
+            closeRequested = true;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+
+/**
+ * A level of detail of a software texture, with the texels converted to a single format when uploaded. The texels are stored linearly by rows, or in 4x4 tiles which keep texels close in two
+ * dimensions close in memory, so filtering, rotated and minified sampling stays in the cache.
+ */
+abstract class TextureLevel {
+    // Tile size, 4x4 here 2^2
+    private static final int TILE_SHIFT = 2;
+    private static final int TILE_MASK = (1 << TILE_SHIFT) - 1;
+    private final int width, height;
+    private final boolean tiled;
+    private final int tilesX;
+
+    private TextureLevel(int width, int height, boolean tiled) {
+        this.width = width;
+        this.height = height;
+        this.tiled = tiled;
+        tilesX = width + TILE_MASK >> TILE_SHIFT;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean isTiled() {
+        return tiled;
+    }
+
+    // Returns the number of texels in the storage, including the padding of the tiles
+    int getStorageSize() {
+        if (tiled) {
+            return tilesX * (height + TILE_MASK >> TILE_SHIFT) << TILE_SHIFT * 2;
+        }
+        return width * height;
+    }
+
+    // Returns the storage index of the texel, which must be in the level
+    int index(int x, int y) {
+        if (tiled) {
+            return (x >> TILE_SHIFT) + (y >> TILE_SHIFT) * tilesX << TILE_SHIFT * 2 | (y & TILE_MASK) << TILE_SHIFT | x & TILE_MASK;
+        }
+        return x + y * width;
+    }
+
+    // Adds the RGBA components of the texel at the storage index, multiplied by the weight, to the destination
+    abstract void add(int index, float weight, float[] destination);
+
+    // Returns the texels packed as ARGB ints, in the same format as the colour buffers, or null if they aren't
+    int[] getPackedTexels() {
+        return null;
+    }
+
+    // Returns the texels as depths, in the same format as the depth buffers, or null if they aren't
+    short[] getDepthTexels() {
+        return null;
+    }
+
+    // Returns the RGBA float texels of the level, stored linearly by rows
+    float[] toFloats() {
+        final float[] texels = new float[width * height * 4];
+        final float[] texel = new float[4];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                texel[0] = texel[1] = texel[2] = texel[3] = 0;
+                add(index(x, y), 1, texel);
+                System.arraycopy(texel, 0, texels, (x + y * width) * 4, 4);
+            }
+        }
+        return texels;
+    }
+
+    /**
+     * Creates a level from RGBA float texels, stored linearly by rows. Depth texels use the red component and are stored like the depth buffers. Other texels are packed into ints if all the
+     * components of the format fit in 8 bits, else they are kept as floats.
+     *
+     * @param texels The RGBA float texels
+     * @param width The width of the level
+     * @param height The height of the level
+     * @param format The format of the texture
+     * @param tiled Whether or not to store the texels in tiles
+     * @return The level
+     */
+    static TextureLevel create(float[] texels, int width, int height, InternalFormat format, boolean tiled) {
+        final TextureLevel level;
+        if (format.hasDepth()) {
+            level = new DepthLevel(width, height, tiled);
+        } else if (format.getComponentType().getByteSize() == 1) {
+            // Components of 8 bits or less can be packed in an int, without losing precision
+            level = new PackedLevel(width, height, tiled);
+        } else {
+            level = new FloatLevel(width, height, tiled);
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = (x + y * width) * 4;
+                level.set(level.index(x, y), texels[i], texels[i + 1], texels[i + 2], texels[i + 3]);
+            }
+        }
+        return level;
+    }
+
+    abstract void set(int index, float r, float g, float b, float a);
+
+    private static class PackedLevel extends TextureLevel {
+        private static final float INVERSE_BYTE_RANGE = 1 / 255f;
+        private final int[] texels;
+
+        private PackedLevel(int width, int height, boolean tiled) {
+            super(width, height, tiled);
+            texels = new int[getStorageSize()];
+        }
+
+        @Override
+        void set(int index, float r, float g, float b, float a) {
+            texels[index] = toByte(a) << 24 | toByte(r) << 16 | toByte(g) << 8 | toByte(b);
+        }
+
+        // Rounds instead of truncating, so decoded bytes convert back to the same value
+        private static int toByte(float f) {
+            return (int) (SoftwareUtil.clamp(f, 0, 1) * 255 + 0.5f);
+        }
+
+        @Override
+        void add(int index, float weight, float[] destination) {
+            final int texel = texels[index];
+            weight *= INVERSE_BYTE_RANGE;
+            destination[0] += (texel >> 16 & 0xFF) * weight;
+            destination[1] += (texel >> 8 & 0xFF) * weight;
+            destination[2] += (texel & 0xFF) * weight;
+            destination[3] += (texel >>> 24) * weight;
+        }
+
+        @Override
+        int[] getPackedTexels() {
+            return texels;
+        }
+    }
+
+    private static class FloatLevel extends TextureLevel {
+        private final float[] texels;
+
+        private FloatLevel(int width, int height, boolean tiled) {
+            super(width, height, tiled);
+            texels = new float[getStorageSize() * 4];
+        }
+
+        @Override
+        void set(int index, float r, float g, float b, float a) {
+            index *= 4;
+            texels[index] = r;
+            texels[index + 1] = g;
+            texels[index + 2] = b;
+            texels[index + 3] = a;
+        }
+
+        @Override
+        void add(int index, float weight, float[] destination) {
+            index *= 4;
+            destination[0] += texels[index] * weight;
+            destination[1] += texels[index + 1] * weight;
+            destination[2] += texels[index + 2] * weight;
+            destination[3] += texels[index + 3] * weight;
+        }
+    }
+
+    private static class DepthLevel extends TextureLevel {
+        private static final float INVERSE_SHORT_RANGE = 1f / (Short.MAX_VALUE - Short.MIN_VALUE);
+        private final short[] texels;
+
+        private DepthLevel(int width, int height, boolean tiled) {
+            super(width, height, tiled);
+            texels = new short[getStorageSize()];
+        }
+
+        @Override
+        void set(int index, float r, float g, float b, float a) {
+            texels[index] = SoftwareUtil.denormalizeToShort(r);
+        }
+
+        @Override
+        void add(int index, float weight, float[] destination) {
+            // Like OpenGL 2.0, the depth is sampled as luminance
+            final float depth = (texels[index] - Short.MIN_VALUE) * INVERSE_SHORT_RANGE * weight;
+            destination[0] += depth;
+            destination[1] += depth;
+            destination[2] += depth;
+            destination[3] += weight;
+        }
+
+        @Override
+        short[] getDepthTexels() {
+            return texels;
+        }
+    }
+}
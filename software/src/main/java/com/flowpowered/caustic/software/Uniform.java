@@ -29,7 +29,8 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- *
+ * Marks a field of a {@link ShaderImplementation} as a uniform, set by name through the program. Values of another type are cast or unboxed to the field type. Uniform fields can't be final, the
+ * implementation is rejected when the shader is compiled otherwise.
  */
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
@@ -0,0 +1,123 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.util.Arrays;
+
+/**
+ * A post-transform cache of the vertex shader outputs, keyed by vertex index, so that vertices shared by many primitives are only shaded once per draw. Meshes with few enough vertices get a slot for
+ * every vertex, larger ones use a small FIFO like hardware caches do.
+ */
+class VertexCache {
+    // The maximum vertex count for which every vertex gets a slot
+    private static final int MAX_FULL_VERTEX_COUNT = 1 << 16;
+    // The number of entries in the FIFO used for larger meshes
+    private static final int FIFO_SIZE = 32;
+    private boolean full;
+    private int vertexSize;
+    private int[] data = new int[0];
+    // For the full cache, the draw stamp of each vertex slot; for the FIFO, the vertex index of each entry
+    private int[] tags = new int[0];
+    private int stamp = 0;
+    private int next;
+    private int hits, misses;
+
+    void begin(int vertexCount, int vertexSize) {
+        this.vertexSize = vertexSize;
+        hits = 0;
+        misses = 0;
+        full = vertexCount <= MAX_FULL_VERTEX_COUNT;
+        final int entries = full ? vertexCount : FIFO_SIZE;
+        if (data.length < entries * vertexSize) {
+            data = new int[entries * vertexSize];
+        }
+        if (full) {
+            // Slots are invalidated by changing the stamp, so the tags only need clearing when it wraps around
+            if (tags.length < entries || ++stamp == 0) {
+                tags = new int[Math.max(entries, tags.length)];
+                stamp = 1;
+            }
+        } else {
+            if (tags.length < entries) {
+                tags = new int[entries];
+            }
+            Arrays.fill(tags, 0, entries, -1);
+            next = 0;
+        }
+    }
+
+    boolean read(int vertex, ShaderBuffer out) {
+        final int entry = find(vertex);
+        if (entry < 0) {
+            misses++;
+            return false;
+        }
+        hits++;
+        // Copy the cached outputs to the buffer, as if the shader wrote them
+        out.clear();
+        final int start = entry * vertexSize;
+        for (int i = 0; i < vertexSize; i++) {
+            out.writeRaw(data[start + i]);
+        }
+        out.flip();
+        return true;
+    }
+
+    void write(int vertex, ShaderBuffer out) {
+        final int entry;
+        if (full) {
+            entry = vertex;
+            tags[entry] = stamp;
+        } else {
+            // Replace the oldest entry
+            entry = next;
+            tags[entry] = vertex;
+            next = (next + 1) % FIFO_SIZE;
+        }
+        final int start = entry * vertexSize;
+        for (int i = 0; i < vertexSize; i++) {
+            data[start + i] = out.readRaw(i);
+        }
+    }
+
+    int getHits() {
+        return hits;
+    }
+
+    int getMisses() {
+        return misses;
+    }
+
+    private int find(int vertex) {
+        if (full) {
+            return tags[vertex] == stamp ? vertex : -1;
+        }
+        for (int i = 0; i < FIFO_SIZE; i++) {
+            if (tags[i] == vertex) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.api;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector2i;
+
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Texture;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.software.HeadlessSoftwareContext;
+import com.flowpowered.caustic.software.SoftwareContext;
+
+// In the API package for the package private sort keys, and in this module for the implementations of the resources
+public class MaterialTest {
+    private SoftwareContext context;
+
+    @Before
+    public void createContext() {
+        context = new HeadlessSoftwareContext();
+        context.setWindowSize(new Vector2i(16, 16));
+        context.create();
+    }
+
+    @After
+    public void destroyContext() {
+        context.destroy();
+    }
+
+    @Test
+    public void testTexturesKey() {
+        final Program program = context.newProgram();
+        program.create();
+        final Texture first = newTexture(), second = newTexture();
+        final Material empty = new Material(program);
+        Assert.assertEquals(0, empty.getTexturesKey());
+        final Material material = new Material(program);
+        material.addTexture(0, first);
+        material.addTexture(1, second);
+        // The same textures in the other units are a different set
+        final Material swapped = new Material(program);
+        swapped.addTexture(0, second);
+        swapped.addTexture(1, first);
+        Assert.assertNotEquals(material.getTexturesKey(), swapped.getTexturesKey());
+        Assert.assertNotEquals(0, material.getTexturesKey());
+        Assert.assertNotEquals(0, swapped.getTexturesKey());
+        // The same set added in another order has the same key
+        final Material same = new Material(program);
+        same.addTexture(1, second);
+        same.addTexture(0, first);
+        Assert.assertEquals(material.getTexturesKey(), same.getTexturesKey());
+        // Replacing and removing textures changes the key
+        same.addTexture(1, first);
+        Assert.assertNotEquals(material.getTexturesKey(), same.getTexturesKey());
+        same.addTexture(1, second);
+        Assert.assertEquals(material.getTexturesKey(), same.getTexturesKey());
+        same.removeTexture(0);
+        same.removeTexture(1);
+        Assert.assertEquals(0, same.getTexturesKey());
+    }
+
+    @Test
+    public void testSortIDs() {
+        // Sequential, so they don't collide in the low bits of the sort keys like the identity hashes could
+        final VertexArray first = context.newVertexArray(), second = context.newVertexArray();
+        Assert.assertEquals(first.getSortID() + 1, second.getSortID());
+        final Texture third = newTexture(), fourth = newTexture();
+        Assert.assertEquals(third.getSortID() + 1, fourth.getSortID());
+    }
+
+    private Texture newTexture() {
+        final Texture texture = context.newTexture();
+        texture.create();
+        return texture;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
+
+public class BlenderTest {
+    // The function pairs with a packed fast path
+    private static final BlendFunction[][] FAST_PATHS = {
+            {BlendFunction.GL_ONE, BlendFunction.GL_ZERO},
+            {BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE_MINUS_SRC_ALPHA},
+            {BlendFunction.GL_ONE, BlendFunction.GL_ONE},
+            {BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE}
+    };
+    // Values at the ends of the channel range, where rounding and saturation go wrong first
+    private static final int[] EDGE_CHANNELS = {0, 1, 127, 128, 254, 255};
+
+    @Test
+    public void testFastPathsMatchGeneric() {
+        final Random random = new Random(42);
+        for (BlendFunction[] functions : FAST_PATHS) {
+            final Blender blender = new Blender();
+            blender.setFunctions(functions[0], functions[1]);
+            for (int i = 0; i < 100000; i++) {
+                assertBlend(blender, random.nextInt(), random.nextInt());
+            }
+            for (int i = 0; i < 10000; i++) {
+                assertBlend(blender, randomEdgeColor(random), randomEdgeColor(random));
+            }
+        }
+    }
+
+    private static int randomEdgeColor(Random random) {
+        int color = 0;
+        for (int channel = 0; channel < 4; channel++) {
+            color = color << 8 | EDGE_CHANNELS[random.nextInt(EDGE_CHANNELS.length)];
+        }
+        return color;
+    }
+
+    private static void assertBlend(Blender blender, int src, int dst) {
+        final int fast = blender.blend(src, dst);
+        final int generic = blender.blendGeneric(src, dst);
+        for (int shift = 0; shift < 32; shift += 8) {
+            final int difference = Math.abs((fast >>> shift & 0xFF) - (generic >>> shift & 0xFF));
+            if (difference > 1) {
+                Assert.fail(String.format("Blending %08X over %08X gave %08X instead of %08X", src, dst, fast, generic));
+            }
+        }
+    }
+}
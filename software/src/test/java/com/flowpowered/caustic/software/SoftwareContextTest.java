@@ -0,0 +1,160 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+public class SoftwareContextTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 32;
+
+    @Test
+    public void testReadFrameAfterNextDraw() {
+        final SoftwareContext context = SoftwareTestUtil.createContext(WIDTH, HEIGHT);
+        try {
+            final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+            final VertexArray near = SoftwareTestUtil.createTriangles(context, new float[]{-1, -1, -0.5f, 1, -1, -0.5f, -1, 1, -0.5f}, new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+            final VertexArray far = SoftwareTestUtil.createTriangles(context, new float[]{1, 1, 0.5f, 1, -1, 0.5f, -1, 1, 0.5f}, new float[]{0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1});
+            final Rectangle area = new Rectangle(WIDTH, HEIGHT);
+            context.setClearColor(new Vector4f(0, 0, 1, 1));
+            context.enableCapability(Capability.DEPTH_TEST);
+            context.clearCurrentBuffer();
+            program.use();
+            near.draw();
+            context.updateDisplay();
+            final byte[] colors = read(context.readFrame(area, InternalFormat.RGBA8));
+            final byte[] depths = read(context.readFrame(area, InternalFormat.DEPTH_COMPONENT16));
+            // Start drawing the next frame, with different colors and depths
+            context.clearCurrentBuffer();
+            far.draw();
+            Assert.assertArrayEquals(colors, read(context.readFrame(area, InternalFormat.RGBA8)));
+            Assert.assertArrayEquals(depths, read(context.readFrame(area, InternalFormat.DEPTH_COMPONENT16)));
+            // Once displayed, the new frame is read
+            context.updateDisplay();
+            Assert.assertFalse(Arrays.equals(depths, read(context.readFrame(area, InternalFormat.DEPTH_COMPONENT16))));
+        } finally {
+            context.destroy();
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        final SoftwareContext context = SoftwareTestUtil.createContext(WIDTH, HEIGHT);
+        try {
+            final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+            final float[] colors = {1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1};
+            final VertexArray near = SoftwareTestUtil.createTriangles(context, new float[]{-1, -1, -0.5f, 1, -1, -0.5f, -1, 1, -0.5f}, colors);
+            final VertexArray far = SoftwareTestUtil.createTriangles(context, new float[]{-1, -1, 0.5f, 1, -1, 0.5f, 1, 1, 0.5f}, colors);
+            final VertexArray back = SoftwareTestUtil.createTriangles(context, new float[]{-1, -1, 0, -1, 1, 0, 1, -1, 0}, colors);
+            final VertexArray crossing = SoftwareTestUtil.createTriangles(context, new float[]{-1, -1, -2, 1, -1, 0, -1, 1, 0}, colors);
+            // Disabled by default
+            Assert.assertNull(context.getDrawStatistics());
+            Assert.assertNull(context.getFrameStatistics());
+            context.setStatisticsEnabled(true);
+            context.enableCapability(Capability.DEPTH_TEST);
+            context.clearCurrentBuffer();
+            program.use();
+            // The far triangle alone, all its fragments are shaded and written
+            far.draw();
+            final SoftwareStatistics draw = context.getDrawStatistics();
+            Assert.assertEquals(3, draw.getVerticesShaded());
+            Assert.assertEquals(1, draw.getTrianglesSubmitted());
+            Assert.assertEquals(0, draw.getTrianglesCulled());
+            Assert.assertEquals(0, draw.getTrianglesClipped());
+            final long farFragments = draw.getFragmentsWritten();
+            Assert.assertTrue(farFragments > WIDTH * HEIGHT / 3);
+            Assert.assertEquals(farFragments, draw.getFragmentsShaded());
+            Assert.assertEquals(0, draw.getFragmentsDepthFailed());
+            Assert.assertEquals(WIDTH * HEIGHT, draw.getPixelCount());
+            final long[] total = getCounters(draw);
+            // The near triangle in front of it
+            near.draw();
+            final long nearFragments = context.getDrawStatistics().getFragmentsWritten();
+            addCounters(total, context.getDrawStatistics());
+            context.updateDisplay();
+            Assert.assertArrayEquals(total, getCounters(context.getFrameStatistics()));
+            Assert.assertEquals((float) (farFragments + nearFragments) / (WIDTH * HEIGHT), context.getFrameStatistics().getOverdraw(), 1e-6f);
+            // Then behind it, where the overlap fails the depth test without being shaded, by fragment or by whole blocks
+            context.clearCurrentBuffer();
+            near.draw();
+            far.draw();
+            Assert.assertTrue(draw.getFragmentsWritten() < farFragments);
+            Assert.assertTrue(draw.getFragmentsWritten() + draw.getFragmentsDepthFailed() <= farFragments);
+            Assert.assertTrue(draw.getFragmentsDepthFailed() > 0);
+            Assert.assertTrue(draw.getBlocksRejected() > 0);
+            Assert.assertTrue(draw.getBlocksRejected() < draw.getBlocksTouched());
+            Assert.assertEquals(draw.getFragmentsWritten(), draw.getFragmentsShaded());
+            // Back faces are culled
+            context.enableCapability(Capability.CULL_FACE);
+            back.draw();
+            Assert.assertEquals(1, draw.getTrianglesSubmitted());
+            Assert.assertEquals(1, draw.getTrianglesCulled());
+            Assert.assertEquals(0, draw.getFragmentsShaded());
+            // Triangles crossing the near plane are clipped
+            crossing.draw();
+            Assert.assertEquals(1, draw.getTrianglesClipped());
+            Assert.assertTrue(draw.getFragmentsWritten() > 0);
+            context.updateDisplay();
+            // Each frame only counts its own draws
+            Assert.assertEquals(12, context.getFrameStatistics().getVerticesShaded());
+            Assert.assertEquals(4, context.getFrameStatistics().getTrianglesSubmitted());
+            context.setStatisticsEnabled(false);
+            Assert.assertNull(context.getDrawStatistics());
+        } finally {
+            context.destroy();
+        }
+    }
+
+    private static long[] getCounters(SoftwareStatistics statistics) {
+        return new long[]{
+                statistics.getVerticesShaded(), statistics.getTrianglesSubmitted(), statistics.getTrianglesCulled(), statistics.getTrianglesClipped(), statistics.getBlocksTouched(),
+                statistics.getBlocksRejected(), statistics.getFragmentsShaded(), statistics.getFragmentsDepthFailed(), statistics.getFragmentsWritten()
+        };
+    }
+
+    private static void addCounters(long[] total, SoftwareStatistics statistics) {
+        final long[] counters = getCounters(statistics);
+        for (int i = 0; i < total.length; i++) {
+            total[i] += counters[i];
+        }
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.FrameBuffer;
+import com.flowpowered.caustic.api.gl.FrameBuffer.AttachmentPoint;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Texture.FilterMode;
+import com.flowpowered.caustic.api.gl.Texture.Format;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+public class SoftwareFrameBufferTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 16;
+
+    @Test
+    public void testAttachmentOrientation() {
+        final SoftwareContext context = SoftwareTestUtil.createContext(WIDTH, HEIGHT);
+        try {
+            final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+            // A red rectangle over the bottom half of the target, below y = 0 in clip space
+            final VertexArray bottom = SoftwareTestUtil.createTriangles(context,
+                    new float[]{-1, -1, 0, 1, -1, 0, -1, 0, 0, -1, 0, 0, 1, -1, 0, 1, 0, 0},
+                    new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+            context.setClearColor(new Vector4f(0, 0, 1, 1));
+            // Render to a texture
+            final SoftwareTexture texture = (SoftwareTexture) context.newTexture();
+            texture.create();
+            texture.setFormat(Format.RGBA, null);
+            texture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+            texture.setImageData(null, WIDTH, HEIGHT);
+            final FrameBuffer frameBuffer = context.newFrameBuffer();
+            frameBuffer.create();
+            frameBuffer.attach(AttachmentPoint.COLOR0, texture);
+            Assert.assertTrue(frameBuffer.isComplete());
+            frameBuffer.bind();
+            context.clearCurrentBuffer();
+            program.use();
+            bottom.draw();
+            frameBuffer.unbind();
+            // Render the same to the window
+            context.clearCurrentBuffer();
+            bottom.draw();
+            context.updateDisplay();
+            // Both are read from the bottom row up, like in OpenGL
+            final ByteBuffer textureData = texture.getImageData(InternalFormat.RGBA8);
+            final ByteBuffer frameData = context.readFrame(new Rectangle(WIDTH, HEIGHT), InternalFormat.RGBA8);
+            Assert.assertEquals(WIDTH * HEIGHT * 4, textureData.remaining());
+            Assert.assertEquals(textureData, frameData);
+            // The first rows are the red bottom ones, the last the cleared top one
+            Assert.assertEquals((byte) 0xFF, textureData.get(WIDTH * 4));
+            Assert.assertEquals(0, textureData.get(WIDTH * 4 + 2));
+            Assert.assertEquals(0, textureData.get((HEIGHT - 1) * WIDTH * 4));
+            Assert.assertEquals((byte) 0xFF, textureData.get((HEIGHT - 1) * WIDTH * 4 + 2));
+            // Sampling at the bottom, where t is zero, also gives the red
+            final float[] color = new float[4];
+            texture.sample(0.5f, 0.1f, color);
+            Assert.assertEquals(1, color[0], 0);
+            texture.sample(0.5f, 0.9f, color);
+            Assert.assertEquals(0, color[0], 0);
+        } finally {
+            context.destroy();
+        }
+    }
+
+    @Test
+    public void testStorageChangeWhileBound() {
+        final SoftwareContext context = SoftwareTestUtil.createContext(WIDTH, HEIGHT);
+        try {
+            final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+            final VertexArray bottom = SoftwareTestUtil.createTriangles(context,
+                    new float[]{-1, -1, 0, 1, -1, 0, -1, 0, 0, -1, 0, 0, 1, -1, 0, 1, 0, 0},
+                    new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+            final SoftwareTexture texture = (SoftwareTexture) context.newTexture();
+            texture.create();
+            texture.setFormat(Format.RGBA, null);
+            texture.setFilters(FilterMode.NEAREST, FilterMode.NEAREST);
+            texture.setImageData(null, WIDTH, HEIGHT);
+            final FrameBuffer frameBuffer = context.newFrameBuffer();
+            frameBuffer.create();
+            frameBuffer.attach(AttachmentPoint.COLOR0, texture);
+            frameBuffer.bind();
+            program.use();
+            // Replacing the image data while bound renders to the new storage, from the second row up since the last row of the view port is missed
+            texture.setImageData(null, WIDTH, HEIGHT);
+            bottom.draw();
+            frameBuffer.unbind();
+            Assert.assertEquals((byte) 0xFF, texture.getImageData(InternalFormat.RGBA8).get(WIDTH * 4));
+            // As does rebuilding the levels for a filter that needs mipmaps
+            frameBuffer.bind();
+            texture.setImageData(null, WIDTH, HEIGHT);
+            texture.setFilters(FilterMode.LINEAR_MIPMAP_LINEAR, FilterMode.LINEAR);
+            bottom.draw();
+            frameBuffer.unbind();
+            Assert.assertEquals((byte) 0xFF, texture.getImageData(InternalFormat.RGBA8).get(WIDTH * 4));
+            // Resizing it while bound renders to the new size
+            frameBuffer.bind();
+            texture.setImageData(null, WIDTH * 2, HEIGHT * 2);
+            context.setViewPort(new Rectangle(WIDTH * 2, HEIGHT * 2));
+            bottom.draw();
+            frameBuffer.unbind();
+            final ByteBuffer data = texture.getImageData(InternalFormat.RGBA8);
+            Assert.assertEquals(WIDTH * HEIGHT * 16, data.remaining());
+            Assert.assertEquals((byte) 0xFF, data.get((WIDTH * 2 + WIDTH) * 4));
+            Assert.assertEquals(0, data.get((WIDTH * 2 * (HEIGHT * 2 - 1) + WIDTH) * 4));
+        } finally {
+            context.destroy();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.util.Random;
+
+import gnu.trove.list.array.TFloatArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.Camera;
+import com.flowpowered.caustic.api.Material;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.OcclusionQuery;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.model.Model;
+import com.flowpowered.caustic.api.util.OcclusionCuller;
+
+public class SoftwareOcclusionQueryTest {
+    private static final int SIZE = 64;
+    private SoftwareContext context;
+    private Camera camera;
+    private Program program;
+    private Material material;
+
+    /**
+     * Transforms the world space positions by the view projection matrix, and passes the colors through.
+     */
+    public static class TransformVertexShader extends ShaderImplementation {
+        @Uniform
+        private Matrix4f viewProjection;
+
+        public TransformVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 4)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            final Vector4f position = viewProjection.transform(in.readFloat(0), in.readFloat(1), in.readFloat(2), 1);
+            in.skip();
+            out.writeFloat4(position.getX(), position.getY(), position.getZ(), position.getW());
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), in.readFloat(3));
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    @Before
+    public void createContext() {
+        context = SoftwareTestUtil.createContext(SIZE, SIZE);
+        // At the origin, looking down the negative z axis, so the view is 10 wide at a distance of 5
+        camera = Camera.createPerspective(90, SIZE, SIZE, 0.1f, 100);
+        program = SoftwareTestUtil.createProgram(context, TransformVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        program.use();
+        program.setUniform("viewProjection", camera.getProjectionMatrix().mul(camera.getViewMatrix()));
+        material = new Material(program);
+    }
+
+    @After
+    public void destroyContext() {
+        context.destroy();
+    }
+
+    @Test
+    public void testQueryState() {
+        final OcclusionQuery query = context.newOcclusionQuery();
+        query.create();
+        final OcclusionQuery other = context.newOcclusionQuery();
+        other.create();
+        query.begin();
+        Assert.assertFalse(query.isResultAvailable());
+        try {
+            query.getResult();
+            Assert.fail("Got the result of an active query");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        // Only one query can be active at a time
+        try {
+            other.begin();
+            Assert.fail("Began a query while another is active");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+        query.end();
+        Assert.assertTrue(query.isResultAvailable());
+        Assert.assertEquals(0, query.getResult());
+        try {
+            query.end();
+            Assert.fail("Ended an inactive query");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testQuerySamples() {
+        context.setStatisticsEnabled(true);
+        context.enableCapability(Capability.DEPTH_TEST);
+        context.clearCurrentBuffer();
+        final OcclusionQuery query = context.newOcclusionQuery();
+        query.create();
+        // The samples are the fragments that pass the depth test, which is all of them for the first box
+        final VertexArray near = createBox(new Vector3f(-1, -1, -4), new Vector3f(1, 1, -3));
+        query.begin();
+        near.draw();
+        query.end();
+        Assert.assertTrue(query.getResult() > 0);
+        Assert.assertEquals(context.getDrawStatistics().getFragmentsWritten(), query.getResult());
+        // Samples add up over the draws, and restart at the next query
+        query.begin();
+        createBox(new Vector3f(2, -1, -4), new Vector3f(3, 1, -3)).draw();
+        final long rightSamples = context.getDrawStatistics().getFragmentsWritten();
+        createBox(new Vector3f(-3, -1, -4), new Vector3f(-2, 1, -3)).draw();
+        final long leftSamples = context.getDrawStatistics().getFragmentsWritten();
+        query.end();
+        Assert.assertTrue(rightSamples > 0);
+        Assert.assertTrue(leftSamples > 0);
+        Assert.assertEquals(rightSamples + leftSamples, query.getResult());
+        // A box hidden behind the first one has no samples
+        query.begin();
+        createBox(new Vector3f(-0.5f, -0.5f, -8), new Vector3f(0.5f, 0.5f, -7)).draw();
+        query.end();
+        Assert.assertEquals(0, query.getResult());
+    }
+
+    @Test
+    public void testCuller() {
+        final OcclusionCuller culler = new OcclusionCuller(16, 16);
+        culler.begin(camera);
+        // A wall in front of the camera, as wide as 4 of the 10 at its distance
+        final Model wall = createModel(new Vector3f(-2, -2, -5.1f), new Vector3f(2, 2, -5));
+        wall.setOccluder(true);
+        culler.addOccluder(wall);
+        // Models that aren't occluders don't hide anything
+        final Model box = createModel(new Vector3f(-0.5f, -0.5f, -3), new Vector3f(0.5f, 0.5f, -2));
+        culler.addOccluder(box);
+        Assert.assertTrue(culler.isVisible(box));
+        // Behind the wall, and partly past its edge, which at twice the distance is at 4
+        Assert.assertFalse(culler.isVisible(createModel(new Vector3f(-0.5f, -0.5f, -11), new Vector3f(0.5f, 0.5f, -10))));
+        Assert.assertTrue(culler.isVisible(createModel(new Vector3f(1.5f, -0.5f, -11), new Vector3f(6, 0.5f, -10))));
+        // Behind the camera, or crossing its plane, the models can't be tested so they are kept
+        Assert.assertTrue(culler.isVisible(createModel(new Vector3f(-0.5f, -0.5f, 2), new Vector3f(0.5f, 0.5f, 3))));
+        Assert.assertTrue(culler.isVisible(createModel(new Vector3f(-0.5f, -0.5f, -1), new Vector3f(0.5f, 0.5f, 1))));
+        // Occluders behind the camera are ignored too
+        final Model behind = createModel(new Vector3f(-5, -5, 1), new Vector3f(5, 5, 2));
+        behind.setOccluder(true);
+        culler.addOccluder(behind);
+        Assert.assertTrue(culler.isVisible(box));
+    }
+
+    @Test
+    public void testCullerIsConservative() {
+        // Walls at different depths, rendered and added to the culler
+        final OcclusionCuller culler = new OcclusionCuller(16, 16);
+        culler.begin(camera);
+        context.enableCapability(Capability.DEPTH_TEST);
+        context.clearCurrentBuffer();
+        final Vector3f[][] walls = {
+                {new Vector3f(-4, -3, -5.2f), new Vector3f(0.5f, 3, -5)},
+                {new Vector3f(-1, -6, -8.5f), new Vector3f(7, 1, -8)},
+                {new Vector3f(-9, 2, -12.5f), new Vector3f(4, 9, -12)}
+        };
+        for (Vector3f[] corners : walls) {
+            final Model wall = createModel(corners[0], corners[1]);
+            wall.setOccluder(true);
+            culler.addOccluder(wall);
+            wall.getVertexArray().draw();
+        }
+        // Test random boxes behind the walls without writing their depths, each visible one must be reported as visible
+        context.setDepthMask(false);
+        final OcclusionQuery query = context.newOcclusionQuery();
+        query.create();
+        final Random random = new Random(3);
+        int hidden = 0, culled = 0;
+        for (int i = 0; i < 200; i++) {
+            final float x = random.nextFloat() * 16 - 8, y = random.nextFloat() * 16 - 8, z = -6 - random.nextFloat() * 14;
+            final float size = 0.1f + random.nextFloat() * 2;
+            final Model box = createModel(new Vector3f(x, y, z - size), new Vector3f(x + size, y + size, z));
+            query.begin();
+            box.getVertexArray().draw();
+            query.end();
+            final boolean visible = culler.isVisible(box);
+            if (query.getResult() > 0) {
+                Assert.assertTrue("Visible box " + i + " was culled", visible);
+            } else {
+                hidden++;
+            }
+            if (!visible) {
+                culled++;
+            }
+            box.getVertexArray().destroy();
+        }
+        // Enough of them are hidden for the test to be meaningful, and the culler finds some of them
+        Assert.assertTrue(hidden > 20);
+        Assert.assertTrue(culled > 0);
+    }
+
+    private Model createModel(Vector3f min, Vector3f max) {
+        final Model model = new Model(createBox(min, max), material);
+        model.setBounds(min, max);
+        return model;
+    }
+
+    // Creates the twelve triangles of a box in world space
+    private VertexArray createBox(Vector3f min, Vector3f max) {
+        final TFloatArrayList positions = new TFloatArrayList();
+        final TFloatArrayList colors = new TFloatArrayList();
+        // The corners of each face as indices, with bits for max x, y and z
+        final int[][] faces = {{0, 2, 6, 4}, {1, 5, 7, 3}, {0, 4, 5, 1}, {2, 3, 7, 6}, {0, 1, 3, 2}, {4, 6, 7, 5}};
+        final int[] triangles = {0, 1, 2, 0, 2, 3};
+        for (int[] face : faces) {
+            for (int corner : triangles) {
+                final int c = face[corner];
+                positions.add((c & 1) == 0 ? min.getX() : max.getX());
+                positions.add((c & 2) == 0 ? min.getY() : max.getY());
+                positions.add((c & 4) == 0 ? min.getZ() : max.getZ());
+                colors.add(new float[]{1, 0, 0, 1});
+            }
+        }
+        return SoftwareTestUtil.createTriangles(context, positions.toArray(), colors.toArray());
+    }
+}
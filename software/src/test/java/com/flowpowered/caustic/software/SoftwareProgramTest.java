@@ -0,0 +1,162 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.data.ShaderSource;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+
+public class SoftwareProgramTest {
+    private SoftwareContext context;
+
+    /**
+     * Declares a uniform of each kind of setter.
+     */
+    public static class UniformFragmentShader extends SoftwareTestUtil.ColorFragmentShader {
+        @Uniform
+        private boolean flag;
+        @Uniform
+        private int count;
+        @Uniform
+        private float scale;
+        @Uniform
+        private Vector4f tint;
+        @Uniform
+        private Matrix4f transform;
+        @Uniform
+        private float[] weights;
+    }
+
+    /**
+     * Declares a final uniform, which can't be set.
+     */
+    public static class FinalUniformFragmentShader extends SoftwareTestUtil.ColorFragmentShader {
+        @Uniform
+        private final float scale = 1;
+    }
+
+    @Before
+    public void createContext() {
+        context = SoftwareTestUtil.createContext(16, 16);
+    }
+
+    @After
+    public void destroyContext() {
+        context.destroy();
+    }
+
+    @Test
+    public void testTypedSetters() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, UniformFragmentShader.class);
+        program.use();
+        final Vector4f tint = new Vector4f(1, 0.5f, 0.25f, 1);
+        final Matrix4f transform = Matrix4f.createScaling(2, 2, 2, 1);
+        final float[] weights = {0.25f, 0.75f};
+        program.setUniform("flag", true);
+        program.setUniform("count", 3);
+        program.setUniform("scale", 0.5f);
+        program.setUniform("tint", tint);
+        program.setUniform("transform", transform);
+        program.setUniform("weights", weights);
+        // Uniforms that no shader declares are ignored
+        program.setUniform("missing", 1f);
+        final UniformFragmentShader shader = getFragmentShader(program);
+        Assert.assertTrue(shader.flag);
+        Assert.assertEquals(3, shader.count);
+        Assert.assertEquals(0.5f, shader.scale, 0);
+        Assert.assertSame(tint, shader.tint);
+        Assert.assertSame(transform, shader.transform);
+        Assert.assertSame(weights, shader.weights);
+    }
+
+    @Test
+    public void testCastSetters() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, UniformFragmentShader.class);
+        program.use();
+        final UniformFragmentShader shader = getFragmentShader(program);
+        // Primitives are widened to the field type
+        program.setUniform("scale", 2);
+        Assert.assertEquals(2, shader.scale, 0);
+        // Narrowing and mismatched objects are rejected
+        try {
+            program.setUniform("count", 2.5f);
+            Assert.fail("Narrowed a float uniform to an int field");
+        } catch (IllegalStateException ex) {
+            Assert.assertEquals(0, shader.count);
+        }
+        try {
+            program.setUniform("tint", 1f);
+            Assert.fail("Set a float uniform to a vector field");
+        } catch (IllegalStateException ex) {
+            Assert.assertNull(shader.tint);
+        }
+        try {
+            program.setUniform("flag", 1);
+            Assert.fail("Set an int uniform to a boolean field");
+        } catch (IllegalStateException ex) {
+            Assert.assertFalse(shader.flag);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFinalUniform() {
+        SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, FinalUniformFragmentShader.class);
+    }
+
+    @Test
+    public void testRelink() {
+        final SoftwareProgram program = (SoftwareProgram) SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, UniformFragmentShader.class);
+        program.use();
+        // Attaching a shader relinks on the next uniform
+        final Shader shader = context.newShader();
+        shader.create();
+        shader.setSource(new ShaderSource(UniformFragmentShader.class.getName()));
+        shader.compile();
+        program.attachShader(shader);
+        program.setUniform("count", 1);
+        Assert.assertEquals(1, getFragmentShader(program).count);
+        // Recompiling a shader relinks on the next use
+        shader.compile();
+        program.use();
+        program.setUniform("count", 2);
+        Assert.assertEquals(2, getFragmentShader(program).count);
+        // Detaching the shader leaves the uniform undeclared
+        program.detachShader(shader);
+        program.setUniform("count", 3);
+        Assert.assertNull(program.getShader(ShaderType.FRAGMENT));
+    }
+
+    private static UniformFragmentShader getFragmentShader(Program program) {
+        return (UniformFragmentShader) ((SoftwareProgram) program).getShader(ShaderType.FRAGMENT).getImplementation();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.Context.BlendFunction;
+import com.flowpowered.caustic.api.gl.Context.Capability;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Texture.InternalFormat;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+public class SoftwareRasterizerTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final Vector4f CLEAR_COLOR = new Vector4f(0.2f, 0.1f, 0.3f, 1);
+
+    @Test
+    public void testThreadCountDeterminism() {
+        final Frame reference = renderScene(1);
+        // Make sure the scene isn't trivially equal by covering most of the window
+        final int clearColor = SoftwareUtil.pack(CLEAR_COLOR);
+        int covered = 0;
+        for (int pixel : reference.pixels) {
+            if (pixel != clearColor) {
+                covered++;
+            }
+        }
+        Assert.assertTrue(covered > WIDTH * HEIGHT / 2);
+        for (int threads : new int[]{2, 3, 8}) {
+            final Frame frame = renderScene(threads);
+            Assert.assertArrayEquals("Pixels differ with " + threads + " threads", reference.pixels, frame.pixels);
+            Assert.assertArrayEquals("Depths differ with " + threads + " threads", reference.depths, frame.depths);
+        }
+    }
+
+    // Renders overlapping, blended and depth tested triangles, many of which straddle the 64 pixel tile edges
+    private static Frame renderScene(int threads) {
+        final SoftwareContext context = SoftwareTestUtil.createContext(WIDTH, HEIGHT);
+        try {
+            context.setThreadCount(threads);
+            final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+            final Random random = new Random(12345);
+            final int triangles = 300;
+            final float[] positions = new float[triangles * 9];
+            final float[] colors = new float[triangles * 12];
+            for (int i = 0; i < triangles; i++) {
+                // Random centers and sizes, from a few pixels to most of the window
+                final float centerX = random.nextFloat() * 2 - 1, centerY = random.nextFloat() * 2 - 1;
+                final float size = random.nextFloat() * random.nextFloat();
+                final float depth = random.nextFloat() * 2 - 1;
+                for (int v = 0; v < 3; v++) {
+                    positions[i * 9 + v * 3] = centerX + (random.nextFloat() * 2 - 1) * size;
+                    positions[i * 9 + v * 3 + 1] = centerY + (random.nextFloat() * 2 - 1) * size;
+                    positions[i * 9 + v * 3 + 2] = depth + (random.nextFloat() - 0.5f) * 0.2f;
+                    for (int c = 0; c < 4; c++) {
+                        colors[i * 12 + v * 4 + c] = random.nextFloat();
+                    }
+                }
+            }
+            final VertexArray vertexArray = SoftwareTestUtil.createTriangles(context, positions, colors);
+            context.setClearColor(CLEAR_COLOR);
+            context.enableCapability(Capability.DEPTH_TEST);
+            context.clearCurrentBuffer();
+            program.use();
+            vertexArray.draw();
+            // Blend a second pass over the first, with the depth test still on
+            context.enableCapability(Capability.BLEND);
+            context.setBlendingFunctions(0, BlendFunction.GL_SRC_ALPHA, BlendFunction.GL_ONE_MINUS_SRC_ALPHA);
+            vertexArray.draw();
+            context.updateDisplay();
+            final Frame frame = new Frame();
+            final IntBuffer pixels = context.readFrame();
+            frame.pixels = new int[pixels.remaining()];
+            pixels.get(frame.pixels);
+            final ByteBuffer depths = context.readFrame(new Rectangle(WIDTH, HEIGHT), InternalFormat.DEPTH_COMPONENT16);
+            frame.depths = new byte[depths.remaining()];
+            depths.get(frame.depths);
+            return frame;
+        } finally {
+            context.destroy();
+        }
+    }
+
+    private static class Frame {
+        private int[] pixels;
+        private byte[] depths;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import gnu.trove.list.array.TFloatArrayList;
+
+import com.flowpowered.math.vector.Vector2i;
+
+import com.flowpowered.caustic.api.data.ShaderSource;
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+import com.flowpowered.caustic.api.gl.VertexArray;
+
+/**
+ * Creates the contexts, shaders and meshes shared by the software tests.
+ */
+final class SoftwareTestUtil {
+    private SoftwareTestUtil() {
+    }
+
+    /**
+     * Passes the clip space positions and the colors through.
+     */
+    public static class ColorVertexShader extends ShaderImplementation {
+        public ColorVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 4)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), 1);
+            in.skip();
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), in.readFloat(3));
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    /**
+     * Writes the interpolated colors.
+     */
+    public static class ColorFragmentShader extends ShaderImplementation {
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            in.skip();
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), in.readFloat(3));
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.FRAGMENT;
+        }
+    }
+
+    static SoftwareContext createContext(int width, int height) {
+        final SoftwareContext context = new HeadlessSoftwareContext();
+        context.setWindowSize(new Vector2i(width, height));
+        context.create();
+        return context;
+    }
+
+    static Program createProgram(SoftwareContext context, Class<? extends ShaderImplementation> vertex, Class<? extends ShaderImplementation> fragment) {
+        final Program program = context.newProgram();
+        program.create();
+        program.attachShader(createShader(context, vertex));
+        program.attachShader(createShader(context, fragment));
+        program.link();
+        return program;
+    }
+
+    private static Shader createShader(SoftwareContext context, Class<? extends ShaderImplementation> implementation) {
+        final Shader shader = context.newShader();
+        shader.create();
+        shader.setSource(new ShaderSource(implementation.getName()));
+        shader.compile();
+        return shader;
+    }
+
+    /**
+     * Creates a vertex array of unindexed triangles, from clip space positions with 3 components and colors with 4.
+     */
+    static VertexArray createTriangles(SoftwareContext context, float[] positions, float[] colors) {
+        final VertexData data = new VertexData();
+        final VertexAttribute positionAttribute = new VertexAttribute("positions", DataType.FLOAT, 3);
+        positionAttribute.setData(new TFloatArrayList(positions));
+        data.addAttribute(0, positionAttribute);
+        final VertexAttribute colorAttribute = new VertexAttribute("colors", DataType.FLOAT, 4);
+        colorAttribute.setData(new TFloatArrayList(colors));
+        data.addAttribute(1, colorAttribute);
+        for (int i = 0; i < positions.length / 3; i++) {
+            data.getIndices().add(i);
+        }
+        final VertexArray vertexArray = context.newVertexArray();
+        vertexArray.create();
+        vertexArray.setData(data);
+        return vertexArray;
+    }
+}
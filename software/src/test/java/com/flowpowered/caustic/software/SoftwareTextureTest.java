@@ -0,0 +1,241 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector4f;
+
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+import com.flowpowered.caustic.api.gl.Texture.FilterMode;
+import com.flowpowered.caustic.api.gl.Texture.Format;
+import com.flowpowered.caustic.api.gl.Texture.WrapMode;
+import com.flowpowered.caustic.api.gl.VertexArray;
+
+public class SoftwareTextureTest {
+    private static final float EPSILON = 1.5f / 255;
+    private SoftwareContext context;
+
+    /**
+     * Samples the texture at the coordinates in the first two color components.
+     */
+    public static class TextureFragmentShader extends ShaderImplementation {
+        private final Sampler texture = new Sampler();
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            in.skip();
+            final float[] color = new float[4];
+            texture.sample(in.readFloat(0), in.readFloat(1), color);
+            in.skip();
+            out.writeFloat4(color[0], color[1], color[2], color[3]);
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.FRAGMENT;
+        }
+    }
+
+    @Before
+    public void createContext() {
+        context = SoftwareTestUtil.createContext(64, 64);
+    }
+
+    @After
+    public void destroyContext() {
+        context.destroy();
+    }
+
+    @Test
+    public void testWrapModes() {
+        // A row of 4 texels, with red going from 0 to 1
+        final SoftwareTexture texture = createTexture(4, 1, new int[]{0, 85, 170, 255}, FilterMode.NEAREST);
+        texture.setBorderColor(new Vector4f(0.5f, 0, 0, 0));
+        // The texel left of the first one, and the one right of the last one
+        final float before = -0.5f / 4, after = 4.5f / 4;
+        texture.setWraps(WrapMode.REPEAT, WrapMode.REPEAT);
+        assertRed(1, texture, before);
+        assertRed(0, texture, after);
+        texture.setWraps(WrapMode.MIRRORED_REPEAT, WrapMode.REPEAT);
+        assertRed(0, texture, before);
+        assertRed(1, texture, after);
+        // Mirrored a second time, two periods away
+        assertRed(1f / 3, texture, -6.5f / 4);
+        texture.setWraps(WrapMode.CLAMP_TO_EDGE, WrapMode.REPEAT);
+        assertRed(0, texture, before);
+        assertRed(1, texture, after);
+        assertRed(1, texture, 10);
+        texture.setWraps(WrapMode.CLAMP_TO_BORDER, WrapMode.REPEAT);
+        assertRed(0.5f, texture, before);
+        assertRed(0.5f, texture, after);
+        // Inside the texture, all the modes sample the same texel
+        assertRed(2f / 3, texture, 2.5f / 4);
+    }
+
+    @Test
+    public void testMipMapLevelSelection() {
+        // A checker board of single texels, so the base level is black or white, and all the other levels are grey
+        final SoftwareTexture texture = createChecker(8, FilterMode.NEAREST_MIPMAP_NEAREST);
+        final float x = 0.5f / 8, y = 0.5f / 8;
+        // One texel per pixel samples the base level, two samples the next one
+        assertSample(1, texture, x, y, 1f / 8);
+        assertSample(0.5f, texture, x, y, 2f / 8);
+        // The closest level is the base one until half way to the next
+        assertSample(1, texture, x, y, 1.3f / 8);
+        assertSample(0.5f, texture, x, y, 1.6f / 8);
+        // Blending between the two closest levels, half way in level of detail
+        texture.setFilters(FilterMode.LINEAR_MIPMAP_LINEAR, FilterMode.LINEAR);
+        assertSample(0.75f, texture, x, y, (float) Math.sqrt(2) / 8);
+        // Past the last level, the smallest one is used
+        assertSample(0.5f, texture, x, y, 64f / 8);
+    }
+
+    @Test
+    public void testDerivativeLevelOfDetail() {
+        final SoftwareTexture texture = createChecker(8, FilterMode.LINEAR_MIPMAP_NEAREST);
+        texture.setFilters(FilterMode.LINEAR_MIPMAP_NEAREST, FilterMode.NEAREST);
+        // Near the edge of a white texel, magnified by the nearest filter, and minified by the linear one, first in the base level then in the grey one
+        final float x = 0.9f / 8, y = 0.5f / 8;
+        Assert.assertTrue(texture.isMagnified(0.5f / 8, 0, 0, 0.5f / 8));
+        assertSample(1, texture, x, y, 0.5f / 8);
+        Assert.assertFalse(texture.isMagnified(1.2f / 8, 0, 0, 1.2f / 8));
+        assertSample(0.6f, texture, x, y, 1.2f / 8);
+        Assert.assertFalse(texture.isMagnified(2f / 8, 0, 0, 2f / 8));
+        assertSample(0.5f, texture, x, y, 2f / 8);
+        // The largest axis of the footprint decides the level of detail
+        Assert.assertFalse(texture.isMagnified(0.5f / 8, 0, 0, 4f / 8));
+        // Unless the anisotropic probes along it bring it back to a texel
+        texture.setAnisotropicFiltering(4);
+        Assert.assertTrue(texture.isMagnified(0.5f / 8, 0, 0, 4f / 8));
+        Assert.assertFalse(texture.isMagnified(0.5f / 8, 0, 0, 8f / 8));
+    }
+
+    @Test
+    public void testQuadShadingInvocations() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, TextureFragmentShader.class);
+        final VertexArray square = SoftwareTestUtil.createTriangles(context,
+                new float[]{-1, -1, 0, 1, -1, 0, -1, 1, 0, -1, 1, 0, 1, -1, 0, 1, 1, 0},
+                new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 1, 0, 0, 1, 1, 1, 0, 1});
+        context.setStatisticsEnabled(true);
+        // Magnified, the gathered pixels are kept, so only the helper pixels on the diagonal are extra invocations
+        createChecker(4, FilterMode.LINEAR_MIPMAP_LINEAR).bind(0);
+        drawSquare(program, square);
+        SoftwareStatistics statistics = context.getDrawStatistics();
+        final long pixels = statistics.getFragmentsWritten();
+        Assert.assertTrue(pixels > 60 * 60);
+        Assert.assertTrue(statistics.getFragmentsShaded() >= pixels);
+        Assert.assertTrue(statistics.getFragmentsShaded() <= pixels + 3 * 64);
+        // Minified, the three gathered pixels of each quad are shaded again
+        createChecker(256, FilterMode.LINEAR_MIPMAP_LINEAR).bind(0);
+        drawSquare(program, square);
+        statistics = context.getDrawStatistics();
+        Assert.assertEquals(pixels, statistics.getFragmentsWritten());
+        Assert.assertTrue(statistics.getFragmentsShaded() >= pixels * 7 / 4);
+        Assert.assertTrue(statistics.getFragmentsShaded() < pixels * 2);
+        // Without color writes, nothing is shaded
+        context.setColorMask(false, false, false, false);
+        drawSquare(program, square);
+        statistics = context.getDrawStatistics();
+        Assert.assertEquals(pixels, statistics.getFragmentsWritten());
+        Assert.assertEquals(0, statistics.getFragmentsShaded());
+    }
+
+    @Test
+    public void testDefaultFilters() {
+        // Without filters set, the texture is sampled from the base level without derivatives, even when minified
+        final SoftwareTexture texture = createChecker(8, null);
+        final float x = 0.5f / 8, y = 0.5f / 8;
+        Assert.assertFalse(texture.needsDerivatives());
+        assertSample(1, texture, x, y, 2f / 8);
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, TextureFragmentShader.class);
+        final VertexArray square = SoftwareTestUtil.createTriangles(context,
+                new float[]{-1, -1, 0, 1, -1, 0, -1, 1, 0, -1, 1, 0, 1, -1, 0, 1, 1, 0},
+                new float[]{0, 0, 0, 1, 1, 0, 0, 1, 0, 1, 0, 1, 0, 1, 0, 1, 1, 0, 0, 1, 1, 1, 0, 1});
+        context.setStatisticsEnabled(true);
+        createChecker(256, null).bind(0);
+        drawSquare(program, square);
+        // So each pixel is shaded once, without quads
+        final SoftwareStatistics statistics = context.getDrawStatistics();
+        Assert.assertTrue(statistics.getFragmentsWritten() > 60 * 60);
+        Assert.assertEquals(statistics.getFragmentsWritten(), statistics.getFragmentsShaded());
+        // The mipmaps are only built once a filter needs them
+        texture.setFilters(FilterMode.NEAREST_MIPMAP_NEAREST, FilterMode.NEAREST);
+        Assert.assertTrue(texture.needsDerivatives());
+        assertSample(0.5f, texture, x, y, 2f / 8);
+    }
+
+    private void drawSquare(Program program, VertexArray square) {
+        context.clearCurrentBuffer();
+        program.use();
+        program.bindSampler(0);
+        square.draw();
+    }
+
+    private SoftwareTexture createChecker(int size, FilterMode minFilter) {
+        final int[] reds = new int[size * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                reds[x + y * size] = (x + y & 1) == 0 ? 255 : 0;
+            }
+        }
+        return createTexture(size, size, reds, minFilter);
+    }
+
+    private SoftwareTexture createTexture(int width, int height, int[] reds, FilterMode minFilter) {
+        final SoftwareTexture texture = (SoftwareTexture) context.newTexture();
+        texture.create();
+        texture.setFormat(Format.RGBA, null);
+        // Keep the default filters if none is given
+        if (minFilter != null) {
+            texture.setFilters(minFilter, minFilter.needsMipMaps() ? FilterMode.LINEAR : minFilter);
+        }
+        final ByteBuffer data = ByteBuffer.allocateDirect(width * height * 4);
+        for (int red : reds) {
+            data.put((byte) red).put((byte) 0).put((byte) 0).put((byte) 255);
+        }
+        data.flip();
+        texture.setImageData(data, width, height);
+        return texture;
+    }
+
+    private static void assertRed(float expected, SoftwareTexture texture, float x) {
+        final float[] color = new float[4];
+        texture.sample(x, 0.5f, color);
+        Assert.assertEquals(expected, color[0], EPSILON);
+    }
+
+    // Samples with the same change in coordinates for a pixel horizontally and vertically
+    private static void assertSample(float expected, SoftwareTexture texture, float x, float y, float derivative) {
+        final float[] color = new float[4];
+        texture.sample(x, y, derivative, 0, 0, derivative, color);
+        Assert.assertEquals(expected, color[0], EPSILON);
+    }
+}
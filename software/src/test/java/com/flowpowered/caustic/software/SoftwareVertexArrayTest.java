@@ -0,0 +1,422 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import gnu.trove.list.TByteList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TShortList;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TShortArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.flowpowered.caustic.api.data.VertexAttribute;
+import com.flowpowered.caustic.api.data.VertexData;
+import com.flowpowered.caustic.api.data.VertexAttribute.DataType;
+import com.flowpowered.caustic.api.data.VertexAttribute.UploadMode;
+import com.flowpowered.caustic.api.gl.Program;
+import com.flowpowered.caustic.api.gl.Shader.ShaderType;
+import com.flowpowered.caustic.api.gl.VertexArray;
+import com.flowpowered.caustic.api.util.Rectangle;
+
+public class SoftwareVertexArrayTest {
+    // Opaque red as packed by the renderer
+    private static final int RED = 0xffff0000;
+    private SoftwareContext context;
+
+    /**
+     * Offsets the clip space positions by a per instance attribute.
+     */
+    public static class InstanceVertexShader extends ShaderImplementation {
+        public InstanceVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 4)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            final float x = in.readFloat(0), y = in.readFloat(1), z = in.readFloat(2);
+            in.skip();
+            final float r = in.readFloat(0), g = in.readFloat(1), b = in.readFloat(2), a = in.readFloat(3);
+            in.skip();
+            out.writeFloat4(x + in.readFloat(0), y + in.readFloat(1), z, 1);
+            out.writeFloat4(r, g, b, a);
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    /**
+     * Scales the clip space positions and swaps the color channels, a vertex at a time.
+     */
+    public static class SwizzleVertexShader extends ShaderImplementation {
+        public SwizzleVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 4)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            out.writeFloat4(in.readFloat(0) * 0.75f, in.readFloat(1) * 0.5f, in.readFloat(2), 1);
+            in.skip();
+            out.writeFloat4(in.readFloat(2), in.readFloat(0), in.readFloat(1), in.readFloat(3));
+            in.skip();
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    /**
+     * Does the same as {@link SwizzleVertexShader}, in batches.
+     */
+    public static class BatchSwizzleVertexShader extends SwizzleVertexShader implements BatchShader {
+        @Override
+        public void mainBatch(float[][] in, float[][] out, int start, int count) {
+            for (int v = start; v < start + count; v++) {
+                out[0][v] = in[0][v] * 0.75f;
+                out[1][v] = in[1][v] * 0.5f;
+                out[2][v] = in[2][v];
+                out[3][v] = 1;
+                out[4][v] = in[5][v];
+                out[5][v] = in[3][v];
+                out[6][v] = in[4][v];
+                out[7][v] = in[6][v];
+            }
+        }
+    }
+
+    /**
+     * Colors the vertices with a normalized unsigned byte attribute for red and alpha, the difference of two shorts converted to floats for green, and an int kept as is for blue.
+     */
+    public static class ConversionVertexShader extends ShaderImplementation {
+        public ConversionVertexShader() {
+            super(new DataFormat[]{new DataFormat(DataType.FLOAT, 4), new DataFormat(DataType.FLOAT, 4)});
+        }
+
+        @Override
+        public void main(InBuffer in, OutBuffer out) {
+            out.writeFloat4(in.readFloat(0), in.readFloat(1), in.readFloat(2), 1);
+            in.skip();
+            final float r = in.readFloat(0), a = in.readFloat(3);
+            in.skip();
+            final float g = (in.readFloat(0) - in.readFloat(1)) / 255;
+            in.skip();
+            final float b = in.readInt(0) / 255f;
+            in.skip();
+            out.writeFloat4(r, g, b, a);
+        }
+
+        @Override
+        public ShaderType getType() {
+            return ShaderType.VERTEX;
+        }
+    }
+
+    @Before
+    public void createContext() {
+        // The view port transform maps the clip space to the width and height minus one, so offsets of a quarter of it are a whole number of pixels
+        context = SoftwareTestUtil.createContext(65, 65);
+        context.setStatisticsEnabled(true);
+    }
+
+    @After
+    public void destroyContext() {
+        context.destroy();
+    }
+
+    @Test
+    public void testInstancedDrawStatistics() {
+        final Program program = SoftwareTestUtil.createProgram(context, InstanceVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // A small square in the bottom left corner, moved by each instance so they don't overlap
+        final VertexArray square = SoftwareTestUtil.createTriangles(context,
+                new float[]{-1, -1, 0, -0.5f, -1, 0, -1, -0.5f, 0, -1, -0.5f, 0, -0.5f, -1, 0, -0.5f, -0.5f, 0},
+                new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+        final VertexAttribute offsets = new VertexAttribute("offsets", DataType.FLOAT, 2);
+        offsets.setData(new TFloatArrayList(new float[]{0, 0, 0.5f, 0, 1, 0, 0, 0.5f}));
+        offsets.setDivisor(1);
+        square.setAttribute(2, offsets);
+        program.use();
+        // A single instance first, alone in its frame
+        context.clearCurrentBuffer();
+        square.draw();
+        final long[] single = getCounters(context.getDrawStatistics());
+        context.updateDisplay();
+        Assert.assertArrayEquals(single, getCounters(context.getFrameStatistics()));
+        Assert.assertTrue(single[0] > 0);
+        // Then all the instances, which are a single draw covering all of them
+        final int instances = 4;
+        context.clearCurrentBuffer();
+        square.drawInstanced(instances);
+        final long[] instanced = getCounters(context.getDrawStatistics());
+        context.updateDisplay();
+        Assert.assertArrayEquals(instanced, getCounters(context.getFrameStatistics()));
+        for (int i = 0; i < single.length; i++) {
+            Assert.assertEquals("Counter " + i, single[i] * instances, instanced[i]);
+        }
+    }
+
+    @Test
+    public void testBatchShading() {
+        final Program single = SoftwareTestUtil.createProgram(context, SwizzleVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        final Program batch = SoftwareTestUtil.createProgram(context, BatchSwizzleVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // Four squares of different colors in a row
+        final int squares = 4;
+        final float[] positions = new float[squares * 6 * 3];
+        final float[] colors = new float[squares * 6 * 4];
+        final float[] corners = {0, 0, 1, 0, 0, 1, 0, 1, 1, 0, 1, 1};
+        for (int s = 0; s < squares; s++) {
+            for (int v = 0; v < 6; v++) {
+                final int vertex = s * 6 + v;
+                positions[vertex * 3] = -1 + (s + corners[v * 2]) * 0.5f;
+                positions[vertex * 3 + 1] = -1 + corners[v * 2 + 1] * 2;
+                colors[vertex * 4] = s / 4f;
+                colors[vertex * 4 + 1] = 1 - s / 4f;
+                colors[vertex * 4 + 2] = corners[v * 2];
+                colors[vertex * 4 + 3] = 1;
+            }
+        }
+        final VertexArray mesh = SoftwareTestUtil.createTriangles(context, positions, colors);
+        // The whole mesh
+        final int[] expected = drawFrame(single, mesh);
+        Assert.assertEquals(squares * 6, context.getFrameStatistics().getVerticesShaded());
+        Assert.assertArrayEquals(expected, drawFrame(batch, mesh));
+        Assert.assertEquals(squares * 6, context.getFrameStatistics().getVerticesShaded());
+        // Only the second square, where the batch only shades its vertices
+        mesh.setIndicesOffset(6);
+        mesh.setIndicesCount(6);
+        final int[] expectedRange = drawFrame(single, mesh);
+        Assert.assertFalse(Arrays.equals(expected, expectedRange));
+        Assert.assertArrayEquals(expectedRange, drawFrame(batch, mesh));
+        Assert.assertEquals(6, context.getFrameStatistics().getVerticesShaded());
+    }
+
+    @Test
+    public void testVertexCache() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // A small grid has a cache slot for each vertex, so each is shaded once
+        final int small = 9;
+        final SoftwareVertexArray smallGrid = createGrid(small, true);
+        drawFrame(program, smallGrid);
+        final int smallIndices = (small - 1) * (small - 1) * 6;
+        Assert.assertEquals(small * small, context.getFrameStatistics().getVerticesShaded());
+        Assert.assertEquals(1 - (float) (small * small) / smallIndices, smallGrid.getVertexCacheHitRate(), 1e-6f);
+        // A grid with more vertices than slots uses the FIFO, which only keeps the vertices shared with the previous quad in the row
+        final int large = 257;
+        final SoftwareVertexArray largeGrid = createGrid(large, true);
+        final int[] cached = drawFrame(program, largeGrid);
+        final int largeIndices = (large - 1) * (large - 1) * 6;
+        Assert.assertEquals(2 * large * (large - 1), context.getFrameStatistics().getVerticesShaded());
+        Assert.assertEquals(1 - (float) (2 * large * (large - 1)) / largeIndices, largeGrid.getVertexCacheHitRate(), 1e-6f);
+        // The cached outputs are the same as shading every index
+        final SoftwareVertexArray unindexedGrid = createGrid(large, false);
+        Assert.assertArrayEquals(cached, drawFrame(program, unindexedGrid));
+        Assert.assertEquals(largeIndices, context.getFrameStatistics().getVerticesShaded());
+        Assert.assertEquals(0, unindexedGrid.getVertexCacheHitRate(), 0);
+    }
+
+    @Test
+    public void testAttributeConversion() {
+        final Program program = SoftwareTestUtil.createProgram(context, ConversionVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // Two triangles covering the clip space, with the same attributes at each vertex
+        final int vertices = 6;
+        final VertexData data = new VertexData();
+        final VertexAttribute positions = new VertexAttribute("positions", DataType.FLOAT, 3);
+        positions.setData(new TFloatArrayList(new float[]{-1, -1, 0, 1, -1, 0, -1, 1, 0, -1, 1, 0, 1, -1, 0, 1, 1, 0}));
+        data.addAttribute(0, positions);
+        final VertexAttribute bytes = new VertexAttribute("bytes", DataType.UNSIGNED_BYTE, 4, UploadMode.TO_FLOAT_NORMALIZE);
+        final TByteList byteData = new TByteArrayList();
+        final VertexAttribute shorts = new VertexAttribute("shorts", DataType.SHORT, 2, UploadMode.TO_FLOAT);
+        final TShortList shortData = new TShortArrayList();
+        for (int v = 0; v < vertices; v++) {
+            // 153 and 255 are 0.6 and 1 once normalized, past the signed byte range
+            byteData.add(new byte[]{(byte) 153, 0, 0, (byte) 255});
+            // Converted without normalizing, and keeping the sign
+            shortData.add(new short[]{25, -26});
+            data.getIndices().add(v);
+        }
+        bytes.setData(byteData);
+        data.addAttribute(1, bytes);
+        shorts.setData(shortData);
+        data.addAttribute(2, shorts);
+        data.addAttribute(3, createIntAttribute(vertices, 102));
+        final VertexArray vertexArray = context.newVertexArray();
+        vertexArray.create();
+        vertexArray.setData(data);
+        final int[] pixels = drawFrame(program, vertexArray);
+        Assert.assertEquals(0xff993366, pixels[32 + 32 * 65]);
+        // Replacing a single attribute converts it again in the interleaved vertices
+        vertexArray.setAttribute(3, createIntAttribute(vertices, 204));
+        Assert.assertEquals(0xff9933cc, drawFrame(program, vertexArray)[32 + 32 * 65]);
+    }
+
+    @Test
+    public void testSetAttributeBeforeData() {
+        final VertexArray vertexArray = context.newVertexArray();
+        vertexArray.create();
+        final VertexAttribute offsets = new VertexAttribute("offsets", DataType.FLOAT, 2);
+        offsets.setData(new TFloatArrayList(new float[]{0, 0}));
+        offsets.setDivisor(1);
+        vertexArray.setAttribute(0, offsets);
+        final VertexAttribute positions = new VertexAttribute("positions", DataType.FLOAT, 3);
+        positions.setData(new TFloatArrayList(new float[]{-1, -1, 0, 1, -1, 0, -1, 1, 0}));
+        vertexArray.setAttribute(1, positions);
+        try {
+            vertexArray.setAttribute(3, positions);
+            Assert.fail("Attributes can't leave gaps");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+        vertexArray.destroy();
+    }
+
+    @Test
+    public void testGuardBand() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // The view port maps the clip space to 64 pixels, so the guard band is about 2^24 / 32 times larger
+        final float guardBand = 2 * SoftwareRasterizer.MAX_COORDINATE / 64 - 1;
+        // A triangle covering the left of the view port, up to an edge at x = 0.1 in clip space, which is 35.2 in window space
+        for (float size : new float[]{guardBand / 4, guardBand / 2}) {
+            final VertexArray triangle = SoftwareTestUtil.createTriangles(context,
+                    new float[]{0.1f, -size, 0, 0.1f, size * 1.5f, 0, -size * 2, -size, 0},
+                    new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+            final int[] pixels = drawFrame(program, triangle);
+            // The vertices are far out of the view port, inside the guard band first and then straddling it
+            Assert.assertEquals(size * 2 > guardBand ? 1 : 0, context.getFrameStatistics().getTrianglesClipped());
+            for (int y = 0; y < 65; y++) {
+                for (int x = 0; x < 65; x++) {
+                    Assert.assertEquals("Pixel " + x + ", " + y, x <= 35, pixels[x + y * 65] == RED);
+                }
+            }
+            triangle.destroy();
+        }
+    }
+
+    @Test
+    public void testLargeViewPort() {
+        final Program program = SoftwareTestUtil.createProgram(context, SoftwareTestUtil.ColorVertexShader.class, SoftwareTestUtil.ColorFragmentShader.class);
+        // The window only shows the corner of the view port, which is large enough for the edge functions of the triangles covering it to overflow 32 bits
+        context.setViewPort(new Rectangle(0, 0, 4000, 4000));
+        final VertexArray triangle = SoftwareTestUtil.createTriangles(context,
+                new float[]{-3, -3, 0, 9, -3, 0, -3, 9, 0},
+                new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+        final int[] pixels = drawFrame(program, triangle);
+        Assert.assertEquals(0, context.getFrameStatistics().getTrianglesClipped());
+        for (int i = 0; i < pixels.length; i++) {
+            Assert.assertEquals("Pixel " + i, RED, pixels[i]);
+        }
+        // Once clipped to the view port, the triangles still cover all of it
+        final VertexArray clipped = SoftwareTestUtil.createTriangles(context,
+                new float[]{-1e5f, -1e5f, 0, 3e5f, -1e5f, 0, -1e5f, 3e5f, 0},
+                new float[]{1, 0, 0, 1, 1, 0, 0, 1, 1, 0, 0, 1});
+        final int[] clippedPixels = drawFrame(program, clipped);
+        Assert.assertEquals(1, context.getFrameStatistics().getTrianglesClipped());
+        Assert.assertArrayEquals(pixels, clippedPixels);
+    }
+
+    // Creates a grid of size by size vertices covering the clip space, colored by position, with the quads in rows, indexed or with the vertices of each triangle repeated
+    private SoftwareVertexArray createGrid(int size, boolean indexed) {
+        final TFloatArrayList positions = new TFloatArrayList();
+        final TFloatArrayList colors = new TFloatArrayList();
+        final TIntArrayList indices = new TIntArrayList();
+        final int[] corners = {0, 0, 1, 0, 0, 1, 0, 1, 1, 0, 1, 1};
+        if (indexed) {
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    addGridVertex(positions, colors, size, x, y);
+                }
+            }
+        }
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                for (int c = 0; c < corners.length; c += 2) {
+                    if (indexed) {
+                        indices.add(x + corners[c] + (y + corners[c + 1]) * size);
+                    } else {
+                        indices.add(indices.size());
+                        addGridVertex(positions, colors, size, x + corners[c], y + corners[c + 1]);
+                    }
+                }
+            }
+        }
+        final VertexData data = new VertexData();
+        final VertexAttribute positionAttribute = new VertexAttribute("positions", DataType.FLOAT, 3);
+        positionAttribute.setData(positions);
+        data.addAttribute(0, positionAttribute);
+        final VertexAttribute colorAttribute = new VertexAttribute("colors", DataType.FLOAT, 4);
+        colorAttribute.setData(colors);
+        data.addAttribute(1, colorAttribute);
+        data.getIndices().addAll(indices);
+        final SoftwareVertexArray vertexArray = (SoftwareVertexArray) context.newVertexArray();
+        vertexArray.create();
+        vertexArray.setData(data);
+        return vertexArray;
+    }
+
+    private static VertexAttribute createIntAttribute(int vertices, int value) {
+        final VertexAttribute attribute = new VertexAttribute("ints", DataType.INT, 1, UploadMode.KEEP_INT);
+        final TIntList data = new TIntArrayList();
+        for (int v = 0; v < vertices; v++) {
+            data.add(value);
+        }
+        attribute.setData(data);
+        return attribute;
+    }
+
+    private static void addGridVertex(TFloatArrayList positions, TFloatArrayList colors, int size, int x, int y) {
+        positions.add(new float[]{-1 + 2f * x / (size - 1), -1 + 2f * y / (size - 1), 0});
+        colors.add(new float[]{(float) x / size, (float) y / size, 0, 1});
+    }
+
+    // Draws the vertex array alone in a frame, and returns the pixels of the frame
+    private int[] drawFrame(Program program, VertexArray vertexArray) {
+        context.clearCurrentBuffer();
+        program.use();
+        vertexArray.draw();
+        context.updateDisplay();
+        final IntBuffer frame = context.readFrame();
+        final int[] pixels = new int[frame.remaining()];
+        frame.get(pixels);
+        return pixels;
+    }
+
+    private static long[] getCounters(SoftwareStatistics statistics) {
+        return new long[]{
+                statistics.getVerticesShaded(), statistics.getTrianglesSubmitted(), statistics.getTrianglesCulled(), statistics.getTrianglesClipped(),
+                statistics.getFragmentsShaded(), statistics.getFragmentsDepthFailed(), statistics.getFragmentsWritten()
+        };
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Caustic Software, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013 Flow Powered <https://flowpowered.com/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.flowpowered.caustic.software;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SoftwareWindowTest {
+    private static final int TILE = 1 << SoftwareWindow.TILE_SHIFT;
+    // Two tiles and a partial one wide, one and a partial one high
+    private static final int WIDTH = 2 * TILE + 10;
+    private static final int HEIGHT = TILE + 20;
+    private static final int TILES_X = 3;
+    private static final int TILES_Y = 2;
+
+    @Test
+    public void testChangedTiles() {
+        final int[] lastPixels = new int[WIDTH * HEIGHT];
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        final boolean[] changedTiles = new boolean[TILES_X * TILES_Y];
+        // Nothing changed
+        SoftwareWindow.findChangedTiles(pixels, lastPixels, WIDTH, HEIGHT, TILES_X, changedTiles);
+        Assert.assertArrayEquals(new boolean[]{false, false, false, false, false, false}, changedTiles);
+        // The last pixel of the first tile, and the last pixel of the partial tile in the corner
+        pixels[TILE - 1 + (TILE - 1) * WIDTH] = 1;
+        pixels[WIDTH * HEIGHT - 1] = 1;
+        SoftwareWindow.findChangedTiles(pixels, lastPixels, WIDTH, HEIGHT, TILES_X, changedTiles);
+        Assert.assertArrayEquals(new boolean[]{true, false, false, false, false, true}, changedTiles);
+        // The first pixel of the second tile, the previous flags are cleared
+        System.arraycopy(pixels, 0, lastPixels, 0, pixels.length);
+        pixels[TILE] = 2;
+        SoftwareWindow.findChangedTiles(pixels, lastPixels, WIDTH, HEIGHT, TILES_X, changedTiles);
+        Assert.assertArrayEquals(new boolean[]{false, true, false, false, false, false}, changedTiles);
+        // The first pixel of the second row of tiles
+        System.arraycopy(pixels, 0, lastPixels, 0, pixels.length);
+        pixels[TILE * WIDTH] = 3;
+        SoftwareWindow.findChangedTiles(pixels, lastPixels, WIDTH, HEIGHT, TILES_X, changedTiles);
+        Assert.assertArrayEquals(new boolean[]{false, false, false, true, false, false}, changedTiles);
+    }
+
+    @Test
+    public void testDrawnTiles() {
+        final boolean[] previousTiles = new boolean[TILES_X * TILES_Y];
+        final boolean[] drawnTiles = new boolean[TILES_X * TILES_Y];
+        // The tiles changed in a frame are drawn in that frame and the next, since the back buffer can hold the frame before
+        SoftwareWindow.findDrawnTiles(new boolean[]{true, false, false, false, false, false}, previousTiles, drawnTiles);
+        Assert.assertArrayEquals(new boolean[]{true, false, false, false, false, false}, drawnTiles);
+        SoftwareWindow.findDrawnTiles(new boolean[]{false, false, true, false, false, false}, previousTiles, drawnTiles);
+        Assert.assertArrayEquals(new boolean[]{true, false, true, false, false, false}, drawnTiles);
+        SoftwareWindow.findDrawnTiles(new boolean[]{false, false, false, false, false, false}, previousTiles, drawnTiles);
+        Assert.assertArrayEquals(new boolean[]{false, false, true, false, false, false}, drawnTiles);
+        SoftwareWindow.findDrawnTiles(new boolean[]{false, false, false, false, false, false}, previousTiles, drawnTiles);
+        Assert.assertArrayEquals(new boolean[]{false, false, false, false, false, false}, drawnTiles);
+    }
+}